@@ -0,0 +1,52 @@
+package com.samhg.authentication.generation;
+
+import com.google.common.primitives.Longs;
+import com.samhg.authentication.metrics.Metrics;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures password generation for each {@link HmacAlgorithm}, password length and {@link HmacEngineProvider}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordFactoryBenchmark {
+
+    private static final byte[] SECRET_KEY = { 20, -37, 28, 73, -53, 23, -2, -59, 70, 89 };
+
+    @Param({ "SHA1", "SHA256", "SHA512" })
+    private HmacAlgorithm algorithm;
+
+    @Param({ "6", "8" })
+    private int digits;
+
+    @Param({ "DEFAULT", "INTERNAL", "JCA" })
+    private String engine;
+
+    private PasswordFactory factory;
+
+    private long counter;
+
+    @Setup
+    public void setUp() {
+        HmacEngineProvider provider = engine.equals("JCA") ? HmacEngineProvider.JCA
+                : engine.equals("INTERNAL") ? HmacEngineProvider.INTERNAL : HmacEngineProvider.DEFAULT;
+        factory = new PasswordFactory(PasswordFactory.DEFAULT_KEY_CACHE_SIZE, Metrics.NOOP, provider);
+    }
+
+    @Benchmark
+    public String generatePassword() {
+        return factory.generatePassword(SECRET_KEY, Longs.toByteArray(counter++), algorithm, digits);
+    }
+
+    @Benchmark
+    public int generateCode() {
+        return factory.generateCode(SECRET_KEY, counter++, algorithm, digits);
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.samhg.authentication.key;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures secret creation, shared between all benchmark threads as {@link RandomSecretProvider} would be.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RandomSecretProviderBenchmark {
+
+    private RandomSecretProvider provider;
+
+    @Setup
+    public void setUp() {
+        provider = new RandomSecretProvider();
+    }
+
+    @Benchmark
+    public SharedSecret createSecret() {
+        return provider.createSecret();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public List<SharedSecret> createSecrets() {
+        return provider.createSecrets(1000);
+    }
+
+}
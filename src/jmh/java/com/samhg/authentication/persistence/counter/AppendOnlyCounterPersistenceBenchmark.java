@@ -0,0 +1,70 @@
+package com.samhg.authentication.persistence.counter;
+
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.validation.PasswordType;
+import com.samhg.authentication.validation.PasswordValidationRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single counter update against a counter log holding the given number of identifiers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class AppendOnlyCounterPersistenceBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    private int identifiers;
+
+    @Param({ "true", "false" })
+    private boolean force;
+
+    private Path path;
+
+    private AppendOnlyCounterPersistence persistence;
+
+    private PasswordValidationRequest[] requests;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        path = Files.createTempFile("counters", ".log");
+        requests = new PasswordValidationRequest[identifiers];
+
+        try (AppendOnlyCounterPersistence initial = new AppendOnlyCounterPersistence(path, false,
+                AppendOnlyCounterPersistence.DEFAULT_COMPACTION_RATIO)) {
+
+            for (int i = 0; i < identifiers; i++) {
+                requests[i] = new PasswordValidationRequest("user" + i, "000000", new byte[0], 6,
+                        HmacAlgorithm.SHA1, 0, PasswordType.EVENT_BASED);
+                initial.persist(new CounterUpdate(requests[i], 0));
+            }
+        }
+
+        persistence = new AppendOnlyCounterPersistence(path, force,
+                AppendOnlyCounterPersistence.DEFAULT_COMPACTION_RATIO);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        persistence.close();
+        Files.deleteIfExists(path);
+    }
+
+    @Benchmark
+    public Long persist() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        PasswordValidationRequest request = requests[random.nextInt(identifiers)];
+
+        return persistence.persist(new CounterUpdate(request, random.nextLong(Long.MAX_VALUE)));
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.samhg.authentication.persistence.counter;
+
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.validation.PasswordType;
+import com.samhg.authentication.validation.PasswordValidationRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single counter update against a counter file holding the given number of identifiers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class TextFileCounterPersistenceBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    private int identifiers;
+
+    private Path path;
+
+    private TextFileCounterPersistence persistence;
+
+    private PasswordValidationRequest[] requests;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        path = Files.createTempFile("counters", ".txt");
+        requests = new PasswordValidationRequest[identifiers];
+
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            for (int i = 0; i < identifiers; i++) {
+                String identifier = "user" + i;
+                writer.write(identifier + ":0\n");
+                requests[i] = new PasswordValidationRequest(identifier, "000000", new byte[0], 6,
+                        HmacAlgorithm.SHA1, 0, PasswordType.EVENT_BASED);
+            }
+        }
+
+        persistence = new TextFileCounterPersistence(path);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Benchmark
+    public Long persist() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        PasswordValidationRequest request = requests[random.nextInt(identifiers)];
+
+        return persistence.persist(new CounterUpdate(request, random.nextLong(Long.MAX_VALUE)));
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.samhg.authentication.validation;
+
+import com.google.common.primitives.Longs;
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.generation.PasswordFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures validation of a matching and of a non-matching password for each {@link PasswordType}
+ * and {@link ValidationMode}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordValidatorBenchmark {
+
+    private static final byte[] SECRET_KEY = { 20, -37, 28, 73, -53, 23, -2, -59, 70, 89 };
+
+    private static final long MOVING_FACTOR = 1_000;
+
+    @Param({ "TIME_BASED", "EVENT_BASED" })
+    private PasswordType type;
+
+    @Param({ "EARLY_EXIT", "CONSTANT_TIME" })
+    private ValidationMode mode;
+
+    private PasswordValidator validator;
+
+    private PasswordValidationRequest match;
+
+    private PasswordValidationRequest mismatch;
+
+    private Collection<ValidationObserver> observers;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        PasswordFactory factory = new PasswordFactory();
+        validator = new PasswordValidator(factory, mode);
+
+        String password = factory.generatePassword(SECRET_KEY,
+                Longs.toByteArray(MOVING_FACTOR), HmacAlgorithm.SHA1, 6);
+
+        match = new PasswordValidationRequest("benchmark", password, SECRET_KEY, 6, HmacAlgorithm.SHA1,
+                MOVING_FACTOR, type);
+        mismatch = new PasswordValidationRequest("benchmark", "000000".equals(password) ? "000001" : "000000",
+                SECRET_KEY, 6, HmacAlgorithm.SHA1, MOVING_FACTOR + type.getWindowSize() * 2L, type);
+
+        observers = Collections.singleton((request, index) -> blackhole.consume(index));
+    }
+
+    @Benchmark
+    public void validateMatch() {
+        validator.validate(match, observers);
+    }
+
+    @Benchmark
+    public void validateMismatch() {
+        validator.validate(mismatch, observers);
+    }
+
+}
@@ -0,0 +1,207 @@
+package com.samhg.authentication.generation;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link PasswordGenerator} that caches the passwords of another generator, for use with
+ * time-based passwords, where the password for a secret and time step does not change until the
+ * step has passed and every validation within a step generates the same few passwords.
+ *
+ * Passwords are keyed by secret (compared by content), algorithm, digits and moving factor. The
+ * largest moving factor generated is taken as the current time step; passwords for steps more than
+ * {@link #retainedSteps} before it are expired, are not cached and are the first to be replaced, so
+ * the cache turns over as each step boundary passes. Since expiry follows the largest step seen, a
+ * single cache should not be shared between time-based and event-based validation.
+ *
+ * Entries are held in fixed-size arrays split into independently locked segments, so memory is
+ * bounded at construction. When every slot an entry may occupy is taken, the entry with the oldest
+ * step is replaced. Cached secrets are copied so that later changes by the caller do not alter them;
+ * a copy is zeroed when its slot is reused, and {@link #evict(byte[])} zeroes every copy of a secret
+ * that has been replaced or removed.
+ */
+public final class CachingPasswordGenerator implements PasswordGenerator {
+
+    /**
+     * The default number of cached passwords.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * The default number of steps before the current step whose passwords are kept, covering the
+     * whole default time-based window: searching the window around step t raises the current step
+     * to t + 1, leaving its lowest step, t - 1, two steps behind.
+     */
+    public static final int DEFAULT_RETAINED_STEPS = 2;
+
+    /**
+     * The number of consecutive slots an entry may occupy, starting at its home slot.
+     */
+    private static final int PROBE_LENGTH = 4;
+
+    private final PasswordGenerator generator;
+
+    private final int retainedSteps;
+
+    private final Segment[] segments;
+
+    private final AtomicLong currentStep = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Constructs a new cache.
+     *
+     * @param generator the generator whose passwords are cached.
+     * @param capacity the number of cached passwords, rounded up to a power of two.
+     * @param retainedSteps the number of steps before the current step whose passwords are kept.
+     */
+    public CachingPasswordGenerator(PasswordGenerator generator, int capacity, int retainedSteps) {
+        int segmentCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1)) << 1;
+        int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        int segmentCapacity = Math.max(PROBE_LENGTH, size / segmentCount);
+
+        this.generator = generator;
+        this.retainedSteps = retainedSteps;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    public CachingPasswordGenerator(PasswordGenerator generator) {
+        this(generator, DEFAULT_CAPACITY, DEFAULT_RETAINED_STEPS);
+    }
+
+    @Override
+    public int generateCode(byte[] rawSecret, long movingFactor, HmacAlgorithm algorithm, int digits) {
+        long current = advance(movingFactor);
+        int parameters = algorithm.ordinal() << 8 | digits;
+
+        int hash = Arrays.hashCode(rawSecret);
+        hash = 31 * (31 * hash + parameters) + Long.hashCode(movingFactor);
+        hash ^= hash >>> 16;
+
+        Segment segment = segments[hash & (segments.length - 1)];
+        int home = hash >>> Integer.numberOfTrailingZeros(segments.length);
+
+        int code = segment.get(home, rawSecret, parameters, movingFactor);
+        if (code >= 0) {
+            return code;
+        }
+
+        code = generator.generateCode(rawSecret, movingFactor, algorithm, digits);
+        if (movingFactor >= current - retainedSteps) {
+            segment.put(home, rawSecret, parameters, movingFactor, code, current - retainedSteps);
+        }
+
+        return code;
+    }
+
+    /**
+     * Zeroes and clears every cached password of the given secret, then evicts it from the cached
+     * generator. Every slot is scanned, so this is intended for the occasional removal of a secret
+     * rather than for each validation.
+     */
+    @Override
+    public void evict(byte[] rawSecret) {
+        for (Segment segment : segments) {
+            segment.evict(rawSecret);
+        }
+        generator.evict(rawSecret);
+    }
+
+    /**
+     * Raises {@link #currentStep} to the given moving factor, if it is larger.
+     *
+     * @return the current step.
+     */
+    private long advance(long movingFactor) {
+        long current = currentStep.get();
+        while (movingFactor > current) {
+            if (currentStep.compareAndSet(current, movingFactor)) {
+                return movingFactor;
+            }
+            current = currentStep.get();
+        }
+        return current;
+    }
+
+    private static final class Segment {
+
+        private final byte[][] secrets;
+
+        private final int[] parameters;
+
+        private final long[] steps;
+
+        private final int[] codes;
+
+        private final int mask;
+
+        Segment(int capacity) {
+            secrets = new byte[capacity][];
+            parameters = new int[capacity];
+            steps = new long[capacity];
+            codes = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        /**
+         * @return the cached password, or -1 if there is none.
+         */
+        synchronized int get(int home, byte[] secret, int parameters, long step) {
+            for (int probe = 0; probe < PROBE_LENGTH; probe++) {
+                int slot = (home + probe) & mask;
+
+                if (secrets[slot] == null) {
+                    break;
+                }
+                if (steps[slot] == step && this.parameters[slot] == parameters && Arrays.equals(secrets[slot], secret)) {
+                    return codes[slot];
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Caches a password in an empty slot, a slot expired before {@code oldestStep}, or otherwise
+         * the slot holding the oldest step.
+         */
+        synchronized void put(int home, byte[] secret, int parameters, long step, int code, long oldestStep) {
+            int victim = home & mask;
+
+            for (int probe = 0; probe < PROBE_LENGTH; probe++) {
+                int slot = (home + probe) & mask;
+
+                if (secrets[slot] == null || steps[slot] < oldestStep) {
+                    victim = slot;
+                    break;
+                }
+                if (steps[slot] < steps[victim]) {
+                    victim = slot;
+                }
+            }
+
+            if (secrets[victim] != null) {
+                Arrays.fill(secrets[victim], (byte) 0);
+            }
+            secrets[victim] = secret.clone();
+            this.parameters[victim] = parameters;
+            steps[victim] = step;
+            codes[victim] = code;
+        }
+
+        /**
+         * Zeroes and clears every slot holding the given secret.
+         */
+        synchronized void evict(byte[] secret) {
+            for (int slot = 0; slot < secrets.length; slot++) {
+                if (secrets[slot] != null && Arrays.equals(secrets[slot], secret)) {
+                    Arrays.fill(secrets[slot], (byte) 0);
+                    secrets[slot] = null;
+                    codes[slot] = 0;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.samhg.authentication.generation;
+
+import java.security.InvalidKeyException;
+
+/**
+ * Computes the HMACs of one {@link HmacAlgorithm} over 8-byte messages, the big-endian moving
+ * factors of One Time Passwords, with one key at a time.
+ *
+ * An engine is initialised with a key once and then reused for any number of moving factors, and
+ * may be re-initialised with another key. Engines hold mutable state and must only be used by one
+ * thread at a time.
+ */
+public interface HmacEngine {
+
+    /**
+     * @return the length, in bytes, of the HMACs computed.
+     */
+    int getMacLength();
+
+    /**
+     * Initialises this engine with a key, replacing any previous key.
+     *
+     * @param key the key HMACs are computed with.
+     */
+    void init(byte[] key) throws InvalidKeyException;
+
+    /**
+     * Computes the HMAC of the given moving factor, encoded as an 8-byte big-endian message.
+     *
+     * @param movingFactor the counter or time step to authenticate.
+     * @param output the array the HMAC is written to, of at least {@link #getMacLength()} bytes.
+     */
+    void compute(long movingFactor, byte[] output);
+
+}
@@ -0,0 +1,48 @@
+package com.samhg.authentication.generation;
+
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Creates the {@link HmacEngine}s a {@link PasswordFactory} computes HMACs with, selected per
+ * {@link HmacAlgorithm}.
+ */
+@FunctionalInterface
+public interface HmacEngineProvider {
+
+    /**
+     * Engines backed by {@link javax.crypto.Mac}, using the installed JCA providers.
+     */
+    HmacEngineProvider JCA = JcaHmacEngine::new;
+
+    /**
+     * Pure-Java engines specialised for 8-byte messages, which compute each HMAC with two
+     * compressions from the padded key states computed when the engine is initialised.
+     */
+    HmacEngineProvider INTERNAL = ShortMessageHmacEngine::create;
+
+    /**
+     * The engines used by default: {@link #JCA} for SHA-1 and SHA-256, whose compression HotSpot
+     * replaces with CPU instructions where available, and {@link #INTERNAL} for SHA-512, where the
+     * per-call overhead of {@link javax.crypto.Mac} outweighs its compression.
+     */
+    HmacEngineProvider DEFAULT = JCA.with(HmacAlgorithm.SHA512, INTERNAL);
+
+    /**
+     * Creates a new, uninitialised engine.
+     *
+     * @param algorithm the algorithm of the engine.
+     * @return the engine.
+     */
+    HmacEngine create(HmacAlgorithm algorithm) throws NoSuchAlgorithmException;
+
+    /**
+     * @param algorithm an algorithm.
+     * @param provider the provider of engines for the given algorithm.
+     * @return a provider that creates engines for the given algorithm with the given provider,
+     *         and for every other algorithm with this provider.
+     */
+    default HmacEngineProvider with(HmacAlgorithm algorithm, HmacEngineProvider provider) {
+        return a -> a == algorithm ? provider.create(a) : create(a);
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.samhg.authentication.generation;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.ProviderException;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A {@link HmacEngine} backed by a {@link Mac} from the installed JCA providers.
+ *
+ * Initialising the {@link Mac} computes the inner and outer padded key state; since
+ * {@link Mac#doFinal()} resets the instance back to that state, it is reused for every moving factor
+ * of the same key.
+ */
+final class JcaHmacEngine implements HmacEngine {
+
+    private final HmacAlgorithm algorithm;
+
+    private final Mac mac;
+
+    /**
+     * Reusable buffer for the 8-byte moving factor.
+     */
+    private final byte[] message = new byte[Long.BYTES];
+
+    JcaHmacEngine(HmacAlgorithm algorithm) throws NoSuchAlgorithmException {
+        this.algorithm = algorithm;
+        this.mac = Mac.getInstance(algorithm.getName());
+    }
+
+    @Override
+    public int getMacLength() {
+        return mac.getMacLength();
+    }
+
+    @Override
+    public void init(byte[] key) throws InvalidKeyException {
+        mac.init(new SecretKeySpec(key, algorithm.getName()));
+    }
+
+    @Override
+    public void compute(long movingFactor, byte[] output) {
+        for (int i = message.length - 1; i >= 0; i--) {
+            message[i] = (byte) movingFactor;
+            movingFactor >>>= Byte.SIZE;
+        }
+
+        try {
+            mac.update(message);
+            mac.doFinal(output, 0);
+        } catch (ShortBufferException e) {
+            throw new ProviderException("Unexpected MAC length for " + algorithm.getName(), e);
+        }
+    }
+
+}
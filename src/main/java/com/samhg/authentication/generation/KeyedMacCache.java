@@ -0,0 +1,283 @@
+package com.samhg.authentication.generation;
+
+import java.lang.ref.WeakReference;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A per-thread cache of {@link HmacEngine} instances that have already been initialised with a key.
+ *
+ * Initialising an engine computes the inner and outer padded key state, which is then reused for
+ * every moving factor of the same secret. Each thread holds, per {@link HmacAlgorithm}, a bounded
+ * least-recently-used map of secret to initialised engine; evicted engines are re-initialised with
+ * the next secret rather than discarded. Engines are created by a {@link HmacEngineProvider}.
+ *
+ * Each thread also owns the output buffer used by {@link #compute}, so computing a HMAC for a
+ * cached secret requires no allocation on the part of this class.
+ *
+ * Each entry holds a heap copy of its secret, which is zeroed when the entry is evicted. Secrets
+ * that are replaced or removed are evicted from every thread's entries by {@link #evict(byte[])};
+ * each thread's entries are therefore guarded by their own lock, which is uncontended except while
+ * evicting.
+ */
+final class KeyedMacCache {
+
+    /**
+     * The maximum number of keyed engines held per thread, per algorithm.
+     */
+    private final int capacity;
+
+    private final HmacEngineProvider engineProvider;
+
+    private final ThreadLocal<Map<HmacAlgorithm, Entries>> entries;
+
+    /**
+     * The entries of every thread, so that {@link #evict(byte[])} can reach them; entries of threads
+     * that have terminated are collected.
+     */
+    private final List<WeakReference<Entries>> allEntries = new ArrayList<>();
+
+    KeyedMacCache(int capacity, HmacEngineProvider engineProvider) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        this.capacity = capacity;
+        this.engineProvider = engineProvider;
+        this.entries = ThreadLocal.withInitial(() -> new EnumMap<>(HmacAlgorithm.class));
+    }
+
+    /**
+     * Gets an engine, for the calling thread, that has been initialised with the given key.
+     *
+     * The returned instance must only be used by the calling thread, and only until its next call
+     * to this cache for the same algorithm, which may re-initialise it with another key.
+     *
+     * @param algorithm the hashing algorithm of the engine.
+     * @param key the key the engine should be initialised with.
+     * @return an initialised engine.
+     */
+    HmacEngine get(HmacAlgorithm algorithm, byte[] key) throws NoSuchAlgorithmException, InvalidKeyException {
+        Entries algorithmEntries = entriesFor(algorithm);
+        synchronized (algorithmEntries) {
+            return algorithmEntries.get(algorithm, key);
+        }
+    }
+
+    /**
+     * Computes the HMAC of the given moving factor, encoded as an 8-byte big-endian message, using
+     * the calling thread's engine for the given key.
+     *
+     * The returned array is owned by the calling thread and is overwritten by its next call to this
+     * method for the same algorithm; callers must consume it before then and must not modify it.
+     *
+     * @param algorithm the hashing algorithm of the engine.
+     * @param key the key the engine should be initialised with.
+     * @param movingFactor the counter or time step to authenticate.
+     * @return the calling thread's output buffer, containing the HMAC.
+     */
+    byte[] compute(HmacAlgorithm algorithm, byte[] key, long movingFactor)
+            throws NoSuchAlgorithmException, InvalidKeyException {
+
+        Entries algorithmEntries = entriesFor(algorithm);
+        synchronized (algorithmEntries) {
+            HmacEngine engine = algorithmEntries.get(algorithm, key);
+
+            if (algorithmEntries.output == null) {
+                algorithmEntries.output = new byte[engine.getMacLength()];
+            }
+            engine.compute(movingFactor, algorithmEntries.output);
+
+            return algorithmEntries.output;
+        }
+    }
+
+    /**
+     * Removes the given key from every thread's entries, zeroing their copies of it.
+     *
+     * An engine initialised with the key is re-initialised with a zero key, overwriting its derived
+     * state, unless it is the engine its thread used last, which may still be in use by that thread
+     * and is instead dropped.
+     *
+     * @param key the key that has been replaced or removed.
+     */
+    void evict(byte[] key) {
+        List<Entries> live = new ArrayList<>();
+        synchronized (allEntries) {
+            for (Iterator<WeakReference<Entries>> it = allEntries.iterator(); it.hasNext(); ) {
+                Entries algorithmEntries = it.next().get();
+                if (algorithmEntries == null) {
+                    it.remove();
+                } else {
+                    live.add(algorithmEntries);
+                }
+            }
+        }
+
+        for (Entries algorithmEntries : live) {
+            synchronized (algorithmEntries) {
+                algorithmEntries.evict(key);
+            }
+        }
+    }
+
+    private Entries entriesFor(HmacAlgorithm algorithm) {
+        Map<HmacAlgorithm, Entries> threadEntries = entries.get();
+        Entries algorithmEntries = threadEntries.get(algorithm);
+
+        if (algorithmEntries == null) {
+            algorithmEntries = new Entries(capacity, engineProvider);
+            threadEntries.put(algorithm, algorithmEntries);
+
+            synchronized (allEntries) {
+                allEntries.removeIf(reference -> reference.get() == null);
+                allEntries.add(new WeakReference<>(algorithmEntries));
+            }
+        }
+
+        return algorithmEntries;
+    }
+
+    /**
+     * The keyed engines of a single thread and algorithm.
+     */
+    private static final class Entries extends LinkedHashMap<Key, KeyedEngine> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        private final HmacEngineProvider engineProvider;
+
+        /**
+         * The most recently used entry, checked before the map so that consecutive requests for
+         * the same secret (e.g. every offset of a validation window) avoid the hash lookup.
+         */
+        private KeyedEngine last;
+
+        /**
+         * An evicted engine, kept so that it can be re-keyed instead of creating a new one.
+         */
+        private HmacEngine spare;
+
+        /**
+         * Reusable buffer for the computed HMAC, allocated on first use.
+         */
+        private byte[] output;
+
+        Entries(int capacity, HmacEngineProvider engineProvider) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.engineProvider = engineProvider;
+        }
+
+        HmacEngine get(HmacAlgorithm algorithm, byte[] key) throws NoSuchAlgorithmException, InvalidKeyException {
+            if (last != null && last.key.matches(key)) {
+                return last.engine;
+            }
+
+            KeyedEngine keyed = get(new Key(key));
+
+            if (keyed == null) {
+                HmacEngine engine = spare != null ? spare : engineProvider.create(algorithm);
+                spare = null;
+                engine.init(key);
+
+                keyed = new KeyedEngine(new Key(key.clone()), engine);
+                put(keyed.key, keyed);
+            }
+
+            last = keyed;
+
+            return keyed.engine;
+        }
+
+        void evict(byte[] key) {
+            KeyedEngine keyed = remove(new Key(key));
+            if (keyed == null) {
+                return;
+            }
+
+            if (keyed == last) {
+                last = null;
+            } else {
+                try {
+                    keyed.engine.init(new byte[key.length]);
+                    spare = keyed.engine;
+                } catch (InvalidKeyException e) {
+                    // The engine was already initialised with a key of the same length
+                }
+            }
+            keyed.key.zero();
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, KeyedEngine> eldest) {
+            if (size() > capacity) {
+                spare = eldest.getValue().engine;
+                if (eldest.getValue() == last) {
+                    last = null;
+                }
+                // Removal matches the entry by identity, so its key may be zeroed beforehand
+                eldest.getKey().zero();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * An engine together with a private copy of the key it was initialised with.
+     */
+    private static final class KeyedEngine {
+
+        private final Key key;
+
+        private final HmacEngine engine;
+
+        KeyedEngine(Key key, HmacEngine engine) {
+            this.key = key;
+            this.engine = engine;
+        }
+    }
+
+    /**
+     * A secret compared by content rather than by reference.
+     */
+    private static final class Key {
+
+        private final byte[] key;
+
+        private final int hash;
+
+        Key(byte[] key) {
+            this.key = key;
+            this.hash = Arrays.hashCode(key);
+        }
+
+        boolean matches(byte[] other) {
+            return Arrays.equals(key, other);
+        }
+
+        void zero() {
+            Arrays.fill(key, (byte) 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(key, ((Key) o).key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+}
@@ -2,16 +2,22 @@ package com.samhg.authentication.generation;
 
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 
 import com.samhg.authentication.key.SharedSecret;
+import com.samhg.authentication.metrics.Metrics;
 
 /**
  * Generates One Time Passwords as outlined in RFC 4226.
+ *
+ * HMACs are computed by {@link HmacEngine}s from a {@link HmacEngineProvider}, by default
+ * {@link HmacEngineProvider#DEFAULT}.
  */
-public final class PasswordFactory {
+public final class PasswordFactory implements PasswordGenerator {
 
 	/**
 	 * Bit mask to truncate the most significant bit of the 32-bit password.
@@ -23,6 +29,75 @@ public final class PasswordFactory {
 	 */
 	private static final int DYNAMIC_TRUNCATION_LENGTH = 4;
 
+	/**
+	 * The number of passwords from which {@link #generateCodes(byte[], long, HmacAlgorithm, int, int[], int, int)}
+	 * splits a range across the common {@link ForkJoinPool}.
+	 */
+	private static final int PARALLEL_THRESHOLD = 4096;
+
+	/**
+	 * Powers of ten indexed by exponent, used as the divisor in {@link #extractPassword(byte[], int)}.
+	 */
+	private static final int[] POWERS_OF_TEN = {
+			1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000
+	};
+
+	/**
+	 * The default number of keyed {@link HmacEngine} instances each thread keeps per {@link HmacAlgorithm}.
+	 */
+	public static final int DEFAULT_KEY_CACHE_SIZE = 64;
+
+	/**
+	 * Per-thread {@link HmacEngine} instances, already initialised with recently used secrets.
+	 */
+	private final KeyedMacCache macCache;
+
+	/**
+	 * Receives a measurement for each HMAC computed.
+	 */
+	private final Metrics metrics;
+
+	/**
+	 * Constructs a new instance, caching up to {@code keyCacheSize} initialised {@link HmacEngine}
+	 * instances per thread and per {@link HmacAlgorithm}.
+	 *
+	 * @param keyCacheSize the number of distinct secrets each thread keeps key state for.
+	 * @param metrics receives a measurement for each HMAC computed.
+	 * @param engineProvider creates the engine HMACs of each algorithm are computed with.
+	 */
+	public PasswordFactory(int keyCacheSize, Metrics metrics, HmacEngineProvider engineProvider) {
+		this.macCache = new KeyedMacCache(keyCacheSize, engineProvider);
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Constructs a new instance, caching up to {@code keyCacheSize} initialised {@link HmacEngine}
+	 * instances per thread and per {@link HmacAlgorithm}.
+	 *
+	 * @param keyCacheSize the number of distinct secrets each thread keeps key state for.
+	 * @param metrics receives a measurement for each HMAC computed.
+	 */
+	public PasswordFactory(int keyCacheSize, Metrics metrics) {
+		this(keyCacheSize, metrics, HmacEngineProvider.DEFAULT);
+	}
+
+	/**
+	 * Constructs a new instance, caching up to {@code keyCacheSize} initialised {@link HmacEngine}
+	 * instances per thread and per {@link HmacAlgorithm}.
+	 *
+	 * @param keyCacheSize the number of distinct secrets each thread keeps key state for.
+	 */
+	public PasswordFactory(int keyCacheSize) {
+		this(keyCacheSize, Metrics.NOOP);
+	}
+
+	/**
+	 * Constructs a new instance using {@link #DEFAULT_KEY_CACHE_SIZE}.
+	 */
+	public PasswordFactory() {
+		this(DEFAULT_KEY_CACHE_SIZE);
+	}
+
 	/**
 	 * Generates HMAC and then extracts one-time password from said HMAC.
 	 *
@@ -33,8 +108,10 @@ public final class PasswordFactory {
 	 * @return a (6-digit) one time password.
 	 */
 	public String generatePassword(byte[] rawSecret, byte[] movingFactor, HmacAlgorithm algorithm, int digits) {
+		checkDigits(digits);
 		try {
 			byte[] hmac = createHMAC(algorithm, rawSecret, movingFactor);
+			metrics.onHmac(algorithm);
 			int dt = extractPassword(hmac, digits);
 
 			return pad(dt, digits);
@@ -44,6 +121,121 @@ public final class PasswordFactory {
 		}
 	}
 
+	/**
+	 * Generates a HMAC and then extracts a one-time password from said HMAC, as an integer.
+	 *
+	 * Unlike {@link #generatePassword(byte[], byte[], HmacAlgorithm, int)}, this method encodes
+	 * the moving factor into a per-thread buffer and returns the password without building a
+	 * {@link String}, so repeated calls for a secret already cached by this factory do not allocate.
+	 * The result should be compared against a password parsed with {@link #parsePassword(String, int)}.
+	 *
+	 * @param rawSecret randomly generated raw data, shared privately, that makes up the {@link SharedSecret}.
+	 * @param movingFactor the counter or time step the password is generated for.
+	 * @param algorithm the hashing algorithm used to create a HMAC.
+	 * @param digits the number of digits the password should be, this value should be between 6 and 8.
+	 * @return the one time password, as an integer less than 10 to the power of {@code digits}.
+	 */
+	@Override
+	public int generateCode(byte[] rawSecret, long movingFactor, HmacAlgorithm algorithm, int digits) {
+		checkDigits(digits);
+		try {
+			byte[] hmac = macCache.compute(algorithm, rawSecret, movingFactor);
+			metrics.onHmac(algorithm);
+
+			return extractPassword(hmac, digits);
+
+		} catch (InvalidKeyException | NoSuchAlgorithmException e) {
+			throw new RuntimeException("Failed to create HMAC!", e);
+		}
+	}
+
+	/**
+	 * Generates the passwords for a contiguous range of moving factors of one secret.
+	 *
+	 * Each thread generating part of the range takes its keyed {@link HmacEngine} from {@link #macCache}
+	 * once and reuses it, with a single output buffer, for every moving factor of its part.
+	 * Ranges of {@link #PARALLEL_THRESHOLD} or more passwords are split across the common
+	 * {@link ForkJoinPool}.
+	 */
+	@Override
+	public void generateCodes(byte[] rawSecret, long movingFactor, HmacAlgorithm algorithm, int digits,
+			int[] codes, int offset, int length) {
+
+		checkDigits(digits);
+		if (offset < 0 || length < 0 || offset + length > codes.length) {
+			throw new IndexOutOfBoundsException("Range [" + offset + ", " + (offset + length) + ") is outside the array");
+		}
+
+		if (length < PARALLEL_THRESHOLD) {
+			generateRange(rawSecret, movingFactor, algorithm, digits, codes, offset, length);
+		} else {
+			ForkJoinPool.commonPool().invoke(new RangeTask(rawSecret, movingFactor, algorithm, digits, codes, offset, length));
+		}
+	}
+
+	/**
+	 * Zeroes every thread's cached copy of the secret and drops the {@link HmacEngine} state derived
+	 * from it, see {@link KeyedMacCache#evict(byte[])}.
+	 */
+	@Override
+	public void evict(byte[] rawSecret) {
+		macCache.evict(rawSecret);
+	}
+
+	/**
+	 * Generates the passwords for a contiguous range of moving factors of one secret.
+	 *
+	 * @param rawSecret randomly generated raw data, shared privately, that makes up the {@link SharedSecret}.
+	 * @param movingFactor the first counter or time step of the range.
+	 * @param algorithm the hashing algorithm used to create a HMAC.
+	 * @param digits the number of digits the passwords should be.
+	 * @param count the number of passwords to generate.
+	 * @return the password for {@code movingFactor + i} at each index {@code i}.
+	 */
+	public int[] generateCodes(byte[] rawSecret, long movingFactor, HmacAlgorithm algorithm, int digits, int count) {
+		int[] codes = new int[count];
+		generateCodes(rawSecret, movingFactor, algorithm, digits, codes, 0, count);
+
+		return codes;
+	}
+
+	/**
+	 * Parses a password, as entered by a user, into the integer form returned by
+	 * {@link #generateCode(byte[], long, HmacAlgorithm, int)}.
+	 *
+	 * @param password the password to parse.
+	 * @param digits the expected length of the password.
+	 * @return the password as an integer, or -1 if it is not exactly {@code digits} decimal digits.
+	 */
+	public static int parsePassword(String password, int digits) {
+		checkDigits(digits);
+		if (password == null || password.length() != digits) {
+			return -1;
+		}
+
+		int code = 0;
+		for (int i = 0; i < digits; i++) {
+			int digit = password.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			code = code * 10 + digit;
+		}
+
+		return code;
+	}
+
+	/**
+	 * Checks that passwords of the given length can be represented by {@link #POWERS_OF_TEN}.
+	 *
+	 * @param digits the password length.
+	 */
+	private static void checkDigits(int digits) {
+		if (digits < 1 || digits >= POWERS_OF_TEN.length) {
+			throw new IllegalArgumentException("Unsupported number of digits: " + digits);
+		}
+	}
+
 	/**
 	 * Left pads truncated passwords with 0s.
 	 *
@@ -52,10 +244,14 @@ public final class PasswordFactory {
 	 * @return the number parameter as a string with 0s at the start, if necessary.
 	 */
 	private String pad(int number, int digits) {
-		String password = Integer.toString(number);
-		int padSize = digits - password.length();
+		char[] password = new char[digits];
+
+		for (int i = digits - 1; i >= 0; i--) {
+			password[i] = (char) ('0' + number % 10);
+			number /= 10;
+		}
 
-		return "0".repeat(padSize) + password;
+		return new String(password);
 	}
 
 	/**
@@ -78,7 +274,7 @@ public final class PasswordFactory {
 	 */
 	private int extractPassword(byte[] hmac, int digits) {
 		int offset = hmac[hmac.length - 1] & 0xF;
-		int divisor = (int) Math.pow(10, digits);
+		int divisor = POWERS_OF_TEN[digits];
 		int password = 0;
 
 		for (int i = offset; i < offset + DYNAMIC_TRUNCATION_LENGTH; ++i) {
@@ -93,6 +289,10 @@ public final class PasswordFactory {
 	 * Creates a (Hash-based) Message Authentication Code using the specified hash function,
 	 * key and message.
 	 *
+	 * An 8-byte moving factor is authenticated by the {@link HmacEngine} taken from {@link #macCache},
+	 * so the key schedule is only computed the first time a thread sees a given secret. Messages of
+	 * any other length are authenticated by a new {@link Mac}.
+	 *
 	 * @param key the key that is combined with the moving factor.
 	 * @param movingFactor the data that is combined with the key.
 	 * @return a hash-based message authentication code created by hashing the key and message.
@@ -100,11 +300,86 @@ public final class PasswordFactory {
 	private byte[] createHMAC(HmacAlgorithm algorithm, byte[] key, byte[] movingFactor)
 			throws NoSuchAlgorithmException, InvalidKeyException {
 
-		String algorithmName = algorithm.getName();
-		Mac mac = Mac.getInstance(algorithmName);
-		mac.init(new SecretKeySpec(key, algorithmName));
+		if (movingFactor.length == Long.BYTES) {
+			long value = 0;
+			for (byte b : movingFactor) {
+				value = value << Byte.SIZE | (b & 0xFF);
+			}
+			return macCache.compute(algorithm, key, value);
+		}
+
+		Mac mac = Mac.getInstance(algorithm.getName());
+		mac.init(new SecretKeySpec(key, algorithm.getName()));
 
 		return mac.doFinal(movingFactor);
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Generates a range of passwords on the calling thread, with its keyed {@link HmacEngine}.
+	 */
+	private void generateRange(byte[] rawSecret, long movingFactor, HmacAlgorithm algorithm, int digits,
+			int[] codes, int offset, int length) {
+
+		try {
+			HmacEngine engine = macCache.get(algorithm, rawSecret);
+			byte[] hmac = new byte[engine.getMacLength()];
+
+			for (int i = 0; i < length; i++) {
+				engine.compute(movingFactor + i, hmac);
+				metrics.onHmac(algorithm);
+
+				codes[offset + i] = extractPassword(hmac, digits);
+			}
+
+		} catch (InvalidKeyException | NoSuchAlgorithmException e) {
+			throw new RuntimeException("Failed to create HMAC!", e);
+		}
+	}
+
+	/**
+	 * Splits a range of passwords in half until each part is smaller than {@link #PARALLEL_THRESHOLD}.
+	 */
+	private final class RangeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final byte[] rawSecret;
+
+		private final long movingFactor;
+
+		private final HmacAlgorithm algorithm;
+
+		private final int digits;
+
+		private final int[] codes;
+
+		private final int offset;
+
+		private final int length;
+
+		RangeTask(byte[] rawSecret, long movingFactor, HmacAlgorithm algorithm, int digits,
+				int[] codes, int offset, int length) {
+
+			this.rawSecret = rawSecret;
+			this.movingFactor = movingFactor;
+			this.algorithm = algorithm;
+			this.digits = digits;
+			this.codes = codes;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		protected void compute() {
+			if (length < PARALLEL_THRESHOLD) {
+				generateRange(rawSecret, movingFactor, algorithm, digits, codes, offset, length);
+				return;
+			}
+
+			int half = length >>> 1;
+			invokeAll(new RangeTask(rawSecret, movingFactor, algorithm, digits, codes, offset, half),
+					new RangeTask(rawSecret, movingFactor + half, algorithm, digits, codes, offset + half, length - half));
+		}
+	}
+
+}
\ No newline at end of file
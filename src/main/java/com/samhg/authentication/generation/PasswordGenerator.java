@@ -0,0 +1,52 @@
+package com.samhg.authentication.generation;
+
+/**
+ * Generates One Time Passwords, as integers, for a secret and moving factor.
+ */
+public interface PasswordGenerator {
+
+    /**
+     * Generates the password for the given secret and moving factor.
+     *
+     * @param rawSecret the shared secret.
+     * @param movingFactor the counter or time step the password is generated for.
+     * @param algorithm the hashing algorithm used to create a HMAC.
+     * @param digits the number of digits the password should be.
+     * @return the one time password, as an integer less than 10 to the power of {@code digits}.
+     */
+    int generateCode(byte[] rawSecret, long movingFactor, HmacAlgorithm algorithm, int digits);
+
+    /**
+     * Generates the passwords for a contiguous range of moving factors of one secret, writing the
+     * password for {@code movingFactor + i} to {@code codes[offset + i]}.
+     *
+     * @param rawSecret the shared secret.
+     * @param movingFactor the first counter or time step of the range.
+     * @param algorithm the hashing algorithm used to create a HMAC.
+     * @param digits the number of digits the passwords should be.
+     * @param codes the array the passwords are written to.
+     * @param offset the index of {@code codes} the first password is written to.
+     * @param length the number of passwords to generate.
+     */
+    default void generateCodes(byte[] rawSecret, long movingFactor, HmacAlgorithm algorithm, int digits,
+                               int[] codes, int offset, int length) {
+
+        if (offset < 0 || length < 0 || offset + length > codes.length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + (offset + length) + ") is outside the array");
+        }
+        for (int i = 0; i < length; i++) {
+            codes[offset + i] = generateCode(rawSecret, movingFactor + i, algorithm, digits);
+        }
+    }
+
+    /**
+     * Discards and zeroes any copy of the given secret, or of state derived from it, held by this
+     * generator. Generators that keep no such copies need not override this method.
+     *
+     * @param rawSecret the secret that has been replaced or removed.
+     * @see com.samhg.authentication.key.SecretStore#addEvictionListener
+     */
+    default void evict(byte[] rawSecret) {
+    }
+
+}
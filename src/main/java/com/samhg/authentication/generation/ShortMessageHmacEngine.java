@@ -0,0 +1,454 @@
+package com.samhg.authentication.generation;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.ProviderException;
+import java.util.Arrays;
+
+/**
+ * Pure-Java {@link HmacEngine}s for SHA-1, SHA-256 and SHA-512, specialised for the 8-byte
+ * messages of One Time Passwords.
+ *
+ * HMAC(K, m) is H((K ^ opad) || H((K ^ ipad) || m)). Both padded keys fill exactly one block, so
+ * {@link #init(byte[])} compresses each once and keeps the two resulting states. An 8-byte message
+ * and the inner digest each fit in a single final block together with the hash padding, so every
+ * HMAC is exactly two compressions from those states, into reused word arrays, with no provider
+ * dispatch, buffering or allocation. The padding and length words of both final blocks are
+ * constants.
+ */
+abstract class ShortMessageHmacEngine implements HmacEngine {
+
+    private static final byte INNER_PAD = 0x36;
+
+    private static final byte OUTER_PAD = 0x5c;
+
+    /**
+     * The size, in bytes, of the hash function's blocks.
+     */
+    private final int blockSize;
+
+    /**
+     * The JCA name of the hash function, used only to hash keys longer than a block.
+     */
+    private final String digestName;
+
+    ShortMessageHmacEngine(int blockSize, String digestName) {
+        this.blockSize = blockSize;
+        this.digestName = digestName;
+    }
+
+    /**
+     * Creates a new, uninitialised engine for the given algorithm.
+     */
+    static HmacEngine create(HmacAlgorithm algorithm) {
+        switch (algorithm) {
+            case SHA1:
+                return new Sha1();
+            case SHA256:
+                return new Sha256();
+            case SHA512:
+                return new Sha512();
+            default:
+                throw new IllegalArgumentException("Unsupported algorithm: " + algorithm);
+        }
+    }
+
+    @Override
+    public final void init(byte[] key) {
+        byte[] blockKey = new byte[blockSize];
+        if (key.length > blockSize) {
+            try {
+                byte[] hashedKey = MessageDigest.getInstance(digestName).digest(key);
+                System.arraycopy(hashedKey, 0, blockKey, 0, hashedKey.length);
+                Arrays.fill(hashedKey, (byte) 0);
+
+            } catch (NoSuchAlgorithmException e) {
+                throw new ProviderException("Unavailable digest " + digestName, e);
+            }
+        } else {
+            System.arraycopy(key, 0, blockKey, 0, key.length);
+        }
+
+        byte[] innerBlock = new byte[blockSize];
+        byte[] outerBlock = new byte[blockSize];
+        for (int i = 0; i < blockSize; i++) {
+            innerBlock[i] = (byte) (blockKey[i] ^ INNER_PAD);
+            outerBlock[i] = (byte) (blockKey[i] ^ OUTER_PAD);
+        }
+
+        prepare(innerBlock, outerBlock);
+
+        Arrays.fill(blockKey, (byte) 0);
+        Arrays.fill(innerBlock, (byte) 0);
+        Arrays.fill(outerBlock, (byte) 0);
+    }
+
+    /**
+     * Compresses the padded keys from the initial hash state into the inner and outer states.
+     */
+    abstract void prepare(byte[] innerBlock, byte[] outerBlock);
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static void writeInt(int value, byte[] bytes, int offset) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static final class Sha1 extends ShortMessageHmacEngine {
+
+        private static final int[] INITIAL_STATE = { 0x67452301, 0xefcdab89, 0x98badcfe, 0x10325476, 0xc3d2e1f0 };
+
+        private final int[] innerState = new int[5];
+
+        private final int[] outerState = new int[5];
+
+        private final int[] digest = new int[5];
+
+        private final int[] words = new int[80];
+
+        Sha1() {
+            super(64, "SHA-1");
+        }
+
+        @Override
+        public int getMacLength() {
+            return 20;
+        }
+
+        @Override
+        void prepare(byte[] innerBlock, byte[] outerBlock) {
+            for (int i = 0; i < 16; i++) {
+                words[i] = readInt(innerBlock, i * 4);
+            }
+            compress(INITIAL_STATE, innerState);
+
+            for (int i = 0; i < 16; i++) {
+                words[i] = readInt(outerBlock, i * 4);
+            }
+            compress(INITIAL_STATE, outerState);
+        }
+
+        @Override
+        public void compute(long movingFactor, byte[] output) {
+            words[0] = (int) (movingFactor >>> 32);
+            words[1] = (int) movingFactor;
+            words[2] = 0x80000000;
+            Arrays.fill(words, 3, 15, 0);
+            words[15] = (64 + 8) * 8;
+            compress(innerState, digest);
+
+            System.arraycopy(digest, 0, words, 0, 5);
+            words[5] = 0x80000000;
+            Arrays.fill(words, 6, 15, 0);
+            words[15] = (64 + 20) * 8;
+            compress(outerState, digest);
+
+            for (int i = 0; i < 5; i++) {
+                writeInt(digest[i], output, i * 4);
+            }
+        }
+
+        /**
+         * Compresses the block in the first 16 {@link #words} from the given state.
+         */
+        private void compress(int[] state, int[] result) {
+            int[] w = words;
+            for (int t = 16; t < 80; t++) {
+                w[t] = Integer.rotateLeft(w[t - 3] ^ w[t - 8] ^ w[t - 14] ^ w[t - 16], 1);
+            }
+
+            int a = state[0];
+            int b = state[1];
+            int c = state[2];
+            int d = state[3];
+            int e = state[4];
+
+            for (int t = 0; t < 20; t++) {
+                int temp = Integer.rotateLeft(a, 5) + ((b & c) | (~b & d)) + e + 0x5a827999 + w[t];
+                e = d;
+                d = c;
+                c = Integer.rotateLeft(b, 30);
+                b = a;
+                a = temp;
+            }
+            for (int t = 20; t < 40; t++) {
+                int temp = Integer.rotateLeft(a, 5) + (b ^ c ^ d) + e + 0x6ed9eba1 + w[t];
+                e = d;
+                d = c;
+                c = Integer.rotateLeft(b, 30);
+                b = a;
+                a = temp;
+            }
+            for (int t = 40; t < 60; t++) {
+                int temp = Integer.rotateLeft(a, 5) + ((b & c) | (b & d) | (c & d)) + e + 0x8f1bbcdc + w[t];
+                e = d;
+                d = c;
+                c = Integer.rotateLeft(b, 30);
+                b = a;
+                a = temp;
+            }
+            for (int t = 60; t < 80; t++) {
+                int temp = Integer.rotateLeft(a, 5) + (b ^ c ^ d) + e + 0xca62c1d6 + w[t];
+                e = d;
+                d = c;
+                c = Integer.rotateLeft(b, 30);
+                b = a;
+                a = temp;
+            }
+
+            result[0] = state[0] + a;
+            result[1] = state[1] + b;
+            result[2] = state[2] + c;
+            result[3] = state[3] + d;
+            result[4] = state[4] + e;
+        }
+    }
+
+    private static final class Sha256 extends ShortMessageHmacEngine {
+
+        private static final int[] INITIAL_STATE = {
+                0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+        };
+
+        private static final int[] ROUND_CONSTANTS = {
+                0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+                0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+                0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+                0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+                0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+                0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+                0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+                0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+        };
+
+        private final int[] innerState = new int[8];
+
+        private final int[] outerState = new int[8];
+
+        private final int[] digest = new int[8];
+
+        private final int[] words = new int[64];
+
+        Sha256() {
+            super(64, "SHA-256");
+        }
+
+        @Override
+        public int getMacLength() {
+            return 32;
+        }
+
+        @Override
+        void prepare(byte[] innerBlock, byte[] outerBlock) {
+            for (int i = 0; i < 16; i++) {
+                words[i] = readInt(innerBlock, i * 4);
+            }
+            compress(INITIAL_STATE, innerState);
+
+            for (int i = 0; i < 16; i++) {
+                words[i] = readInt(outerBlock, i * 4);
+            }
+            compress(INITIAL_STATE, outerState);
+        }
+
+        @Override
+        public void compute(long movingFactor, byte[] output) {
+            words[0] = (int) (movingFactor >>> 32);
+            words[1] = (int) movingFactor;
+            words[2] = 0x80000000;
+            Arrays.fill(words, 3, 15, 0);
+            words[15] = (64 + 8) * 8;
+            compress(innerState, digest);
+
+            System.arraycopy(digest, 0, words, 0, 8);
+            words[8] = 0x80000000;
+            Arrays.fill(words, 9, 15, 0);
+            words[15] = (64 + 32) * 8;
+            compress(outerState, digest);
+
+            for (int i = 0; i < 8; i++) {
+                writeInt(digest[i], output, i * 4);
+            }
+        }
+
+        /**
+         * Compresses the block in the first 16 {@link #words} from the given state.
+         */
+        private void compress(int[] state, int[] result) {
+            int[] w = words;
+            for (int t = 16; t < 64; t++) {
+                int s0 = Integer.rotateRight(w[t - 15], 7) ^ Integer.rotateRight(w[t - 15], 18) ^ (w[t - 15] >>> 3);
+                int s1 = Integer.rotateRight(w[t - 2], 17) ^ Integer.rotateRight(w[t - 2], 19) ^ (w[t - 2] >>> 10);
+                w[t] = w[t - 16] + s0 + w[t - 7] + s1;
+            }
+
+            int a = state[0];
+            int b = state[1];
+            int c = state[2];
+            int d = state[3];
+            int e = state[4];
+            int f = state[5];
+            int g = state[6];
+            int h = state[7];
+
+            for (int t = 0; t < 64; t++) {
+                int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+                int t1 = h + s1 + ((e & f) ^ (~e & g)) + ROUND_CONSTANTS[t] + w[t];
+                int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+                int t2 = s0 + ((a & b) ^ (a & c) ^ (b & c));
+
+                h = g;
+                g = f;
+                f = e;
+                e = d + t1;
+                d = c;
+                c = b;
+                b = a;
+                a = t1 + t2;
+            }
+
+            result[0] = state[0] + a;
+            result[1] = state[1] + b;
+            result[2] = state[2] + c;
+            result[3] = state[3] + d;
+            result[4] = state[4] + e;
+            result[5] = state[5] + f;
+            result[6] = state[6] + g;
+            result[7] = state[7] + h;
+        }
+    }
+
+    private static final class Sha512 extends ShortMessageHmacEngine {
+
+        private static final long[] INITIAL_STATE = {
+                0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+                0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L
+        };
+
+        private static final long[] ROUND_CONSTANTS = {
+                0x428a2f98d728ae22L, 0x7137449123ef65cdL, 0xb5c0fbcfec4d3b2fL, 0xe9b5dba58189dbbcL,
+                0x3956c25bf348b538L, 0x59f111f1b605d019L, 0x923f82a4af194f9bL, 0xab1c5ed5da6d8118L,
+                0xd807aa98a3030242L, 0x12835b0145706fbeL, 0x243185be4ee4b28cL, 0x550c7dc3d5ffb4e2L,
+                0x72be5d74f27b896fL, 0x80deb1fe3b1696b1L, 0x9bdc06a725c71235L, 0xc19bf174cf692694L,
+                0xe49b69c19ef14ad2L, 0xefbe4786384f25e3L, 0x0fc19dc68b8cd5b5L, 0x240ca1cc77ac9c65L,
+                0x2de92c6f592b0275L, 0x4a7484aa6ea6e483L, 0x5cb0a9dcbd41fbd4L, 0x76f988da831153b5L,
+                0x983e5152ee66dfabL, 0xa831c66d2db43210L, 0xb00327c898fb213fL, 0xbf597fc7beef0ee4L,
+                0xc6e00bf33da88fc2L, 0xd5a79147930aa725L, 0x06ca6351e003826fL, 0x142929670a0e6e70L,
+                0x27b70a8546d22ffcL, 0x2e1b21385c26c926L, 0x4d2c6dfc5ac42aedL, 0x53380d139d95b3dfL,
+                0x650a73548baf63deL, 0x766a0abb3c77b2a8L, 0x81c2c92e47edaee6L, 0x92722c851482353bL,
+                0xa2bfe8a14cf10364L, 0xa81a664bbc423001L, 0xc24b8b70d0f89791L, 0xc76c51a30654be30L,
+                0xd192e819d6ef5218L, 0xd69906245565a910L, 0xf40e35855771202aL, 0x106aa07032bbd1b8L,
+                0x19a4c116b8d2d0c8L, 0x1e376c085141ab53L, 0x2748774cdf8eeb99L, 0x34b0bcb5e19b48a8L,
+                0x391c0cb3c5c95a63L, 0x4ed8aa4ae3418acbL, 0x5b9cca4f7763e373L, 0x682e6ff3d6b2b8a3L,
+                0x748f82ee5defb2fcL, 0x78a5636f43172f60L, 0x84c87814a1f0ab72L, 0x8cc702081a6439ecL,
+                0x90befffa23631e28L, 0xa4506cebde82bde9L, 0xbef9a3f7b2c67915L, 0xc67178f2e372532bL,
+                0xca273eceea26619cL, 0xd186b8c721c0c207L, 0xeada7dd6cde0eb1eL, 0xf57d4f7fee6ed178L,
+                0x06f067aa72176fbaL, 0x0a637dc5a2c898a6L, 0x113f9804bef90daeL, 0x1b710b35131c471bL,
+                0x28db77f523047d84L, 0x32caab7b40c72493L, 0x3c9ebe0a15c9bebcL, 0x431d67c49c100d4cL,
+                0x4cc5d4becb3e42b6L, 0x597f299cfc657e2aL, 0x5fcb6fab3ad6faecL, 0x6c44198c4a475817L
+        };
+
+        private final long[] innerState = new long[8];
+
+        private final long[] outerState = new long[8];
+
+        private final long[] digest = new long[8];
+
+        private final long[] words = new long[80];
+
+        Sha512() {
+            super(128, "SHA-512");
+        }
+
+        @Override
+        public int getMacLength() {
+            return 64;
+        }
+
+        @Override
+        void prepare(byte[] innerBlock, byte[] outerBlock) {
+            for (int i = 0; i < 16; i++) {
+                words[i] = (long) readInt(innerBlock, i * 8) << 32 | readInt(innerBlock, i * 8 + 4) & 0xFFFFFFFFL;
+            }
+            compress(INITIAL_STATE, innerState);
+
+            for (int i = 0; i < 16; i++) {
+                words[i] = (long) readInt(outerBlock, i * 8) << 32 | readInt(outerBlock, i * 8 + 4) & 0xFFFFFFFFL;
+            }
+            compress(INITIAL_STATE, outerState);
+        }
+
+        @Override
+        public void compute(long movingFactor, byte[] output) {
+            words[0] = movingFactor;
+            words[1] = 0x8000000000000000L;
+            Arrays.fill(words, 2, 15, 0);
+            words[15] = (128 + 8) * 8;
+            compress(innerState, digest);
+
+            System.arraycopy(digest, 0, words, 0, 8);
+            words[8] = 0x8000000000000000L;
+            Arrays.fill(words, 9, 15, 0);
+            words[15] = (128 + 64) * 8;
+            compress(outerState, digest);
+
+            for (int i = 0; i < 8; i++) {
+                writeInt((int) (digest[i] >>> 32), output, i * 8);
+                writeInt((int) digest[i], output, i * 8 + 4);
+            }
+        }
+
+        /**
+         * Compresses the block in the first 16 {@link #words} from the given state.
+         */
+        private void compress(long[] state, long[] result) {
+            long[] w = words;
+            for (int t = 16; t < 80; t++) {
+                long s0 = Long.rotateRight(w[t - 15], 1) ^ Long.rotateRight(w[t - 15], 8) ^ (w[t - 15] >>> 7);
+                long s1 = Long.rotateRight(w[t - 2], 19) ^ Long.rotateRight(w[t - 2], 61) ^ (w[t - 2] >>> 6);
+                w[t] = w[t - 16] + s0 + w[t - 7] + s1;
+            }
+
+            long a = state[0];
+            long b = state[1];
+            long c = state[2];
+            long d = state[3];
+            long e = state[4];
+            long f = state[5];
+            long g = state[6];
+            long h = state[7];
+
+            for (int t = 0; t < 80; t++) {
+                long s1 = Long.rotateRight(e, 14) ^ Long.rotateRight(e, 18) ^ Long.rotateRight(e, 41);
+                long t1 = h + s1 + ((e & f) ^ (~e & g)) + ROUND_CONSTANTS[t] + w[t];
+                long s0 = Long.rotateRight(a, 28) ^ Long.rotateRight(a, 34) ^ Long.rotateRight(a, 39);
+                long t2 = s0 + ((a & b) ^ (a & c) ^ (b & c));
+
+                h = g;
+                g = f;
+                f = e;
+                e = d + t1;
+                d = c;
+                c = b;
+                b = a;
+                a = t1 + t2;
+            }
+
+            result[0] = state[0] + a;
+            result[1] = state[1] + b;
+            result[2] = state[2] + c;
+            result[3] = state[3] + d;
+            result[4] = state[4] + e;
+            result[5] = state[5] + f;
+            result[6] = state[6] + g;
+            result[7] = state[7] + h;
+        }
+    }
+
+}
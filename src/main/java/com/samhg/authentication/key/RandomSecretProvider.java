@@ -1,19 +1,56 @@
 package com.samhg.authentication.key;
 
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public final class RandomSecretProvider implements SharedSecretProvider {
 
 	/**
-	 * {@link SecureRandom} instance that is periodically re-seeded.
+	 * Pool of {@link SecureRandom} instances that are periodically re-seeded.
 	 */
-	private final ReseedingSecureRandom random = new ReseedingSecureRandom();
+	private final SecureRandomPool random;
+
+	/**
+	 * Constructs a new instance.
+	 *
+	 * @param random the pool secrets are generated from.
+	 */
+	public RandomSecretProvider(SecureRandomPool random) {
+		this.random = random;
+	}
+
+	public RandomSecretProvider() {
+		this(new SecureRandomPool());
+	}
 	
 	@Override
 	public SharedSecret createSecret() {
 		byte[] key = random.getNextBytes(KeyConstants.KEY_SIZE);
 
-		return new SharedSecret(key, KeyConstants.KEY_ENCODING_SCHEME.encode(key));
+		return new SharedSecret(key);
+	}
+
+	/**
+	 * Generates the bytes of every secret with a single request to {@link #random}.
+	 */
+	@Override
+	public List<SharedSecret> createSecrets(int count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Count must not be negative: " + count);
+		}
+
+		byte[] keys = random.getNextBytes(Math.multiplyExact(count, KeyConstants.KEY_SIZE));
+		List<SharedSecret> secrets = new ArrayList<>(count);
+
+		for (int offset = 0; offset < keys.length; offset += KeyConstants.KEY_SIZE) {
+			byte[] key = Arrays.copyOfRange(keys, offset, offset + KeyConstants.KEY_SIZE);
+			secrets.add(new SharedSecret(key));
+		}
+		Arrays.fill(keys, (byte) 0);
+
+		return secrets;
 	}
 
 }
\ No newline at end of file
@@ -2,13 +2,26 @@ package com.samhg.authentication.key;
 
 import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.samhg.authentication.metrics.Metrics;
+
 import static com.samhg.authentication.key.KeyConstants.*;
 
 /**
  * A wrapper class of {@link SecureRandom} which places restrictions on the number of times
+ *
+ * Instances are thread-safe: generating bytes, and the reseed check that precedes it, hold the
+ * instance's lock, so the reseed policy holds under concurrent use. For concurrent generation
+ * without contention, see {@link SecureRandomPool}.
  */
 public final class ReseedingSecureRandom {
 
+	/**
+	 * The number of bytes of fresh seed material mixed into {@link #random} when reseeding.
+	 */
+	private static final int RESEED_SIZE = 20;
+
 	/**
 	 * A {@link SecureRandom} for PRNG.
 	 */
@@ -20,23 +33,40 @@ public final class ReseedingSecureRandom {
 	private final long reseedBytes;
 
 	/**
-	 * The amount of time before {@link #random} should be reseeded.
+	 * The amount of time, in nanoseconds, before {@link #random} should be reseeded.
 	 */
 	private final long reseedInterval;
 
+	/**
+	 * Receives a measurement each time {@link #random} is reseeded.
+	 */
+	private final Metrics metrics;
+
 	/**
 	 * The amount of bytes that {@link #random} has generated.
 	 */
-	private int bytesGenerated;
+	private long bytesGenerated;
 	
 	/**
 	 * The time at which {@link #random} was previously updated.
 	 */
 	private long lastUpdate = System.nanoTime();
 
-	public ReseedingSecureRandom(long reseedBytes, long reseedInterval) {
+	/**
+	 * Constructs a new instance.
+	 *
+	 * @param reseedBytes the number of bytes to generate before reseeding.
+	 * @param reseedInterval the number of milliseconds between reseeds.
+	 * @param metrics receives a measurement each time the random is reseeded.
+	 */
+	public ReseedingSecureRandom(long reseedBytes, long reseedInterval, Metrics metrics) {
 		this.reseedBytes = reseedBytes;
-		this.reseedInterval = reseedInterval;
+		this.reseedInterval = TimeUnit.MILLISECONDS.toNanos(reseedInterval);
+		this.metrics = metrics;
+	}
+
+	public ReseedingSecureRandom(long reseedBytes, long reseedInterval) {
+		this(reseedBytes, reseedInterval, Metrics.NOOP);
 	}
 
 	public ReseedingSecureRandom() {
@@ -50,15 +80,31 @@ public final class ReseedingSecureRandom {
 	 *
 	 * This method should be called before any use of {@link #random} to assure that
 	 * it is re-seeded periodically.
+	 *
+	 * {@link SecureRandom#reseed()} is not supported by {@link KeyConstants#ALGORITHM}, so fresh seed
+	 * material is instead supplemented using {@link SecureRandom#setSeed(byte[])}.
+	 *
+	 * Callers must hold the lock of this instance.
 	 */
 	private void updateRandom() {
 		if (bytesGenerated >= reseedBytes || System.nanoTime() - lastUpdate >= reseedInterval) {
 			lastUpdate = System.nanoTime();
 			bytesGenerated = 0;
-			random.reseed();
+			random.setSeed(random.generateSeed(RESEED_SIZE));
+			metrics.onReseed();
 		}
 	}
 
+	/**
+	 * Checks if the reseed interval has elapsed since {@link #random} was last reseeded, in which
+	 * case bytes it generated before now should no longer be handed out.
+	 *
+	 * @return true if the next use of {@link #random} will reseed it.
+	 */
+	synchronized boolean isReseedIntervalElapsed() {
+		return System.nanoTime() - lastUpdate >= reseedInterval;
+	}
+
 	/**
 	 * Gets an instance of {@link SecureRandom} using {@link KeyConstants#ALGORITHM} and
 	 * {@link KeyConstants#PROVIDER} as the algorithm and provider parameters respectively.
@@ -81,24 +127,36 @@ public final class ReseedingSecureRandom {
 	 * @return an array of random bytes.
 	 */
 	public byte[] getNextBytes(int size) {
-		updateRandom();
-
 		byte[] bytes = new byte[size];
-		random.nextBytes(bytes);
-		bytesGenerated += size;
+		nextBytes(bytes);
 
 		return bytes;
 	}
+
+	/**
+	 * Fills the given array with the next bytes from {@link #random}, reseeding first if required.
+	 *
+	 * @param bytes the array to fill.
+	 */
+	public synchronized void nextBytes(byte[] bytes) {
+		updateRandom();
+
+		random.nextBytes(bytes);
+		bytesGenerated += bytes.length;
+	}
 	
 	/**
 	 * Gets {@link #random} and calls {@link #updateRandom}
+	 *
+	 * Bytes generated directly from the returned instance are not counted towards reseeding, and
+	 * the instance is not guarded by the lock of this wrapper.
 	 * 
 	 * @return
 	 */
-	public SecureRandom getSecureRandom() {
+	public synchronized SecureRandom getSecureRandom() {
 		updateRandom();
 
 		return random;
 	}
 	
-}
\ No newline at end of file
+}
\ No newline at end of file
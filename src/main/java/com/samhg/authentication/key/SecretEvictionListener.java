@@ -0,0 +1,20 @@
+package com.samhg.authentication.key;
+
+/**
+ * Notified by a {@link SecretStore} whenever one of its secrets is replaced or removed, so that
+ * copies of the secret held elsewhere, such as by a password generator's caches, can be discarded
+ * and zeroed.
+ */
+@FunctionalInterface
+public interface SecretEvictionListener {
+
+    /**
+     * Discards any copy of the given secret. Called after the store's own copy has been zeroed, on
+     * the thread that replaced or removed it.
+     *
+     * @param secret the evicted secret, in an array that is zeroed once every listener has returned
+     *               and must not be retained.
+     */
+    void evict(byte[] secret);
+
+}
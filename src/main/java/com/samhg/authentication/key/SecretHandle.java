@@ -0,0 +1,70 @@
+package com.samhg.authentication.key;
+
+/**
+ * Refers to a secret held in a {@link SecretStore}, so that the secret can be passed around without
+ * being copied onto the heap. A handle is valid until its secret is replaced or removed from the
+ * store; using an invalid handle throws an {@link IllegalStateException}.
+ *
+ * Invalidating a handle zeroes the store's copy of its secret and notifies the store's
+ * {@link SecretEvictionListener}s, which discard copies made by password generators' caches, see
+ * {@link SecretStore}.
+ */
+public final class SecretHandle {
+
+    private final SecretStore store;
+
+    final int slot;
+
+    final int generation;
+
+    SecretHandle(SecretStore store, int slot, int generation) {
+        this.store = store;
+        this.slot = slot;
+        this.generation = generation;
+    }
+
+    /**
+     * Copies the secret into an array reused by the calling thread. The array must be passed to
+     * {@link #release(byte[])} once it is no longer needed, and before the thread borrows another
+     * secret of the same length.
+     *
+     * @return the secret, in an array that must not be retained.
+     */
+    public byte[] borrow() {
+        return store.borrow(this);
+    }
+
+    /**
+     * Zeroes an array returned by {@link #borrow()}.
+     *
+     * @param secret the borrowed array.
+     */
+    public void release(byte[] secret) {
+        SecretStore.release(secret);
+    }
+
+    /**
+     * @return a new copy of the secret, which the caller is responsible for clearing.
+     */
+    public byte[] copy() {
+        byte[] secret = borrow();
+        try {
+            return secret.clone();
+        } finally {
+            release(secret);
+        }
+    }
+
+    /**
+     * @return the secret, encoded using {@link KeyConstants#KEY_ENCODING_SCHEME}.
+     */
+    public String encode() {
+        byte[] secret = borrow();
+        try {
+            return KeyConstants.KEY_ENCODING_SCHEME.encode(secret);
+        } finally {
+            release(secret);
+        }
+    }
+
+}
@@ -0,0 +1,347 @@
+package com.samhg.authentication.key;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Holds raw secrets, indexed by identifier, in a single region of off-heap memory, so that millions
+ * of loaded secrets neither occupy the heap nor have to be scanned by the garbage collector.
+ *
+ * The region is divided into fixed-size slots, each holding a secret's length and bytes. Secrets are
+ * referred to by {@link SecretHandle}s, which are only valid until their secret is replaced or
+ * removed. A removed secret's slot is zeroed before it is reused. Secrets are only copied onto the
+ * heap when read: {@link SecretHandle#borrow()} copies a secret into an array reused by the calling
+ * thread, which is zeroed by {@link SecretHandle#release(byte[])}.
+ *
+ * Generating a password from a secret copies it into the generator's caches:
+ * {@link com.samhg.authentication.generation.PasswordFactory} keeps, per thread and algorithm, a copy
+ * of each recently used secret together with HMAC state derived from it, and
+ * {@link com.samhg.authentication.generation.CachingPasswordGenerator} keeps a copy per cached
+ * password. Generators used with this store should be registered as {@link SecretEvictionListener}s,
+ * e.g. {@code store.addEvictionListener(generator::evict)}, so that these copies are discarded and
+ * zeroed whenever a secret is replaced, removed or the store is closed.
+ *
+ * Reads are optimistic and take no lock unless they overlap a write, see {@link StampedLock}.
+ * Writes are serialised by the same lock.
+ */
+public final class SecretStore implements Closeable {
+
+    /**
+     * The largest secret that can be stored, in bytes; the length of a secret is stored in one byte.
+     */
+    public static final int MAX_SECRET_BYTES = 0xFF;
+
+    private final ByteBuffer region;
+
+    private final int slotSize;
+
+    /**
+     * The generation of each slot, incremented whenever the slot's secret is replaced or removed.
+     */
+    private final int[] generations;
+
+    /**
+     * The indices of unused slots, used as a stack.
+     */
+    private final int[] free;
+
+    private int freeCount;
+
+    private final Map<String, SecretHandle> handles = new ConcurrentHashMap<>();
+
+    private final StampedLock lock = new StampedLock();
+
+    private final List<SecretEvictionListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Arrays of each secret length, reused by each thread to borrow secrets.
+     */
+    private final ThreadLocal<byte[][]> borrowed = ThreadLocal.withInitial(() -> new byte[MAX_SECRET_BYTES + 1][]);
+
+    /**
+     * Constructs a new store and allocates its region.
+     *
+     * @param capacity the number of secrets the store can hold.
+     * @param maxSecretBytes the largest secret the store can hold, in bytes.
+     */
+    public SecretStore(int capacity, int maxSecretBytes) {
+        if (maxSecretBytes < 1 || maxSecretBytes > MAX_SECRET_BYTES) {
+            throw new IllegalArgumentException("Maximum secret size must be between 1 and " + MAX_SECRET_BYTES
+                    + ": " + maxSecretBytes);
+        }
+        this.slotSize = 1 + maxSecretBytes;
+        this.region = ByteBuffer.allocateDirect(Math.multiplyExact(capacity, slotSize));
+        this.generations = new int[capacity];
+        this.free = new int[capacity];
+
+        for (int slot = 0; slot < capacity; slot++) {
+            free[freeCount++] = capacity - 1 - slot;
+        }
+    }
+
+    /**
+     * Constructs a new store for secrets of up to {@link KeyConstants#KEY_SIZE} bytes.
+     *
+     * @param capacity the number of secrets the store can hold.
+     */
+    public SecretStore(int capacity) {
+        this(capacity, KeyConstants.KEY_SIZE);
+    }
+
+    /**
+     * Registers a listener to be notified of every secret that is replaced or removed from now on.
+     *
+     * @param listener the listener.
+     */
+    public void addEvictionListener(SecretEvictionListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stores a copy of the given secret, replacing and zeroing any secret already stored for the
+     * identifier. The caller remains responsible for clearing its own copy.
+     *
+     * @param identifier the identifier the secret belongs to.
+     * @param secret the secret.
+     * @return a handle to the stored secret.
+     * @throws IllegalStateException if the store is full.
+     */
+    public SecretHandle put(String identifier, byte[] secret) {
+        return put(identifier, secret, true);
+    }
+
+    /**
+     * Stores a copy of the given secret, unless a secret is already stored for the identifier. The
+     * caller remains responsible for clearing its own copy.
+     *
+     * @param identifier the identifier the secret belongs to.
+     * @param secret the secret.
+     * @return a handle to the stored secret, or null if the identifier already has one.
+     * @throws IllegalStateException if the store is full.
+     */
+    public SecretHandle putIfAbsent(String identifier, byte[] secret) {
+        return put(identifier, secret, false);
+    }
+
+    private SecretHandle put(String identifier, byte[] secret, boolean replace) {
+        if (secret.length > slotSize - 1) {
+            throw new IllegalArgumentException("Secret is larger than " + (slotSize - 1) + " bytes");
+        }
+
+        byte[] evicted = null;
+
+        long stamp = lock.writeLock();
+        try {
+            SecretHandle previous = handles.get(identifier);
+            int slot;
+
+            if (previous != null) {
+                if (!replace) {
+                    return null;
+                }
+                slot = previous.slot;
+                evicted = evict(slot);
+            } else if (freeCount > 0) {
+                slot = free[--freeCount];
+            } else {
+                throw new IllegalStateException("Secret store is full");
+            }
+
+            int base = slot * slotSize;
+            region.put(base, (byte) secret.length);
+            for (int i = 0; i < secret.length; i++) {
+                region.put(base + 1 + i, secret[i]);
+            }
+
+            SecretHandle handle = new SecretHandle(this, slot, ++generations[slot]);
+            handles.put(identifier, handle);
+
+            return handle;
+
+        } finally {
+            lock.unlockWrite(stamp);
+            notifyEvicted(evicted);
+        }
+    }
+
+    /**
+     * @param identifier the identifier the secret belongs to.
+     * @return a handle to the identifier's secret, or null if none is stored.
+     */
+    public SecretHandle get(String identifier) {
+        return handles.get(identifier);
+    }
+
+    /**
+     * Removes and zeroes the identifier's secret, invalidating its handle.
+     *
+     * @param identifier the identifier the secret belongs to.
+     * @return true if a secret was removed.
+     */
+    public boolean remove(String identifier) {
+        byte[] evicted = null;
+
+        long stamp = lock.writeLock();
+        try {
+            SecretHandle handle = handles.remove(identifier);
+            if (handle == null) {
+                return false;
+            }
+
+            evicted = evict(handle.slot);
+            generations[handle.slot]++;
+            free[freeCount++] = handle.slot;
+
+            return true;
+
+        } finally {
+            lock.unlockWrite(stamp);
+            notifyEvicted(evicted);
+        }
+    }
+
+    /**
+     * @return the number of secrets held.
+     */
+    public int size() {
+        return handles.size();
+    }
+
+    /**
+     * Removes and zeroes every secret.
+     */
+    @Override
+    public void close() {
+        List<byte[]> evicted = new ArrayList<>();
+
+        long stamp = lock.writeLock();
+        try {
+            for (SecretHandle handle : handles.values()) {
+                byte[] secret = evict(handle.slot);
+                if (secret != null) {
+                    evicted.add(secret);
+                }
+                generations[handle.slot]++;
+                free[freeCount++] = handle.slot;
+            }
+            handles.clear();
+
+        } finally {
+            lock.unlockWrite(stamp);
+            for (byte[] secret : evicted) {
+                notifyEvicted(secret);
+            }
+        }
+    }
+
+    /**
+     * Copies the handle's secret into an array reused by the calling thread.
+     */
+    byte[] borrow(SecretHandle handle) {
+        byte[][] arrays = borrowed.get();
+        byte[] secret = null;
+
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            secret = read(handle, arrays);
+        }
+        if (stamp == 0 || !lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                secret = read(handle, arrays);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        if (secret == null) {
+            throw new IllegalStateException("Secret has been replaced or removed");
+        }
+        return secret;
+    }
+
+    /**
+     * Reads the handle's secret into the array of its length, without locking.
+     *
+     * @return the array, or null if the handle is no longer valid.
+     */
+    private byte[] read(SecretHandle handle, byte[][] arrays) {
+        if (generations[handle.slot] != handle.generation) {
+            return null;
+        }
+
+        int base = handle.slot * slotSize;
+        int length = Byte.toUnsignedInt(region.get(base));
+        if (length >= slotSize) {
+            return null;
+        }
+
+        byte[] secret = arrays[length];
+        if (secret == null) {
+            secret = arrays[length] = new byte[length];
+        }
+        for (int i = 0; i < length; i++) {
+            secret[i] = region.get(base + 1 + i);
+        }
+
+        return secret;
+    }
+
+    /**
+     * Zeroes a slot, first copying its secret onto the heap if there are listeners to notify.
+     *
+     * @return the copy, or null if there are no listeners.
+     */
+    private byte[] evict(int slot) {
+        byte[] secret = null;
+
+        if (!listeners.isEmpty()) {
+            int base = slot * slotSize;
+            secret = new byte[Math.min(Byte.toUnsignedInt(region.get(base)), slotSize - 1)];
+            for (int i = 0; i < secret.length; i++) {
+                secret[i] = region.get(base + 1 + i);
+            }
+        }
+        zero(slot);
+
+        return secret;
+    }
+
+    /**
+     * Notifies every listener of an evicted secret, then zeroes the copy.
+     */
+    private void notifyEvicted(byte[] secret) {
+        if (secret == null) {
+            return;
+        }
+        try {
+            for (SecretEvictionListener listener : listeners) {
+                listener.evict(secret);
+            }
+        } finally {
+            release(secret);
+        }
+    }
+
+    private void zero(int slot) {
+        int base = slot * slotSize;
+        for (int i = 0; i < slotSize; i++) {
+            region.put(base + i, (byte) 0);
+        }
+    }
+
+    /**
+     * Zeroes an array returned by {@link #borrow(SecretHandle)}.
+     */
+    static void release(byte[] secret) {
+        Arrays.fill(secret, (byte) 0);
+    }
+
+}
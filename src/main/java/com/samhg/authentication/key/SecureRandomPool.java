@@ -0,0 +1,151 @@
+package com.samhg.authentication.key;
+
+import com.samhg.authentication.metrics.Metrics;
+
+import java.util.Arrays;
+
+/**
+ * A pool of {@link ReseedingSecureRandom}s for generating random bytes from many threads at once.
+ *
+ * The pool is split into independently locked stripes, each with its own generator and buffer.
+ * A thread is assigned a stripe by its id, so threads rarely contend for a lock. Each buffer is
+ * refilled from its generator in bulk and requests are carved from it, so the cost of calling the
+ * generator, and of its reseed check, is shared by many requests. Every byte still passes through
+ * {@link ReseedingSecureRandom#nextBytes(byte[])}, which enforces the reseed policy, and a buffer is
+ * discarded once its generator's reseed interval has elapsed, so no byte is handed out from before
+ * a reseed that is due. Bytes are cleared from a buffer as soon as they are handed out.
+ */
+public final class SecureRandomPool {
+
+    /**
+     * The default size, in bytes, of each stripe's buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+
+    private final Stripe[] stripes;
+
+    /**
+     * Constructs a new pool.
+     *
+     * @param stripeCount the number of stripes, rounded up to a power of two.
+     * @param bufferSize the size, in bytes, of each stripe's buffer.
+     * @param reseedBytes the number of bytes each generator generates before reseeding.
+     * @param reseedInterval the number of milliseconds between reseeds of each generator.
+     * @param metrics receives a measurement each time a generator is reseeded.
+     */
+    public SecureRandomPool(int stripeCount, int bufferSize, long reseedBytes, long reseedInterval, Metrics metrics) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be at least 1: " + bufferSize);
+        }
+        int size = stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+
+        stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe(new ReseedingSecureRandom(reseedBytes, reseedInterval, metrics), bufferSize);
+        }
+    }
+
+    public SecureRandomPool(int stripeCount, int bufferSize, long reseedBytes, long reseedInterval) {
+        this(stripeCount, bufferSize, reseedBytes, reseedInterval, Metrics.NOOP);
+    }
+
+    public SecureRandomPool() {
+        this(Runtime.getRuntime().availableProcessors() * 2, DEFAULT_BUFFER_SIZE,
+                KeyConstants.DEFAULT_RESEED_BYTES, KeyConstants.DEFAULT_RESEED_INTERVAL);
+    }
+
+    /**
+     * Fills part of the given array with random bytes.
+     *
+     * @param bytes the array to fill.
+     * @param offset the index of the first byte to fill.
+     * @param length the number of bytes to fill.
+     */
+    public void nextBytes(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + (offset + length) + ") is outside the array");
+        }
+
+        int mask = stripes.length - 1;
+        stripes[(int) mix(Thread.currentThread().getId()) & mask].nextBytes(bytes, offset, length);
+    }
+
+    /**
+     * @param size the number of bytes.
+     * @return a new array of random bytes.
+     */
+    public byte[] getNextBytes(int size) {
+        byte[] bytes = new byte[size];
+        nextBytes(bytes, 0, size);
+
+        return bytes;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+
+        return value;
+    }
+
+    private static final class Stripe {
+
+        private final ReseedingSecureRandom random;
+
+        private final byte[] buffer;
+
+        /**
+         * The index of the next unused byte in {@link #buffer}.
+         */
+        private int position;
+
+        Stripe(ReseedingSecureRandom random, int bufferSize) {
+            this.random = random;
+            this.buffer = new byte[bufferSize];
+            this.position = bufferSize;
+        }
+
+        synchronized void nextBytes(byte[] bytes, int offset, int length) {
+            if (position < buffer.length && random.isReseedIntervalElapsed()) {
+                Arrays.fill(buffer, position, buffer.length, (byte) 0);
+                position = buffer.length;
+            }
+
+            while (length > 0) {
+                if (position == buffer.length) {
+                    if (length >= buffer.length) {
+                        fillDirectly(bytes, offset, length);
+                        return;
+                    }
+                    random.nextBytes(buffer);
+                    position = 0;
+                }
+
+                int count = Math.min(length, buffer.length - position);
+                System.arraycopy(buffer, position, bytes, offset, count);
+                Arrays.fill(buffer, position, position + count, (byte) 0);
+
+                position += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        /**
+         * Fills a request at least as large as the buffer from the generator, bypassing the buffer.
+         */
+        private void fillDirectly(byte[] bytes, int offset, int length) {
+            if (offset == 0 && length == bytes.length) {
+                random.nextBytes(bytes);
+                return;
+            }
+
+            byte[] direct = new byte[length];
+            random.nextBytes(direct);
+            System.arraycopy(direct, 0, bytes, offset, length);
+            Arrays.fill(direct, (byte) 0);
+        }
+    }
+
+}
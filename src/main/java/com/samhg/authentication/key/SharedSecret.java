@@ -11,7 +11,7 @@ public final class SharedSecret {
 	private final byte[] secret;
 	
 	/**
-	 * {@link #secret} encoded using base32.
+	 * {@link #secret} encoded using base32, or null if it is encoded on demand.
 	 */
 	private final String encodedSecret;
 	
@@ -25,6 +25,16 @@ public final class SharedSecret {
 		this.secret = secret;
 		this.encodedSecret = encodedSecret;
 	}
+
+	/**
+	 * Constructs a new instance that encodes the secret only when {@link #getEncodedSecret()} is
+	 * called, rather than holding the encoded string for its lifetime.
+	 *
+	 * @param secret the raw secret data
+	 */
+	public SharedSecret(byte[] secret) {
+		this(secret, null);
+	}
 	
 	/**
 	 * Gets the secret.
@@ -37,10 +47,12 @@ public final class SharedSecret {
 	
 	/**
 	 * Gets a human-readable string representation, encoded using base32, of the secret.
+	 *
+	 * If this instance was constructed without an encoded secret, the secret is encoded on each call.
 	 * 
 	 * @return
 	 */
 	public String getEncodedSecret() {
-		return encodedSecret;
+		return encodedSecret != null ? encodedSecret : KeyConstants.KEY_ENCODING_SCHEME.encode(secret);
 	}
 }
\ No newline at end of file
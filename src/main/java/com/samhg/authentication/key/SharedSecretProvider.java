@@ -1,7 +1,24 @@
 package com.samhg.authentication.key;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public interface SharedSecretProvider {
 
     SharedSecret createSecret();
 
-}
\ No newline at end of file
+    /**
+     * Creates the given number of secrets, by default with one call to {@link #createSecret()} each.
+     *
+     * @param count the number of secrets to create.
+     * @return the new secrets.
+     */
+    default List<SharedSecret> createSecrets(int count) {
+        List<SharedSecret> secrets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            secrets.add(createSecret());
+        }
+        return secrets;
+    }
+
+}
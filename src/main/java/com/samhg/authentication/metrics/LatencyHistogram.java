@@ -0,0 +1,118 @@
+package com.samhg.authentication.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies with a fixed relative error, in the style of an HDR histogram.
+ *
+ * Values are counted in buckets whose width grows with their magnitude: each power of two is split
+ * into {@link #SUB_BUCKETS} equal buckets, so a recorded value is known to within 12.5% whatever
+ * its size, and every non-negative long can be recorded in fixed memory. Recording is a single
+ * atomic increment and takes no locks.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray((Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a value; negative values are recorded as 0.
+     *
+     * @param value the value to record.
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+
+        buckets.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * @return the number of values recorded.
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return the largest value recorded, or 0 if none have been.
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the values recorded, or 0 if none have been.
+     */
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Gets an upper bound on the given percentile of the values recorded, which is at most 12.5%
+     * larger than the true percentile.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the largest value of the bucket holding the percentile, or 0 if no values have been recorded.
+     */
+    public long percentile(double percentile) {
+        long total = 0;
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * Values below {@link #SUB_BUCKETS} have a bucket each; larger values are bucketed by their
+     * highest set bit and the {@link #SUB_BUCKET_BITS} bits below it.
+     */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+
+        return lower + (1L << shift) - 1;
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.samhg.authentication.metrics;
+
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.validation.PasswordValidationRequest;
+
+/**
+ * Receives measurements from the library's validators, password generators, random number
+ * generators and counter stores. Every method does nothing by default, so an implementation only
+ * overrides the measurements it records.
+ *
+ * Methods are called on the thread doing the measured work, often on the hot path of validation,
+ * so implementations must be thread-safe and should not block.
+ */
+public interface Metrics {
+
+    /**
+     * Metrics that records nothing, used when no {@link Metrics} are given.
+     */
+    Metrics NOOP = new Metrics() {};
+
+    /**
+     * Called once a {@link com.samhg.authentication.validation.PasswordValidator} has searched for a
+     * request's password.
+     *
+     * @param request the request that was validated.
+     * @param index the index, in the request's window, at which the password matched, or -1 if the
+     *              password was invalid or a guard rejected it.
+     * @param nanos the time taken to validate the request, in nanoseconds.
+     */
+    default void onValidation(PasswordValidationRequest request, int index, long nanos) {
+    }
+
+    /**
+     * Called each time an HMAC is computed to generate a password.
+     *
+     * @param algorithm the algorithm of the HMAC.
+     */
+    default void onHmac(HmacAlgorithm algorithm) {
+    }
+
+    /**
+     * Called each time a {@link com.samhg.authentication.key.ReseedingSecureRandom} is reseeded.
+     */
+    default void onReseed() {
+    }
+
+    /**
+     * Called once counter updates have been persisted, or have failed to persist, by a
+     * {@link com.samhg.authentication.persistence.counter.CounterPersistenceStrategy} wrapped in an
+     * {@link com.samhg.authentication.persistence.counter.InstrumentedCounterPersistence}; other
+     * strategies do not report their calls.
+     *
+     * @param updates the number of updates persisted together.
+     * @param nanos the time taken to persist the updates, in nanoseconds.
+     * @param succeeded false if persisting the updates threw an exception.
+     */
+    default void onPersist(int updates, long nanos, boolean succeeded) {
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.samhg.authentication.metrics;
+
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.validation.PasswordType;
+import com.samhg.authentication.validation.PasswordValidationRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link Metrics} that keeps every measurement in memory, in {@link LongAdder}s and
+ * {@link LatencyHistogram}s, to be read by monitoring or exported to a metrics system.
+ *
+ * Validations are counted by {@link PasswordType}, and successful validations by the offset, from
+ * the request's moving factor, at which they matched; a distribution of time-based matches away
+ * from offset 0 shows clock drift. Every counter is updated without locks.
+ */
+public final class RecordingMetrics implements Metrics {
+
+    private final LongAdder[] validations = adders(PasswordType.values().length);
+
+    private final LongAdder[] failures = adders(PasswordType.values().length);
+
+    private final List<ConcurrentMap<Long, LongAdder>> matchesByOffset = new ArrayList<>();
+
+    private final LongAdder[] hmacs = adders(HmacAlgorithm.values().length);
+
+    private final LongAdder reseeds = new LongAdder();
+
+    private final LongAdder persistedUpdates = new LongAdder();
+
+    private final LongAdder persistFailures = new LongAdder();
+
+    private final LatencyHistogram validationLatency = new LatencyHistogram();
+
+    private final LatencyHistogram persistLatency = new LatencyHistogram();
+
+    public RecordingMetrics() {
+        for (int i = 0; i < PasswordType.values().length; i++) {
+            matchesByOffset.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    @Override
+    public void onValidation(PasswordValidationRequest request, int index, long nanos) {
+        int type = request.getType().ordinal();
+
+        validations[type].increment();
+        validationLatency.record(nanos);
+
+        if (index < 0) {
+            failures[type].increment();
+            return;
+        }
+
+        long offset = request.getWindow().getOffset(index);
+        ConcurrentMap<Long, LongAdder> byOffset = matchesByOffset.get(type);
+        LongAdder matches = byOffset.get(offset);
+        if (matches == null) {
+            matches = byOffset.computeIfAbsent(offset, k -> new LongAdder());
+        }
+        matches.increment();
+    }
+
+    @Override
+    public void onHmac(HmacAlgorithm algorithm) {
+        hmacs[algorithm.ordinal()].increment();
+    }
+
+    @Override
+    public void onReseed() {
+        reseeds.increment();
+    }
+
+    @Override
+    public void onPersist(int updates, long nanos, boolean succeeded) {
+        persistLatency.record(nanos);
+
+        if (succeeded) {
+            persistedUpdates.add(updates);
+        } else {
+            persistFailures.increment();
+        }
+    }
+
+    /**
+     * @param type the type of password.
+     * @return the number of validations of the given type.
+     */
+    public long getValidations(PasswordType type) {
+        return validations[type.ordinal()].sum();
+    }
+
+    /**
+     * @param type the type of password.
+     * @return the number of validations of the given type that were invalid or rejected by a guard.
+     */
+    public long getFailures(PasswordType type) {
+        return failures[type.ordinal()].sum();
+    }
+
+    /**
+     * @param type the type of password.
+     * @return the number of successful validations of the given type at each offset, ordered by offset.
+     */
+    public Map<Long, Long> getMatchesByOffset(PasswordType type) {
+        Map<Long, Long> matches = new TreeMap<>();
+        matchesByOffset.get(type.ordinal()).forEach((offset, count) -> matches.put(offset, count.sum()));
+
+        return matches;
+    }
+
+    /**
+     * @param algorithm the algorithm of the HMACs.
+     * @return the number of HMACs computed with the given algorithm.
+     */
+    public long getHmacs(HmacAlgorithm algorithm) {
+        return hmacs[algorithm.ordinal()].sum();
+    }
+
+    public long getReseeds() {
+        return reseeds.sum();
+    }
+
+    /**
+     * @return the number of counter updates successfully persisted.
+     */
+    public long getPersistedUpdates() {
+        return persistedUpdates.sum();
+    }
+
+    /**
+     * @return the number of calls to persist counter updates that failed.
+     */
+    public long getPersistFailures() {
+        return persistFailures.sum();
+    }
+
+    /**
+     * @return the time taken to validate each request, in nanoseconds.
+     */
+    public LatencyHistogram getValidationLatency() {
+        return validationLatency;
+    }
+
+    /**
+     * @return the time taken by each call to persist counter updates, in nanoseconds.
+     */
+    public LatencyHistogram getPersistLatency() {
+        return persistLatency;
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.samhg.authentication.persistence;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A non-blocking counterpart to {@link PersistenceStrategy}.
+ */
+public interface AsyncPersistenceStrategy<T, V> {
+
+    CompletableFuture<V> persistAsync(T t);
+
+    /**
+     * Adapts a blocking {@link PersistenceStrategy} by running each call on the given executor.
+     *
+     * @param persistenceStrategy the blocking strategy.
+     * @param executor the executor blocking calls are run on, see {@link #defaultExecutor()}.
+     * @return an asynchronous view of the given strategy.
+     */
+    static <T, V> AsyncPersistenceStrategy<T, V> of(PersistenceStrategy<T, V> persistenceStrategy, Executor executor) {
+        return t -> CompletableFuture.supplyAsync(() -> persistenceStrategy.persist(t), executor);
+    }
+
+    /**
+     * Creates an executor suitable for blocking persistence calls: one virtual thread per task where
+     * the runtime supports virtual threads, otherwise a cached pool of daemon threads.
+     *
+     * @return a new {@link ExecutorService}.
+     */
+    static ExecutorService defaultExecutor() {
+        try {
+            return (ExecutorService) MethodHandles.publicLookup()
+                    .findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class))
+                    .invoke();
+
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "persistence");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to create a virtual thread executor", t);
+        }
+    }
+
+}
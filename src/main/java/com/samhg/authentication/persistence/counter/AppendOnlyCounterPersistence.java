@@ -0,0 +1,304 @@
+package com.samhg.authentication.persistence.counter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.function.ObjLongConsumer;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A {@link CounterPersistenceStrategy} that appends each counter update to a log file, rather than
+ * rewriting every counter, so that an update costs a single write regardless of how many
+ * identifiers are stored.
+ *
+ * Each record in the log is the identifier's length as an unsigned short, the identifier in UTF-8,
+ * and the counter as a long. The latest counter of each identifier is indexed in memory; the index
+ * is rebuilt by replaying the log when the file is opened, ignoring a partially written final
+ * record. Once the log grows beyond {@link #compactionRatio} times the size of its live records, it
+ * is compacted by writing the index to a new file and atomically replacing the log.
+ */
+public final class AppendOnlyCounterPersistence implements CounterPersistenceStrategy, Closeable {
+
+    /**
+     * The default ratio of log size to live record size at which the log is compacted.
+     */
+    public static final int DEFAULT_COMPACTION_RATIO = 4;
+
+    /**
+     * Logs smaller than this are never compacted.
+     */
+    private static final long MINIMUM_COMPACTION_SIZE = 1 << 20;
+
+    /**
+     * The size of the fixed part of a record: the identifier length and the counter.
+     */
+    private static final int RECORD_OVERHEAD = Short.BYTES + Long.BYTES;
+
+    private static final int MAX_IDENTIFIER_BYTES = 0xFFFF;
+
+    private final Path path;
+
+    /**
+     * Whether the log is forced to the storage device after every update.
+     */
+    private final boolean force;
+
+    private final int compactionRatio;
+
+    /**
+     * The latest counter of each identifier in the log.
+     */
+    private final Map<String, Long> counters = new HashMap<>();
+
+    private FileChannel channel;
+
+    /**
+     * The size of the log, which is also the position of the next record.
+     */
+    private long size;
+
+    /**
+     * The total size of the latest record of each identifier, i.e. the size of a compacted log.
+     */
+    private long liveSize;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(256);
+
+    /**
+     * Opens, or creates, the log at the given path and replays it into memory.
+     *
+     * @param path the log file.
+     * @param force whether each update should be forced to the storage device before returning.
+     * @param compactionRatio the ratio of log size to live record size at which the log is compacted.
+     */
+    public AppendOnlyCounterPersistence(Path path, boolean force, int compactionRatio) {
+        if (compactionRatio < 2) {
+            throw new IllegalArgumentException("Compaction ratio must be at least 2: " + compactionRatio);
+        }
+        this.path = path;
+        this.force = force;
+        this.compactionRatio = compactionRatio;
+
+        try {
+            channel = FileChannel.open(path, CREATE, READ, WRITE);
+            replay();
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("IO error occurred whilst opening " + path.getFileName(), e);
+        }
+    }
+
+    public AppendOnlyCounterPersistence(Path path) {
+        this(path, true, DEFAULT_COMPACTION_RATIO);
+    }
+
+    @Override
+    public synchronized Long persist(CounterUpdate counterUpdate) {
+        String identifier = counterUpdate.getIdentifier();
+        long counter = counterUpdate.getNewCounter();
+
+        try {
+            append(identifier, counter);
+            afterAppend();
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("IO error occurred whilst accessing " + path.getFileName(), e);
+        }
+
+        return counter;
+    }
+
+    @Override
+    public synchronized boolean advance(CounterUpdate counterUpdate) {
+        Long counter = counters.get(counterUpdate.getIdentifier());
+        if (counter != null && counter >= counterUpdate.getNewCounter()) {
+            return false;
+        }
+
+        persist(counterUpdate);
+        return true;
+    }
+
+    /**
+     * Appends every update before forcing the log, if configured to, once.
+     */
+    @Override
+    public synchronized void persistAll(Collection<CounterUpdate> counterUpdates) {
+        try {
+            for (CounterUpdate counterUpdate : counterUpdates) {
+                append(counterUpdate.getIdentifier(), counterUpdate.getNewCounter());
+            }
+            afterAppend();
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("IO error occurred whilst accessing " + path.getFileName(), e);
+        }
+    }
+
+    /**
+     * Gets the latest counter persisted for the given identifier from the in-memory index.
+     */
+    @Override
+    public synchronized OptionalLong load(String identifier) {
+        Long counter = counters.get(identifier);
+
+        return counter == null ? OptionalLong.empty() : OptionalLong.of(counter);
+    }
+
+    @Override
+    public synchronized void forEach(ObjLongConsumer<String> action) {
+        counters.forEach(action::accept);
+    }
+
+    /**
+     * Rewrites the log so that it holds only the latest record of each identifier. The compacted
+     * log is written and forced beside the log, then moved over it; if compaction fails, the log
+     * is left as it was and remains open.
+     */
+    public synchronized void compact() throws IOException {
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        FileChannel out = FileChannel.open(compacted, CREATE, READ, WRITE, TRUNCATE_EXISTING);
+        boolean moved = false;
+
+        try {
+            long position = 0;
+            for (Map.Entry<String, Long> entry : counters.entrySet()) {
+                ByteBuffer record = encode(entry.getKey(), entry.getValue());
+                while (record.hasRemaining()) {
+                    position += out.write(record, position);
+                }
+            }
+            out.force(true);
+
+            // the open channel follows the compacted file when it is moved over the log
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+
+        } finally {
+            if (!moved) {
+                out.close();
+                Files.deleteIfExists(compacted);
+            }
+        }
+        CounterFiles.forceDirectory(path);
+
+        FileChannel previous = channel;
+        channel = out;
+        size = out.size();
+        liveSize = size;
+        previous.close();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Forces the log, if configured to, and compacts it once it has grown too large.
+     */
+    private void afterAppend() throws IOException {
+        if (force) {
+            channel.force(false);
+        }
+
+        if (size >= MINIMUM_COMPACTION_SIZE && size > liveSize * compactionRatio) {
+            compact();
+        }
+    }
+
+    private void append(String identifier, long counter) throws IOException {
+        ByteBuffer record = encode(identifier, counter);
+        int recordSize = record.remaining();
+
+        while (record.hasRemaining()) {
+            size += channel.write(record, size);
+        }
+
+        if (counters.put(identifier, counter) == null) {
+            liveSize += recordSize;
+        }
+    }
+
+    /**
+     * Encodes a record into {@link #buffer}, growing it if necessary.
+     *
+     * @return {@link #buffer}, flipped for reading.
+     */
+    private ByteBuffer encode(String identifier, long counter) {
+        byte[] identifierBytes = identifier.getBytes(StandardCharsets.UTF_8);
+        if (identifierBytes.length > MAX_IDENTIFIER_BYTES) {
+            throw new IllegalArgumentException("Identifier is too long: " + identifier);
+        }
+
+        int recordSize = RECORD_OVERHEAD + identifierBytes.length;
+        if (buffer.capacity() < recordSize) {
+            buffer = ByteBuffer.allocate(recordSize);
+        }
+
+        buffer.clear();
+        buffer.putShort((short) identifierBytes.length).put(identifierBytes).putLong(counter);
+
+        return buffer.flip();
+    }
+
+    /**
+     * Reads every complete record in the log into {@link #counters}, truncating any incomplete
+     * record left at the end of the log.
+     */
+    private void replay() throws IOException {
+        ByteBuffer readBuffer = ByteBuffer.allocate(1 << 16);
+        long position = 0;
+        long fileSize = channel.size();
+
+        while (position < fileSize) {
+            readBuffer.clear();
+            channel.read(readBuffer, position);
+            readBuffer.flip();
+
+            int consumed = 0;
+            while (readBuffer.remaining() >= Short.BYTES) {
+                int identifierLength = Short.toUnsignedInt(readBuffer.getShort(readBuffer.position()));
+                int recordSize = RECORD_OVERHEAD + identifierLength;
+                if (readBuffer.remaining() < recordSize) {
+                    break;
+                }
+
+                byte[] identifierBytes = new byte[identifierLength];
+                readBuffer.position(readBuffer.position() + Short.BYTES);
+                readBuffer.get(identifierBytes);
+                long counter = readBuffer.getLong();
+
+                if (counters.put(new String(identifierBytes, StandardCharsets.UTF_8), counter) == null) {
+                    liveSize += recordSize;
+                }
+                consumed += recordSize;
+            }
+
+            if (consumed == 0) {
+                if (readBuffer.limit() < readBuffer.capacity()) {
+                    break;
+                }
+                readBuffer = ByteBuffer.allocate(readBuffer.capacity() * 2);
+            }
+            position += consumed;
+        }
+
+        if (position < fileSize) {
+            channel.truncate(position);
+        }
+        size = position;
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.samhg.authentication.persistence.counter;
+
+import com.samhg.authentication.persistence.AsyncPersistenceStrategy;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A non-blocking counterpart to {@link CounterPersistenceStrategy}.
+ */
+public interface AsyncCounterPersistenceStrategy extends AsyncPersistenceStrategy<CounterUpdate, Long> {
+
+    /**
+     * The non-blocking counterpart to {@link CounterPersistenceStrategy#advance(CounterUpdate)}.
+     *
+     * @param counterUpdate the update to persist.
+     * @return a future completed with true if the update was persisted, or false if the persisted
+     * counter was not less than it.
+     */
+    CompletableFuture<Boolean> advanceAsync(CounterUpdate counterUpdate);
+
+    /**
+     * Adapts a blocking {@link CounterPersistenceStrategy} by running each call on the given executor.
+     *
+     * @param persistenceStrategy the blocking strategy.
+     * @param executor the executor blocking calls are run on, see {@link AsyncPersistenceStrategy#defaultExecutor()}.
+     * @return an asynchronous view of the given strategy.
+     */
+    static AsyncCounterPersistenceStrategy of(CounterPersistenceStrategy persistenceStrategy, Executor executor) {
+        return new AsyncCounterPersistenceStrategy() {
+            @Override
+            public CompletableFuture<Long> persistAsync(CounterUpdate counterUpdate) {
+                return CompletableFuture.supplyAsync(() -> persistenceStrategy.persist(counterUpdate), executor);
+            }
+
+            @Override
+            public CompletableFuture<Boolean> advanceAsync(CounterUpdate counterUpdate) {
+                return CompletableFuture.supplyAsync(() -> persistenceStrategy.advance(counterUpdate), executor);
+            }
+        };
+    }
+
+}
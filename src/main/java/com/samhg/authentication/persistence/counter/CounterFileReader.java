@@ -0,0 +1,218 @@
+package com.samhg.authentication.persistence.counter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Reads counter files of {@code identifier:counter} lines, as written by
+ * {@link TextFileCounterPersistence}, into a {@link CounterMap}.
+ *
+ * The file is split into regions that are parsed in parallel, each through a small buffer with
+ * positional reads, so the file is never held in memory and may exceed 2 GB. A region parses every
+ * line that starts within it, reading past its end to finish its last line. Lines are parsed from
+ * bytes, without creating a string per line; lines that are not a word identifier, a colon and a
+ * decimal counter are skipped. If an identifier appears more than once, its last line wins.
+ */
+public final class CounterFileReader {
+
+    /**
+     * The default size, in bytes, of the regions parsed in parallel.
+     */
+    public static final int DEFAULT_REGION_SIZE = 4 << 20;
+
+    /**
+     * The default size, in bytes, of each region's read buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 << 10;
+
+    private final int regionSize;
+
+    private final int bufferSize;
+
+    /**
+     * Constructs a new reader.
+     *
+     * @param regionSize the size, in bytes, of the regions parsed in parallel.
+     * @param bufferSize the size, in bytes, of each region's read buffer.
+     */
+    public CounterFileReader(int regionSize, int bufferSize) {
+        if (regionSize < 1 || bufferSize < 1) {
+            throw new IllegalArgumentException("Region and buffer sizes must be at least 1");
+        }
+        this.regionSize = regionSize;
+        this.bufferSize = bufferSize;
+    }
+
+    public CounterFileReader() {
+        this(DEFAULT_REGION_SIZE, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Reads every counter of the file at the given path.
+     */
+    public CounterMap read(Path path) {
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            return read(channel);
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("IO error occurred whilst reading " + path.getFileName(), e);
+        }
+    }
+
+    /**
+     * Reads every counter of the file open in the given channel, without changing its position.
+     */
+    public CounterMap read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long regionCount = (size + regionSize - 1) / regionSize;
+
+        List<CounterMap> regions;
+        try {
+            regions = LongStream.range(0, regionCount)
+                    .parallel()
+                    .mapToObj(region -> readRegion(channel, region * regionSize, Math.min(size, (region + 1) * regionSize)))
+                    .collect(Collectors.toList());
+
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        if (regions.size() == 1) {
+            return regions.get(0);
+        }
+
+        CounterMap counters = new CounterMap(regions.stream().mapToInt(CounterMap::size).sum());
+        for (CounterMap region : regions) {
+            counters.putAll(region);
+        }
+        return counters;
+    }
+
+    /**
+     * Parses every line starting in {@code [start, end)}.
+     */
+    private CounterMap readRegion(FileChannel channel, long start, long end) {
+        LineParser parser = new LineParser((int) Math.min((end - start) / 16, 1 << 16));
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        byte[] bytes = buffer.array();
+
+        // A line starting before the region belongs to the previous region, so unless the byte
+        // before the region ends a line, skip to the end of the line the region starts in.
+        long position = Math.max(0, start - 1);
+        boolean skipping = start > 0;
+
+        try {
+            while (true) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    if (!skipping) {
+                        parser.endLine();
+                    }
+                    return parser.counters;
+                }
+
+                for (int i = 0; i < read; i++) {
+                    if (bytes[i] != '\n') {
+                        if (!skipping) {
+                            parser.accept(bytes[i]);
+                        }
+                        continue;
+                    }
+
+                    if (!skipping) {
+                        parser.endLine();
+                    }
+                    skipping = false;
+                    if (position + i + 1 >= end) {
+                        return parser.counters;
+                    }
+                }
+                position += read;
+            }
+
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parses the bytes of one line at a time, putting each valid line into {@link #counters}.
+     */
+    private static final class LineParser {
+
+        private final CounterMap counters;
+
+        private byte[] identifier = new byte[64];
+
+        private int identifierLength;
+
+        private boolean inCounter;
+
+        private long counter;
+
+        private int digits;
+
+        private boolean valid = true;
+
+        LineParser(int expectedSize) {
+            this.counters = new CounterMap(expectedSize);
+        }
+
+        void accept(byte b) {
+            if (!valid) {
+                return;
+            }
+
+            if (!inCounter) {
+                if (b == ':') {
+                    inCounter = true;
+                    valid = identifierLength > 0;
+                } else if (isWordCharacter(b)) {
+                    if (identifierLength == identifier.length) {
+                        identifier = Arrays.copyOf(identifier, identifierLength * 2);
+                    }
+                    identifier[identifierLength++] = b;
+                } else {
+                    valid = false;
+                }
+                return;
+            }
+
+            int digit = b - '0';
+            if (digit >= 0 && digit <= 9 && counter <= (Long.MAX_VALUE - digit) / 10) {
+                counter = counter * 10 + digit;
+                digits++;
+            } else {
+                valid = false;
+            }
+        }
+
+        void endLine() {
+            if (valid && digits > 0) {
+                counters.put(new String(identifier, 0, identifierLength, StandardCharsets.US_ASCII), counter);
+            }
+
+            identifierLength = 0;
+            inCounter = false;
+            counter = 0;
+            digits = 0;
+            valid = true;
+        }
+
+        private static boolean isWordCharacter(byte b) {
+            return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_';
+        }
+    }
+
+}
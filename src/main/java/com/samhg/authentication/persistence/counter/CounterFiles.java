@@ -0,0 +1,153 @@
+package com.samhg.authentication.persistence.counter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Imports and exports counter files of {@code identifier:counter} lines, the format of
+ * {@link TextFileCounterPersistence}, to and from any {@link CounterPersistenceStrategy}, for
+ * example to migrate counters into a {@link MappedCounterPersistence}.
+ */
+public final class CounterFiles {
+
+    /**
+     * The default number of counters persisted with each call to
+     * {@link CounterPersistenceStrategy#persistAll}.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private CounterFiles() {
+    }
+
+    /**
+     * Reads every counter of a counter file and persists them with the given strategy.
+     *
+     * @param path the counter file.
+     * @param persistenceStrategy the strategy the counters are persisted with.
+     * @param reader the reader the file is parsed with.
+     * @param batchSize the number of counters persisted with each call to
+     *                  {@link CounterPersistenceStrategy#persistAll}.
+     * @return the number of counters imported.
+     */
+    public static int importFile(Path path, CounterPersistenceStrategy persistenceStrategy, CounterFileReader reader,
+                                 int batchSize) {
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        }
+
+        CounterMap counters = reader.read(path);
+        List<CounterUpdate> batch = new ArrayList<>(Math.min(batchSize, counters.size()));
+
+        counters.forEach((identifier, counter) -> {
+            batch.add(new CounterUpdate(identifier, counter));
+            if (batch.size() == batchSize) {
+                persistenceStrategy.persistAll(batch);
+                batch.clear();
+            }
+        });
+        if (!batch.isEmpty()) {
+            persistenceStrategy.persistAll(batch);
+        }
+
+        return counters.size();
+    }
+
+    public static int importFile(Path path, CounterPersistenceStrategy persistenceStrategy) {
+        return importFile(path, persistenceStrategy, new CounterFileReader(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Writes every counter of the given strategy, as iterated by
+     * {@link CounterPersistenceStrategy#forEach}, to a counter file. The file is written beside
+     * the target, forced and moved into place, so an existing file is only replaced once the
+     * export is complete and durable.
+     *
+     * @param persistenceStrategy the strategy the counters are read from.
+     * @param path the counter file.
+     * @return the number of counters exported.
+     */
+    public static long exportFile(CounterPersistenceStrategy persistenceStrategy, Path path) {
+        Path directory = path.toAbsolutePath().getParent();
+        Path temporary = null;
+        boolean moved = false;
+
+        try {
+            temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            long[] count = { 0 };
+
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+                 BufferedWriter writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.US_ASCII))) {
+
+                persistenceStrategy.forEach((identifier, counter) -> {
+                    try {
+                        writer.write(identifier);
+                        writer.write(':');
+                        writer.write(Long.toString(counter));
+                        writer.write('\n');
+                        count[0]++;
+
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+
+                writer.flush();
+                channel.force(false);
+            }
+
+            Files.move(temporary, path, ATOMIC_MOVE, REPLACE_EXISTING);
+            moved = true;
+            forceDirectory(path);
+
+            return count[0];
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("IO error occurred whilst exporting to " + path.getFileName(), e);
+
+        } catch (UncheckedIOException e) {
+            throw new UncheckedIOException("IO error occurred whilst exporting to " + path.getFileName(), e.getCause());
+
+        } finally {
+            if (!moved) {
+                deleteQuietly(temporary);
+            }
+        }
+    }
+
+    /**
+     * Forces the directory holding the given file, so that a file just moved into it survives a
+     * crash. Platforms that cannot open a directory as a channel, such as Windows, are skipped.
+     */
+    static void forceDirectory(Path path) {
+        try (FileChannel directory = FileChannel.open(path.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // the directory cannot be forced on this platform
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // the export has already failed
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.samhg.authentication.persistence.counter;
+
+import java.util.OptionalLong;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A map of identifiers to counters that stores counters as primitive {@code long}s in an open
+ * addressing table, so that loading millions of counters creates no boxed values or entry objects.
+ *
+ * Instances are not thread-safe.
+ */
+public final class CounterMap {
+
+    private String[] identifiers;
+
+    private long[] counters;
+
+    private int size;
+
+    public CounterMap(int expectedSize) {
+        int capacity = Math.max(16, expectedSize * 2);
+        capacity = Integer.highestOneBit(capacity - 1) << 1;
+
+        identifiers = new String[capacity];
+        counters = new long[capacity];
+    }
+
+    public CounterMap() {
+        this(8);
+    }
+
+    /**
+     * Maps the identifier to the counter, replacing any counter it was mapped to.
+     */
+    public void put(String identifier, long counter) {
+        int slot = slotOf(identifiers, identifier);
+        counters[slot] = counter;
+
+        if (identifiers[slot] == null) {
+            identifiers[slot] = identifier;
+            if (++size * 2 > identifiers.length) {
+                grow();
+            }
+        }
+    }
+
+    /**
+     * Puts every mapping of the given map into this map.
+     */
+    public void putAll(CounterMap map) {
+        map.forEach(this::put);
+    }
+
+    /**
+     * @return the counter the identifier is mapped to, or empty if it is not mapped.
+     */
+    public OptionalLong get(String identifier) {
+        int slot = slotOf(identifiers, identifier);
+
+        return identifiers[slot] == null ? OptionalLong.empty() : OptionalLong.of(counters[slot]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Applies the action to every mapping, in no particular order.
+     */
+    public void forEach(ObjLongConsumer<String> action) {
+        for (int slot = 0; slot < identifiers.length; slot++) {
+            if (identifiers[slot] != null) {
+                action.accept(identifiers[slot], counters[slot]);
+            }
+        }
+    }
+
+    private void grow() {
+        String[] oldIdentifiers = identifiers;
+        long[] oldCounters = counters;
+
+        identifiers = new String[oldIdentifiers.length * 2];
+        counters = new long[oldIdentifiers.length * 2];
+
+        for (int i = 0; i < oldIdentifiers.length; i++) {
+            if (oldIdentifiers[i] != null) {
+                int slot = slotOf(identifiers, oldIdentifiers[i]);
+                identifiers[slot] = oldIdentifiers[i];
+                counters[slot] = oldCounters[i];
+            }
+        }
+    }
+
+    /**
+     * @return the slot holding the identifier, or the empty slot it would be placed in.
+     */
+    private static int slotOf(String[] identifiers, String identifier) {
+        int mask = identifiers.length - 1;
+        int hash = identifier.hashCode() * 0x9e3779b9;
+        int slot = (hash ^ hash >>> 16) & mask;
+
+        while (identifiers[slot] != null && !identifiers[slot].equals(identifier)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+}
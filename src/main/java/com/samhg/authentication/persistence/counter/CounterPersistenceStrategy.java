@@ -2,6 +2,92 @@ package com.samhg.authentication.persistence.counter;
 
 import com.samhg.authentication.persistence.PersistenceStrategy;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.function.ObjLongConsumer;
+
 public interface CounterPersistenceStrategy extends PersistenceStrategy<CounterUpdate, Long> {
 
-}
\ No newline at end of file
+    /**
+     * Persists each of the given updates, in iteration order.
+     *
+     * Implementations that force updates to a storage device should override this method to write
+     * every update before forcing once, so that a group of updates costs a single sync.
+     *
+     * @param counterUpdates the updates to persist.
+     */
+    default void persistAll(Collection<CounterUpdate> counterUpdates) {
+        for (CounterUpdate counterUpdate : counterUpdates) {
+            persist(counterUpdate);
+        }
+    }
+
+    /**
+     * Persists the given update only if its counter is greater than the counter already persisted
+     * for its identifier, or no counter has been persisted, as a single atomic operation; counters
+     * persisted this way never go backwards, and of two concurrent updates to the same counter only
+     * one can succeed.
+     *
+     * Every validation path persists accepted counters through this method, in the form of
+     * {@link CounterUpdate#accepted}; {@link #persist} remains an unconditional write, for
+     * provisioning and importing counters.
+     *
+     * The default implementation loads and then persists the counter while holding this strategy's
+     * monitor, so it is only atomic with respect to other calls of the default implementation and
+     * requires {@link #load(String)}. Implementations should override it with a compare-and-set.
+     *
+     * @param counterUpdate the update to persist.
+     * @return true if the update was persisted, false if the persisted counter was not less than it.
+     */
+    default boolean advance(CounterUpdate counterUpdate) {
+        synchronized (this) {
+            OptionalLong counter = load(counterUpdate.getIdentifier());
+            if (counter.isPresent() && counter.getAsLong() >= counterUpdate.getNewCounter()) {
+                return false;
+            }
+            persist(counterUpdate);
+            return true;
+        }
+    }
+
+    /**
+     * Applies {@link #advance(CounterUpdate)} to each of the given updates, in iteration order, so
+     * that of several updates to the same counter only those that raise it succeed.
+     *
+     * Implementations that force updates to a storage device should override this method to
+     * resolve every update before forcing once.
+     *
+     * @param counterUpdates the updates to persist.
+     * @return whether each update was persisted, in iteration order.
+     */
+    default boolean[] advanceAll(List<CounterUpdate> counterUpdates) {
+        boolean[] advanced = new boolean[counterUpdates.size()];
+        for (int i = 0; i < advanced.length; i++) {
+            advanced[i] = advance(counterUpdates.get(i));
+        }
+        return advanced;
+    }
+
+    /**
+     * Gets the counter persisted for the given identifier.
+     *
+     * @param identifier the identifier of the counter.
+     * @return the counter, or an empty {@link OptionalLong} if no counter has been persisted.
+     * @throws UnsupportedOperationException if the strategy cannot read counters back.
+     */
+    default OptionalLong load(String identifier) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support loading counters");
+    }
+
+    /**
+     * Passes every persisted identifier and its counter to the given action, in no particular order.
+     *
+     * @param action the action to perform on each counter.
+     * @throws UnsupportedOperationException if the strategy cannot read counters back.
+     */
+    default void forEach(ObjLongConsumer<String> action) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support iterating counters");
+    }
+
+}
@@ -5,10 +5,16 @@ import com.samhg.authentication.validation.PasswordValidationRequest;
 public final class CounterUpdate {
 
     /**
-     * The request that ultimately caused the counter to change.
+     * The request that ultimately caused the counter to change, or null if the counter was not
+     * changed by a request, for example when it is first provisioned.
      */
     private final PasswordValidationRequest request;
 
+    /**
+     * The identifier of the counter being updated.
+     */
+    private final String identifier;
+
     /**
      * The new value of the counter.
      */
@@ -16,15 +22,52 @@ public final class CounterUpdate {
 
     public CounterUpdate(PasswordValidationRequest request, long newCounter) {
         this.request = request;
+        this.identifier = request.getIdentifier();
         this.newCounter = newCounter;
     }
 
+    /**
+     * Constructs an update that was not caused by a {@link PasswordValidationRequest}.
+     *
+     * @param identifier the identifier of the counter being updated.
+     * @param newCounter the new value of the counter.
+     */
+    public CounterUpdate(String identifier, long newCounter) {
+        this.request = null;
+        this.identifier = identifier;
+        this.newCounter = newCounter;
+    }
+
+    /**
+     * Constructs the update persisted when the password of the given event-based request is
+     * accepted: the counter following the one the password matched at, as RFC 4226
+     * resynchronisation prescribes, which is the moving factor of the identifier's next request.
+     * Every validation path persists counters of this form, so that they can be compared.
+     *
+     * @param request the accepted request.
+     * @param index the index, in the request's window, at which the password matched.
+     * @return the update.
+     */
+    public static CounterUpdate accepted(PasswordValidationRequest request, int index) {
+        return new CounterUpdate(request, request.getMovingFactor() + request.getWindow().getOffset(index) + 1);
+    }
+
+    /**
+     * @return the request that caused the update, or null if it was not caused by a request.
+     */
     public PasswordValidationRequest getRequest() {
         return request;
     }
 
+    /**
+     * @return the identifier of the counter being updated.
+     */
+    public String getIdentifier() {
+        return identifier;
+    }
+
     public long getNewCounter() {
         return newCounter;
     }
 
-}
\ No newline at end of file
+}
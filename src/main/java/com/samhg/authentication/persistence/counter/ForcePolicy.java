@@ -0,0 +1,24 @@
+package com.samhg.authentication.persistence.counter;
+
+/**
+ * Determines when a counter store forces its updates to the storage device.
+ */
+public enum ForcePolicy {
+
+    /**
+     * Every update is forced before it is acknowledged.
+     */
+    EVERY_WRITE,
+
+    /**
+     * Updates are forced periodically, at a configured interval, and when the store is closed.
+     */
+    PERIODIC,
+
+    /**
+     * Updates are only forced when the store is closed, otherwise they are written back by the
+     * operating system at its discretion.
+     */
+    ON_CLOSE
+
+}
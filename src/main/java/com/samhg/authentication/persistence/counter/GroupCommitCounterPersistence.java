@@ -0,0 +1,299 @@
+package com.samhg.authentication.persistence.counter;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A {@link CounterPersistenceStrategy} that queues updates and persists them in groups, using a
+ * single call to {@link CounterPersistenceStrategy#persistAll} of the underlying strategy per group.
+ *
+ * A background thread takes every update queued since the previous group (up to a maximum) and
+ * coalesces updates of the same identifier to the one with the highest counter, so the underlying
+ * strategy is synced once per group rather than once per update. Each update's future completes
+ * once its group has been persisted, with the counter persisted for its identifier; if the group
+ * fails, with an exception or an error, every future in the group completes exceptionally and the
+ * committing thread carries on with the next group.
+ *
+ * {@link #advance(CounterUpdate)} is queued like any other update and resolved by the committing
+ * thread against the counter its identifier will hold once the updates queued before it in the
+ * group are persisted, loaded from the underlying strategy if the group holds no earlier update of
+ * the identifier. Compare-and-sets are therefore persisted in groups too, but the underlying
+ * strategy must support {@link CounterPersistenceStrategy#load(String)} and must not be updated
+ * other than through this instance.
+ *
+ * Updates are only as durable as the underlying strategy makes them, so it should force its writes
+ * in {@link CounterPersistenceStrategy#persistAll}.
+ */
+public final class GroupCommitCounterPersistence
+        implements CounterPersistenceStrategy, AsyncCounterPersistenceStrategy, Closeable {
+
+    /**
+     * The default maximum number of updates persisted in one group.
+     */
+    public static final int DEFAULT_MAX_GROUP_SIZE = 1024;
+
+    /**
+     * Queued to wake and stop the committing thread.
+     */
+    private static final PendingUpdate SHUTDOWN = new PendingUpdate(null, false);
+
+    private final CounterPersistenceStrategy persistenceStrategy;
+
+    private final int maxGroupSize;
+
+    private final BlockingQueue<PendingUpdate> queue = new LinkedBlockingQueue<>();
+
+    private final Thread committer;
+
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new instance and starts its committing thread.
+     *
+     * @param persistenceStrategy the strategy groups of updates are persisted with.
+     * @param maxGroupSize the maximum number of updates persisted in one group.
+     */
+    public GroupCommitCounterPersistence(CounterPersistenceStrategy persistenceStrategy, int maxGroupSize) {
+        if (maxGroupSize < 1) {
+            throw new IllegalArgumentException("Group size must be at least 1: " + maxGroupSize);
+        }
+        this.persistenceStrategy = persistenceStrategy;
+        this.maxGroupSize = maxGroupSize;
+
+        committer = new Thread(this::commitGroups, "counter-group-commit");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    public GroupCommitCounterPersistence(CounterPersistenceStrategy persistenceStrategy) {
+        this(persistenceStrategy, DEFAULT_MAX_GROUP_SIZE);
+    }
+
+    /**
+     * Queues the given update to be persisted with the next group.
+     *
+     * @param counterUpdate the update to persist.
+     * @return a future completed, with the counter persisted for the update's identifier, once the
+     * update has been persisted.
+     */
+    public CompletableFuture<Long> submit(CounterUpdate counterUpdate) {
+        return enqueue(new PendingUpdate(counterUpdate, false));
+    }
+
+    private CompletableFuture<Long> enqueue(PendingUpdate pending) {
+        if (closed) {
+            pending.future.completeExceptionally(new IllegalStateException("Counter persistence is closed"));
+            return pending.future;
+        }
+        queue.add(pending);
+
+        // close() may have drained the queue between the check and the add
+        if (closed && queue.remove(pending)) {
+            pending.future.completeExceptionally(new IllegalStateException("Counter persistence is closed"));
+        }
+
+        return pending.future;
+    }
+
+    @Override
+    public CompletableFuture<Long> persistAsync(CounterUpdate counterUpdate) {
+        return submit(counterUpdate);
+    }
+
+    /**
+     * Queues the given update and blocks until it has been persisted.
+     */
+    @Override
+    public Long persist(CounterUpdate counterUpdate) {
+        return submit(counterUpdate).join();
+    }
+
+    /**
+     * Queues the given update as a compare-and-set, behind every update already queued.
+     *
+     * @param counterUpdate the update to persist.
+     * @return a future completed, once the update's group has been persisted, with true if the
+     * update was persisted or false if the counter it was compared against was not less than it.
+     */
+    @Override
+    public CompletableFuture<Boolean> advanceAsync(CounterUpdate counterUpdate) {
+        return enqueue(new PendingUpdate(counterUpdate, true)).thenApply(counter -> counter != null);
+    }
+
+    /**
+     * Queues the given update as a compare-and-set and blocks until its group has been persisted.
+     */
+    @Override
+    public boolean advance(CounterUpdate counterUpdate) {
+        return advanceAsync(counterUpdate).join();
+    }
+
+    /**
+     * Queues every update as a compare-and-set, so that updates queued together are resolved and
+     * persisted in one group where the group size allows, and blocks until each has been persisted.
+     */
+    @Override
+    public boolean[] advanceAll(List<CounterUpdate> counterUpdates) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(counterUpdates.size());
+        for (CounterUpdate counterUpdate : counterUpdates) {
+            futures.add(advanceAsync(counterUpdate));
+        }
+
+        boolean[] advanced = new boolean[futures.size()];
+        for (int i = 0; i < advanced.length; i++) {
+            advanced[i] = futures.get(i).join();
+        }
+        return advanced;
+    }
+
+    /**
+     * Loads the counter from the underlying strategy, which does not reflect queued updates.
+     */
+    @Override
+    public OptionalLong load(String identifier) {
+        return persistenceStrategy.load(identifier);
+    }
+
+    /**
+     * Iterates the counters of the underlying strategy, which do not reflect queued updates.
+     */
+    @Override
+    public void forEach(ObjLongConsumer<String> action) {
+        persistenceStrategy.forEach(action);
+    }
+
+    /**
+     * Stops accepting updates, waits for queued updates to be persisted and stops the committing thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        queue.add(SHUTDOWN);
+
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        PendingUpdate pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new IllegalStateException("Counter persistence is closed"));
+        }
+    }
+
+    private void commitGroups() {
+        List<PendingUpdate> group = new ArrayList<>();
+        boolean shutdown = false;
+
+        while (!shutdown) {
+            try {
+                group.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(group, maxGroupSize - 1);
+
+            if (group.remove(SHUTDOWN)) {
+                shutdown = true;
+                queue.drainTo(group);
+            }
+            commit(group);
+            group.clear();
+        }
+    }
+
+    /**
+     * Commits a group with a single call to {@link CounterPersistenceStrategy#persistAll}, having
+     * resolved each compare-and-set, in queue order, against the updates before it.
+     */
+    private void commit(List<PendingUpdate> group) {
+        if (group.isEmpty()) {
+            return;
+        }
+
+        Map<String, CounterUpdate> coalesced = new LinkedHashMap<>();
+        Map<String, OptionalLong> loaded = new HashMap<>();
+        List<PendingUpdate> resolved = new ArrayList<>(group.size());
+
+        for (PendingUpdate pending : group) {
+            String identifier = pending.update.getIdentifier();
+            CounterUpdate previous = coalesced.get(identifier);
+
+            if (pending.compareAndSet) {
+                OptionalLong counter;
+                try {
+                    counter = previous != null
+                            ? OptionalLong.of(previous.getNewCounter())
+                            : loaded.computeIfAbsent(identifier, persistenceStrategy::load);
+
+                } catch (RuntimeException | Error e) {
+                    pending.future.completeExceptionally(e);
+                    continue;
+                }
+
+                pending.advanced = !counter.isPresent() || counter.getAsLong() < pending.update.getNewCounter();
+            }
+
+            resolved.add(pending);
+            if (pending.compareAndSet && !pending.advanced) {
+                continue;
+            }
+            if (previous == null || pending.update.getNewCounter() > previous.getNewCounter()) {
+                coalesced.put(identifier, pending.update);
+            }
+        }
+
+        try {
+            if (!coalesced.isEmpty()) {
+                persistenceStrategy.persistAll(coalesced.values());
+            }
+
+        } catch (RuntimeException | Error e) {
+            for (PendingUpdate pending : resolved) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        for (PendingUpdate pending : resolved) {
+            if (!pending.compareAndSet) {
+                pending.future.complete(coalesced.get(pending.update.getIdentifier()).getNewCounter());
+            } else {
+                pending.future.complete(pending.advanced ? pending.update.getNewCounter() : null);
+            }
+        }
+    }
+
+    private static final class PendingUpdate {
+
+        private final CounterUpdate update;
+
+        /**
+         * Whether the update is a compare-and-set, whose future completes with null if it fails.
+         */
+        private final boolean compareAndSet;
+
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        /**
+         * Whether a compare-and-set succeeded, set by the committing thread as its group is resolved.
+         */
+        private boolean advanced;
+
+        PendingUpdate(CounterUpdate update, boolean compareAndSet) {
+            this.update = update;
+            this.compareAndSet = compareAndSet;
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.samhg.authentication.persistence.counter;
+
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A {@link CounterPersistenceStrategy} that holds counters in memory only, for tests, for
+ * deployments that persist counters elsewhere, or in front of a durable strategy.
+ *
+ * Each counter is an {@link AtomicLong} in a {@link ConcurrentHashMap}, so reads and updates of
+ * existing counters take no locks and {@link #advance(CounterUpdate)} is a compare-and-set loop.
+ */
+public final class InMemoryCounterPersistence implements CounterPersistenceStrategy {
+
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public Long persist(CounterUpdate counterUpdate) {
+        long newCounter = counterUpdate.getNewCounter();
+        AtomicLong counter = counters.get(counterUpdate.getIdentifier());
+
+        if (counter == null) {
+            counter = counters.putIfAbsent(counterUpdate.getIdentifier(), new AtomicLong(newCounter));
+        }
+        if (counter != null) {
+            counter.set(newCounter);
+        }
+
+        return newCounter;
+    }
+
+    @Override
+    public boolean advance(CounterUpdate counterUpdate) {
+        long newCounter = counterUpdate.getNewCounter();
+        AtomicLong counter = counters.get(counterUpdate.getIdentifier());
+
+        if (counter == null) {
+            counter = counters.putIfAbsent(counterUpdate.getIdentifier(), new AtomicLong(newCounter));
+            if (counter == null) {
+                return true;
+            }
+        }
+
+        long current = counter.get();
+        while (current < newCounter) {
+            if (counter.compareAndSet(current, newCounter)) {
+                return true;
+            }
+            current = counter.get();
+        }
+
+        return false;
+    }
+
+    @Override
+    public OptionalLong load(String identifier) {
+        AtomicLong counter = counters.get(identifier);
+
+        return counter == null ? OptionalLong.empty() : OptionalLong.of(counter.get());
+    }
+
+    @Override
+    public void forEach(ObjLongConsumer<String> action) {
+        counters.forEach((identifier, counter) -> action.accept(identifier, counter.get()));
+    }
+
+}
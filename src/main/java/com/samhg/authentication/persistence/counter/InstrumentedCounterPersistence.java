@@ -0,0 +1,86 @@
+package com.samhg.authentication.persistence.counter;
+
+import com.samhg.authentication.metrics.Metrics;
+
+import java.util.Collection;
+import java.util.OptionalLong;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A {@link CounterPersistenceStrategy} that reports the latency and outcome of each call to another
+ * strategy to {@link Metrics#onPersist(int, long, boolean)}. Loads are passed through unmeasured.
+ */
+public final class InstrumentedCounterPersistence implements CounterPersistenceStrategy {
+
+    private final CounterPersistenceStrategy persistenceStrategy;
+
+    private final Metrics metrics;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param persistenceStrategy the strategy counters are persisted with.
+     * @param metrics receives the measurement of each call.
+     */
+    public InstrumentedCounterPersistence(CounterPersistenceStrategy persistenceStrategy, Metrics metrics) {
+        this.persistenceStrategy = persistenceStrategy;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Long persist(CounterUpdate counterUpdate) {
+        long start = System.nanoTime();
+        boolean succeeded = false;
+
+        try {
+            Long counter = persistenceStrategy.persist(counterUpdate);
+            succeeded = true;
+
+            return counter;
+
+        } finally {
+            metrics.onPersist(1, System.nanoTime() - start, succeeded);
+        }
+    }
+
+    @Override
+    public void persistAll(Collection<CounterUpdate> counterUpdates) {
+        long start = System.nanoTime();
+        boolean succeeded = false;
+
+        try {
+            persistenceStrategy.persistAll(counterUpdates);
+            succeeded = true;
+
+        } finally {
+            metrics.onPersist(counterUpdates.size(), System.nanoTime() - start, succeeded);
+        }
+    }
+
+    @Override
+    public boolean advance(CounterUpdate counterUpdate) {
+        long start = System.nanoTime();
+        boolean succeeded = false;
+
+        try {
+            boolean advanced = persistenceStrategy.advance(counterUpdate);
+            succeeded = true;
+
+            return advanced;
+
+        } finally {
+            metrics.onPersist(1, System.nanoTime() - start, succeeded);
+        }
+    }
+
+    @Override
+    public OptionalLong load(String identifier) {
+        return persistenceStrategy.load(identifier);
+    }
+
+    @Override
+    public void forEach(ObjLongConsumer<String> action) {
+        persistenceStrategy.forEach(action);
+    }
+
+}
@@ -0,0 +1,403 @@
+package com.samhg.authentication.persistence.counter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.OptionalLong;
+import java.util.function.ObjLongConsumer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A {@link CounterPersistenceStrategy} backed by a memory-mapped file of fixed-size slots, in which
+ * each counter is updated in place.
+ *
+ * The file begins with a {@link #HEADER_SIZE} byte header recording the number of slots and the
+ * maximum identifier length. Each slot holds a counter, the identifier's length and the identifier
+ * in UTF-8; an identifier is placed in the slot its hash maps to, probing linearly on collision.
+ * Slots are claimed under a lock but never released, so lookups and updates of existing counters
+ * probe the mapping directly without locking. Writes use release semantics and reads acquire
+ * semantics; a slot's identifier length is written last, so a claimed slot is never observed
+ * without its identifier and initial counter. {@link #advance(CounterUpdate)} updates an existing
+ * counter with a compare-and-set on the mapping.
+ *
+ * Since the mapping is the store, opening an existing file requires no parsing. When updates are
+ * forced to the storage device is determined by a {@link ForcePolicy}. Once the store is closed,
+ * every operation throws an {@link IllegalStateException}.
+ */
+public final class MappedCounterPersistence implements CounterPersistenceStrategy, Closeable {
+
+    /**
+     * Identifies a file created by this class.
+     */
+    private static final int MAGIC = 0x4F545043;
+
+    private static final int HEADER_SIZE = 64;
+
+    private static final int COUNTER_OFFSET = 0;
+
+    private static final int LENGTH_OFFSET = Long.BYTES;
+
+    private static final int IDENTIFIER_OFFSET = LENGTH_OFFSET + Short.BYTES;
+
+    private static final int MAX_IDENTIFIER_BYTES = Short.MAX_VALUE;
+
+    /**
+     * The default maximum length, in UTF-8 bytes, of an identifier.
+     */
+    public static final int DEFAULT_MAX_IDENTIFIER_BYTES = 54;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private static final VarHandle SHORTS = MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private final int slotCount;
+
+    private final int slotSize;
+
+    private final int maxIdentifierBytes;
+
+    private final ForcePolicy forcePolicy;
+
+    /**
+     * Forces the mapping at a fixed rate when using {@link ForcePolicy#PERIODIC}, otherwise null.
+     */
+    private final ScheduledExecutorService forceScheduler;
+
+    private volatile boolean closed;
+
+    /**
+     * Opens, or creates, a store at the given path.
+     *
+     * @param path the file backing the store.
+     * @param slotCount the number of counters the store can hold, when creating a new store.
+     * @param maxIdentifierBytes the maximum length of an identifier, in UTF-8 bytes.
+     * @param forcePolicy when updates are forced to the storage device.
+     * @param forceIntervalMillis the interval between forces when using {@link ForcePolicy#PERIODIC},
+     *                            which must then be positive.
+     * @throws IllegalStateException if an existing store was created with a different slot count or
+     * identifier length.
+     */
+    public MappedCounterPersistence(Path path, int slotCount, int maxIdentifierBytes, ForcePolicy forcePolicy,
+                                    long forceIntervalMillis) {
+
+        if (slotCount < 1 || maxIdentifierBytes < 1 || maxIdentifierBytes > MAX_IDENTIFIER_BYTES) {
+            throw new IllegalArgumentException("Invalid store dimensions: " + slotCount + " x " + maxIdentifierBytes);
+        }
+        if (forcePolicy == ForcePolicy.PERIODIC && forceIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Force interval must be positive: " + forceIntervalMillis);
+        }
+
+        this.path = path;
+        this.slotCount = slotCount;
+        this.maxIdentifierBytes = maxIdentifierBytes;
+        this.slotSize = (IDENTIFIER_OFFSET + maxIdentifierBytes + Long.BYTES - 1) & -Long.BYTES;
+        this.forcePolicy = forcePolicy;
+
+        long fileSize = HEADER_SIZE + (long) slotCount * slotSize;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Store would exceed the maximum mapping size: " + fileSize);
+        }
+
+        try {
+            channel = FileChannel.open(path, CREATE, READ, WRITE);
+            boolean created = channel.size() == 0;
+            if (!created) {
+                checkHeader();
+            }
+
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            if (created) {
+                buffer.putInt(0, MAGIC).putInt(4, slotCount).putInt(8, maxIdentifierBytes);
+                buffer.force();
+            }
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("IO error occurred whilst opening " + path.getFileName(), e);
+        }
+
+        if (forcePolicy == ForcePolicy.PERIODIC) {
+            forceScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "counter-store-force");
+                thread.setDaemon(true);
+                return thread;
+            });
+            forceScheduler.scheduleAtFixedRate(buffer::force, forceIntervalMillis, forceIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            forceScheduler = null;
+        }
+    }
+
+    /**
+     * Opens, or creates, a store which forces every update.
+     *
+     * @param path the file backing the store.
+     * @param slotCount the number of counters the store can hold, when creating a new store.
+     */
+    public MappedCounterPersistence(Path path, int slotCount) {
+        this(path, slotCount, DEFAULT_MAX_IDENTIFIER_BYTES, ForcePolicy.EVERY_WRITE, 0);
+    }
+
+    @Override
+    public Long persist(CounterUpdate counterUpdate) {
+        checkOpen();
+        long counter = write(counterUpdate);
+
+        if (forcePolicy == ForcePolicy.EVERY_WRITE) {
+            buffer.force();
+        }
+
+        return counter;
+    }
+
+    @Override
+    public boolean advance(CounterUpdate counterUpdate) {
+        checkOpen();
+        byte[] identifier = encode(counterUpdate.getIdentifier());
+        long newCounter = counterUpdate.getNewCounter();
+        boolean advanced;
+
+        int slot = find(identifier);
+        if (slot < 0) {
+            advanced = claim(identifier, newCounter, true);
+        } else {
+            advanced = compareAndRaise(offset(slot) + COUNTER_OFFSET, newCounter);
+        }
+
+        if (advanced && forcePolicy == ForcePolicy.EVERY_WRITE) {
+            buffer.force();
+        }
+
+        return advanced;
+    }
+
+    /**
+     * Writes every update before forcing the mapping, if the {@link ForcePolicy} requires it, once.
+     */
+    @Override
+    public void persistAll(Collection<CounterUpdate> counterUpdates) {
+        checkOpen();
+        for (CounterUpdate counterUpdate : counterUpdates) {
+            write(counterUpdate);
+        }
+
+        if (forcePolicy == ForcePolicy.EVERY_WRITE) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public OptionalLong load(String identifier) {
+        checkOpen();
+        int slot = find(encode(identifier));
+
+        return slot < 0
+                ? OptionalLong.empty()
+                : OptionalLong.of((long) LONGS.getAcquire(buffer, offset(slot) + COUNTER_OFFSET));
+    }
+
+    /**
+     * Scans every slot of the mapping, without locking; counters claimed during the scan may or may
+     * not be included.
+     */
+    @Override
+    public void forEach(ObjLongConsumer<String> action) {
+        checkOpen();
+        for (int slot = 0; slot < slotCount; slot++) {
+            int offset = offset(slot);
+            int length = Short.toUnsignedInt((short) SHORTS.getAcquire(buffer, offset + LENGTH_OFFSET));
+            if (length == 0) {
+                continue;
+            }
+
+            byte[] identifier = new byte[length];
+            for (int i = 0; i < length; i++) {
+                identifier[i] = buffer.get(offset + IDENTIFIER_OFFSET + i);
+            }
+            action.accept(new String(identifier, StandardCharsets.UTF_8),
+                    (long) LONGS.getAcquire(buffer, offset + COUNTER_OFFSET));
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        if (forceScheduler != null) {
+            forceScheduler.shutdown();
+        }
+        buffer.force();
+        channel.close();
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Counter store " + path.getFileName() + " is closed");
+        }
+    }
+
+    private long write(CounterUpdate counterUpdate) {
+        byte[] identifier = encode(counterUpdate.getIdentifier());
+        long counter = counterUpdate.getNewCounter();
+
+        int slot = find(identifier);
+        if (slot < 0) {
+            claim(identifier, counter, false);
+        } else {
+            LONGS.setRelease(buffer, offset(slot) + COUNTER_OFFSET, counter);
+        }
+
+        return counter;
+    }
+
+    /**
+     * Probes for the slot holding the given identifier.
+     *
+     * @return the slot, or -1 if the identifier was not found before an unclaimed slot.
+     */
+    private int find(byte[] identifier) {
+        int slot = home(identifier);
+
+        for (int probes = 0; probes < slotCount; probes++) {
+            int length = Short.toUnsignedInt((short) SHORTS.getAcquire(buffer, offset(slot) + LENGTH_OFFSET));
+            if (length == 0) {
+                return -1;
+            }
+            if (length == identifier.length && identifierEquals(slot, identifier)) {
+                return slot;
+            }
+            slot = slot + 1 == slotCount ? 0 : slot + 1;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Raises the counter at the given position of the mapping to the given value with a
+     * compare-and-set loop.
+     *
+     * @return false if the counter was already at least the given value.
+     */
+    private boolean compareAndRaise(int position, long counter) {
+        long current = (long) LONGS.getAcquire(buffer, position);
+
+        while (current < counter) {
+            if (LONGS.compareAndSet(buffer, position, current, counter)) {
+                return true;
+            }
+            current = (long) LONGS.getAcquire(buffer, position);
+        }
+
+        return false;
+    }
+
+    /**
+     * Claims an unclaimed slot for the given identifier, or updates the identifier's counter if
+     * another thread claimed a slot for it first.
+     *
+     * @param onlyIfGreater whether an existing counter may only be raised.
+     * @return false if the counter was not written because the existing counter was not less.
+     */
+    private synchronized boolean claim(byte[] identifier, long counter, boolean onlyIfGreater) {
+        int slot = home(identifier);
+
+        for (int probes = 0; probes < slotCount; probes++) {
+            int offset = offset(slot);
+            int length = Short.toUnsignedInt((short) SHORTS.getAcquire(buffer, offset + LENGTH_OFFSET));
+
+            if (length == 0) {
+                for (int i = 0; i < identifier.length; i++) {
+                    buffer.put(offset + IDENTIFIER_OFFSET + i, identifier[i]);
+                }
+                LONGS.setRelease(buffer, offset + COUNTER_OFFSET, counter);
+                SHORTS.setRelease(buffer, offset + LENGTH_OFFSET, (short) identifier.length);
+                return true;
+            }
+            if (length == identifier.length && identifierEquals(slot, identifier)) {
+                if (onlyIfGreater) {
+                    return compareAndRaise(offset + COUNTER_OFFSET, counter);
+                }
+                LONGS.setRelease(buffer, offset + COUNTER_OFFSET, counter);
+                return true;
+            }
+            slot = slot + 1 == slotCount ? 0 : slot + 1;
+        }
+
+        throw new IllegalStateException("Counter store " + path.getFileName() + " is full");
+    }
+
+    private boolean identifierEquals(int slot, byte[] identifier) {
+        int start = offset(slot) + IDENTIFIER_OFFSET;
+
+        for (int i = 0; i < identifier.length; i++) {
+            if (buffer.get(start + i) != identifier[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int home(byte[] identifier) {
+        int hash = 1;
+        for (byte b : identifier) {
+            hash = 31 * hash + b;
+        }
+        hash ^= hash >>> 16;
+
+        return Math.floorMod(hash, slotCount);
+    }
+
+    private int offset(int slot) {
+        return HEADER_SIZE + slot * slotSize;
+    }
+
+    private byte[] encode(String identifier) {
+        byte[] bytes = identifier.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0 || bytes.length > maxIdentifierBytes) {
+            throw new IllegalArgumentException("Identifier must be between 1 and " + maxIdentifierBytes
+                    + " bytes: " + identifier);
+        }
+        return bytes;
+    }
+
+    /**
+     * Checks that the existing file was created by this class with the same dimensions, before it
+     * is mapped (and potentially extended).
+     */
+    private void checkHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // read until the header is full or the end of the file is reached
+        }
+
+        if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != slotCount
+                || header.getInt(8) != maxIdentifierBytes) {
+            channel.close();
+            throw new IllegalStateException(path.getFileName() + " is not a counter store of "
+                    + slotCount + " slots and " + maxIdentifierBytes + " byte identifiers");
+        }
+    }
+
+}
@@ -0,0 +1,288 @@
+package com.samhg.authentication.persistence.counter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A {@link CounterPersistenceStrategy} that partitions identifiers across several underlying
+ * strategies, or shards, such as files on different disks, so that updates of different
+ * identifiers can proceed in parallel.
+ *
+ * Identifiers are assigned to shards by consistent hashing: each shard owns {@link #virtualNodes}
+ * points on a hash ring, and an identifier belongs to the shard owning the first point at or after
+ * its hash. The points of a shard depend only on its position in the list of shards, so a set of
+ * shards opened in the same order always assigns identifiers the same way. Adding a shard moves
+ * only the identifiers it takes over, roughly one in every {@code n + 1}.
+ *
+ * Each shard is guarded by its own lock, so the underlying strategies need not be thread-safe and
+ * updates only contend with updates of the same shard. {@link #persistAll} splits its updates by
+ * shard and persists each shard's updates with one call.
+ */
+public final class ShardedCounterPersistence implements CounterPersistenceStrategy {
+
+    /**
+     * The default number of points each shard owns on the ring.
+     */
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final int virtualNodes;
+
+    private volatile Ring ring;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param shards the underlying strategies, in a fixed order.
+     * @param virtualNodes the number of points each shard owns on the ring.
+     */
+    public ShardedCounterPersistence(List<? extends CounterPersistenceStrategy> shards, int virtualNodes) {
+        if (shards.isEmpty() || virtualNodes < 1) {
+            throw new IllegalArgumentException("At least one shard and one virtual node are required");
+        }
+        this.virtualNodes = virtualNodes;
+
+        ReentrantLock[] locks = new ReentrantLock[shards.size()];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.ring = new Ring(shards.toArray(new CounterPersistenceStrategy[0]), locks, virtualNodes);
+    }
+
+    public ShardedCounterPersistence(List<? extends CounterPersistenceStrategy> shards) {
+        this(shards, DEFAULT_VIRTUAL_NODES);
+    }
+
+    @Override
+    public Long persist(CounterUpdate counterUpdate) {
+        return withShard(counterUpdate.getIdentifier(), shard -> shard.persist(counterUpdate));
+    }
+
+    @Override
+    public boolean advance(CounterUpdate counterUpdate) {
+        return withShard(counterUpdate.getIdentifier(), shard -> shard.advance(counterUpdate));
+    }
+
+    @Override
+    public void persistAll(Collection<CounterUpdate> counterUpdates) {
+        while (true) {
+            Ring current = ring;
+            List<List<CounterUpdate>> groups = new ArrayList<>(current.shards.length);
+            for (int i = 0; i < current.shards.length; i++) {
+                groups.add(new ArrayList<>());
+            }
+            for (CounterUpdate counterUpdate : counterUpdates) {
+                groups.get(current.shardOf(hash(counterUpdate.getIdentifier()))).add(counterUpdate);
+            }
+
+            for (int shard = 0; shard < groups.size(); shard++) {
+                List<CounterUpdate> group = groups.get(shard);
+                if (group.isEmpty()) {
+                    continue;
+                }
+
+                ReentrantLock lock = current.locks[shard];
+                lock.lock();
+                try {
+                    if (current != ring) {
+                        break;
+                    }
+                    current.shards[shard].persistAll(group);
+                    group.clear();
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            if (groups.stream().allMatch(List::isEmpty)) {
+                return;
+            }
+            counterUpdates = new ArrayList<>();
+            for (List<CounterUpdate> group : groups) {
+                counterUpdates.addAll(group);
+            }
+        }
+    }
+
+    @Override
+    public OptionalLong load(String identifier) {
+        return withShard(identifier, shard -> shard.load(identifier));
+    }
+
+    /**
+     * Iterates the counters of every shard that belong to it, skipping copies left behind by
+     * {@link #addShard(CounterPersistenceStrategy)}.
+     */
+    @Override
+    public void forEach(ObjLongConsumer<String> action) {
+        Ring current = ring;
+
+        for (int shard = 0; shard < current.shards.length; shard++) {
+            int owner = shard;
+            ReentrantLock lock = current.locks[shard];
+
+            lock.lock();
+            try {
+                current.shards[shard].forEach((identifier, counter) -> {
+                    if (current.shardOf(hash(identifier)) == owner) {
+                        action.accept(identifier, counter);
+                    }
+                });
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Adds a shard and moves the counters it takes over from the existing shards into it. Every
+     * shard is locked while counters are moved, so updates wait for the rebalance to finish.
+     *
+     * The existing shards must support {@link CounterPersistenceStrategy#forEach}. Since the
+     * strategy contract has no removal, moved counters remain in their previous shard, where they
+     * are no longer read.
+     *
+     * @param shard the new shard, which is placed after the existing shards.
+     */
+    public synchronized void addShard(CounterPersistenceStrategy shard) {
+        Ring current = ring;
+        int added = current.shards.length;
+
+        CounterPersistenceStrategy[] shards = Arrays.copyOf(current.shards, added + 1);
+        ReentrantLock[] locks = Arrays.copyOf(current.locks, added + 1);
+        shards[added] = shard;
+        locks[added] = new ReentrantLock();
+        Ring next = new Ring(shards, locks, virtualNodes);
+
+        for (ReentrantLock lock : current.locks) {
+            lock.lock();
+        }
+        try {
+            List<CounterUpdate> moved = new ArrayList<>();
+            for (int i = 0; i < added; i++) {
+                int owner = i;
+                current.shards[i].forEach((identifier, counter) -> {
+                    if (current.shardOf(hash(identifier)) == owner && next.shardOf(hash(identifier)) == added) {
+                        moved.add(new CounterUpdate(identifier, counter));
+                    }
+                });
+            }
+            if (!moved.isEmpty()) {
+                shard.persistAll(moved);
+            }
+            ring = next;
+
+        } finally {
+            for (ReentrantLock lock : current.locks) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Applies the given action to the shard of the given identifier while holding the shard's lock,
+     * retrying if a shard is added in the meantime.
+     */
+    private <R> R withShard(String identifier, Function<CounterPersistenceStrategy, R> action) {
+        long hash = hash(identifier);
+
+        while (true) {
+            Ring current = ring;
+            int shard = current.shardOf(hash);
+            ReentrantLock lock = current.locks[shard];
+
+            lock.lock();
+            try {
+                if (current == ring) {
+                    return action.apply(current.shards[shard]);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the number of shards.
+     */
+    public int shardCount() {
+        return ring.shards.length;
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the identifier's characters, finalised to spread its bits. The hash
+     * is not seeded, so that identifiers are assigned to the same shards across restarts.
+     */
+    private static long hash(String identifier) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < identifier.length(); i++) {
+            hash ^= identifier.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+
+        return value;
+    }
+
+    /**
+     * An immutable assignment of ring points to shards, replaced as a whole when a shard is added.
+     */
+    private static final class Ring {
+
+        private final CounterPersistenceStrategy[] shards;
+
+        private final ReentrantLock[] locks;
+
+        /**
+         * The points of every shard, in ascending order.
+         */
+        private final long[] points;
+
+        /**
+         * The shard owning each point.
+         */
+        private final int[] owners;
+
+        Ring(CounterPersistenceStrategy[] shards, ReentrantLock[] locks, int virtualNodes) {
+            this.shards = shards;
+            this.locks = locks;
+
+            long[][] nodes = new long[shards.length * virtualNodes][];
+            for (int shard = 0; shard < shards.length; shard++) {
+                for (int node = 0; node < virtualNodes; node++) {
+                    nodes[shard * virtualNodes + node] = new long[] { mix((long) shard << 32 | node), shard };
+                }
+            }
+            Arrays.sort(nodes, (a, b) -> Long.compare(a[0], b[0]));
+
+            points = new long[nodes.length];
+            owners = new int[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                points[i] = nodes[i][0];
+                owners[i] = (int) nodes[i][1];
+            }
+        }
+
+        int shardOf(long hash) {
+            int index = Arrays.binarySearch(points, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return owners[index == points.length ? 0 : index];
+        }
+    }
+
+}
@@ -1,56 +1,172 @@
 package com.samhg.authentication.persistence.counter;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.OptionalLong;
+import java.util.function.ObjLongConsumer;
 
 import static java.nio.file.StandardOpenOption.*;
 
+/**
+ * A {@link CounterPersistenceStrategy} that stores every counter in a text file of
+ * {@code identifier:counter} lines, rewriting the file on each update.
+ *
+ * Each read-modify-write of the file holds this instance's monitor and an exclusive
+ * {@link java.nio.channels.FileLock} on the whole file, so updates from other threads and other
+ * processes are not lost; reads hold a shared lock. Since the locks are held per file, a file must
+ * only be opened by one instance per process, and updates of different identifiers should be
+ * spread over several files, see {@link ShardedCounterPersistence}.
+ *
+ * The file is parsed with a {@link CounterFileReader}, in parallel by region and without holding
+ * it in memory, and rewritten in place through a fixed-size buffer, so neither reading nor writing
+ * builds the file's contents in a single array. The file is rewritten in place, rather than replaced,
+ * so that the lock held by another process stays on the file it will read.
+ */
 public final class TextFileCounterPersistence implements CounterPersistenceStrategy {
 
+    /**
+     * The size of the buffer the file is rewritten through.
+     */
+    private static final int WRITE_BUFFER_SIZE = 64 << 10;
+
     private final Path path;
 
-    public TextFileCounterPersistence(Path path) {
+    private final CounterFileReader reader;
+
+    public TextFileCounterPersistence(Path path, CounterFileReader reader) {
         this.path = path;
+        this.reader = reader;
+    }
+
+    public TextFileCounterPersistence(Path path) {
+        this(path, new CounterFileReader());
     }
 
     @Override
     public Long persist(CounterUpdate counterUpdate) {
-        try (AsynchronousFileChannel channel = AsynchronousFileChannel.open(path, READ, WRITE)) {
+        rewrite(Collections.singleton(counterUpdate), false);
 
-            int fileSize = (int) channel.size();
-            ByteBuffer readBuffer = ByteBuffer.allocate(fileSize);
-            channel.read(readBuffer, 0);
+        return counterUpdate.getNewCounter();
+    }
 
-            String[] linesArray = new String(readBuffer.array()).split("\n");
-            Stream<String> lines = Arrays.stream(linesArray).parallel();
+    @Override
+    public boolean advance(CounterUpdate counterUpdate) {
+        return rewrite(Collections.singleton(counterUpdate), true);
+    }
 
-            Map<String, String> entries = lines
-                    .filter(l -> l.matches("\\w+:\\w+"))
-                    .map(l -> l.split(":"))
-                    .collect(Collectors.toMap(l -> l[0], l -> l[1]));
+    /**
+     * Applies every update in a single rewrite of the file.
+     */
+    @Override
+    public void persistAll(Collection<CounterUpdate> counterUpdates) {
+        rewrite(counterUpdates, false);
+    }
 
-            entries.compute(counterUpdate.getRequest().getIdentifier(),
-                    (k, v) -> Long.toString(counterUpdate.getNewCounter()));
+    @Override
+    public OptionalLong load(String identifier) {
+        return readEntries().get(identifier);
+    }
 
-            String newFile = entries.entrySet()
-                    .parallelStream()
-                    .map(e -> e.getKey() + ":" + e.getValue() + "\n")
-                    .reduce(String::concat)
-                    .orElseThrow();
+    @Override
+    public void forEach(ObjLongConsumer<String> action) {
+        readEntries().forEach(action);
+    }
 
-            ByteBuffer writeBuffer = ByteBuffer.wrap(newFile.getBytes());
-            channel.write(writeBuffer, 0);
+    private synchronized CounterMap readEntries() {
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            channel.lock(0, Long.MAX_VALUE, true);
 
-            return counterUpdate.getNewCounter();
+            return reader.read(channel);
 
         } catch (IOException e) {
             throw new RuntimeException("IO error occurred whilst accessing " + path.getFileName(), e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Applies the given updates to the file, holding an exclusive lock on it.
+     *
+     * @param onlyIfGreater whether an update is only applied if its counter is greater than the
+     *                      counter in the file.
+     * @return true if any update was applied.
+     */
+    private synchronized boolean rewrite(Collection<CounterUpdate> counterUpdates, boolean onlyIfGreater) {
+        try (FileChannel channel = FileChannel.open(path, READ, WRITE)) {
+            channel.lock();
+
+            CounterMap entries = reader.read(channel);
+            boolean applied = false;
+
+            for (CounterUpdate counterUpdate : counterUpdates) {
+                OptionalLong counter = entries.get(counterUpdate.getIdentifier());
+                if (onlyIfGreater && counter.isPresent() && counter.getAsLong() >= counterUpdate.getNewCounter()) {
+                    continue;
+                }
+                entries.put(counterUpdate.getIdentifier(), counterUpdate.getNewCounter());
+                applied = true;
+            }
+
+            if (!applied) {
+                return false;
+            }
+
+            long size = write(channel, entries);
+            channel.truncate(size);
+            channel.force(false);
+
+            return true;
+
+        } catch (IOException | UncheckedIOException e) {
+            throw new RuntimeException("IO error occurred whilst accessing " + path.getFileName(), e);
+        }
+    }
+
+    /**
+     * Writes every entry from the start of the file, through a buffer of {@link #WRITE_BUFFER_SIZE}.
+     *
+     * @return the number of bytes written.
+     */
+    private static long write(FileChannel channel, CounterMap entries) throws IOException {
+        ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        long[] position = { 0 };
+
+        entries.forEach((identifier, counter) -> {
+            byte[] line = (identifier + ':' + counter + '\n').getBytes(StandardCharsets.US_ASCII);
+            try {
+                if (writeBuffer.remaining() < line.length) {
+                    position[0] = flush(channel, writeBuffer, position[0]);
+                }
+                if (writeBuffer.remaining() < line.length) {
+                    position[0] = flush(channel, ByteBuffer.wrap(line).position(line.length), position[0]);
+                } else {
+                    writeBuffer.put(line);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        return flush(channel, writeBuffer, position[0]);
+    }
+
+    /**
+     * Writes the contents of a buffer in write mode at the given position and clears it.
+     *
+     * @return the position after the written bytes.
+     */
+    private static long flush(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+
+        return position;
+    }
+}
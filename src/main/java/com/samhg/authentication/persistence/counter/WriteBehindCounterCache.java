@@ -0,0 +1,444 @@
+package com.samhg.authentication.persistence.counter;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A {@link CounterPersistenceStrategy} that caches counters in memory in front of another strategy,
+ * serving loads from memory, loading misses from the underlying strategy and writing updates
+ * behind: updates are held in memory and persisted together, with one call to
+ * {@link CounterPersistenceStrategy#persistAll}, at most {@link #maxLagMillis} after they are made.
+ *
+ * Counters are held in fixed-size primitive arrays split into independently locked segments, so
+ * memory is bounded at construction. Each identifier is stored with a 64-bit hash and may occupy a
+ * short probe sequence of slots; when every slot is taken, an entry is evicted with the CLOCK
+ * (second chance) policy, preferring entries that have been persisted. Evicting an entry with an
+ * unpersisted counter persists it first. Entries being flushed cannot be evicted until their flush
+ * returns, so an eviction never persists a counter that a flush in progress could then overwrite
+ * with an older one. Misses are loaded from the underlying strategy while holding the segment's
+ * lock, so a counter evicted and persisted concurrently is never cached at an older value.
+ *
+ * Since updates are acknowledged before they are persisted, up to {@link #maxLagMillis} of updates
+ * are lost if the process stops without {@link #close()}. {@link #advance(CounterUpdate)} is atomic
+ * with respect to other updates through this cache, so every update of the underlying strategy
+ * must be made through it. Once the cache is closed, updates are rejected.
+ */
+public final class WriteBehindCounterCache implements CounterPersistenceStrategy, Closeable {
+
+    /**
+     * The default number of cached counters.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * The default maximum time, in milliseconds, between an update and it being persisted.
+     */
+    public static final long DEFAULT_MAX_LAG_MILLIS = 1000;
+
+    /**
+     * The number of consecutive slots an identifier may occupy, starting at its home slot.
+     */
+    private static final int PROBE_LENGTH = 8;
+
+    private final CounterPersistenceStrategy persistenceStrategy;
+
+    private final long maxLagMillis;
+
+    private final Segment[] segments;
+
+    private final ScheduledExecutorService flusher;
+
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new cache and starts writing behind.
+     *
+     * @param persistenceStrategy the strategy counters are loaded from and persisted with.
+     * @param capacity the number of cached counters, rounded up to a power of two.
+     * @param maxLagMillis the maximum time between an update and it being persisted.
+     */
+    public WriteBehindCounterCache(CounterPersistenceStrategy persistenceStrategy, int capacity, long maxLagMillis) {
+        int segmentCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1)) << 1;
+        int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        int segmentCapacity = Math.max(PROBE_LENGTH, size / segmentCount);
+
+        this.persistenceStrategy = persistenceStrategy;
+        this.maxLagMillis = maxLagMillis;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "counter-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, maxLagMillis, maxLagMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public WriteBehindCounterCache(CounterPersistenceStrategy persistenceStrategy) {
+        this(persistenceStrategy, DEFAULT_CAPACITY, DEFAULT_MAX_LAG_MILLIS);
+    }
+
+    /**
+     * Caches the update, to be persisted by the next flush.
+     *
+     * @throws IllegalStateException if the cache is closed.
+     */
+    @Override
+    public Long persist(CounterUpdate counterUpdate) {
+        String identifier = counterUpdate.getIdentifier();
+        long hash = hash(identifier);
+
+        segmentFor(hash).put(hash, identifier, counterUpdate.getNewCounter());
+
+        return counterUpdate.getNewCounter();
+    }
+
+    @Override
+    public void persistAll(Collection<CounterUpdate> counterUpdates) {
+        for (CounterUpdate counterUpdate : counterUpdates) {
+            persist(counterUpdate);
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if the cache is closed.
+     */
+    @Override
+    public boolean advance(CounterUpdate counterUpdate) {
+        String identifier = counterUpdate.getIdentifier();
+        long hash = hash(identifier);
+
+        return segmentFor(hash).advance(hash, identifier, counterUpdate.getNewCounter());
+    }
+
+    @Override
+    public OptionalLong load(String identifier) {
+        long hash = hash(identifier);
+
+        return segmentFor(hash).get(hash, identifier);
+    }
+
+    /**
+     * Flushes every cached update and then iterates the counters of the underlying strategy.
+     */
+    @Override
+    public void forEach(ObjLongConsumer<String> action) {
+        flush();
+        persistenceStrategy.forEach(action);
+    }
+
+    /**
+     * Persists every cached update that has not yet been persisted, with one call to
+     * {@link CounterPersistenceStrategy#persistAll}. If persisting fails, the updates are kept to be
+     * persisted by the next flush.
+     */
+    public synchronized void flush() {
+        List<CounterUpdate> counterUpdates = new ArrayList<>();
+        for (Segment segment : segments) {
+            segment.drainDirty(counterUpdates);
+        }
+        if (counterUpdates.isEmpty()) {
+            return;
+        }
+
+        boolean persisted = false;
+        try {
+            persistenceStrategy.persistAll(counterUpdates);
+            persisted = true;
+
+        } finally {
+            for (CounterUpdate counterUpdate : counterUpdates) {
+                long hash = hash(counterUpdate.getIdentifier());
+                segmentFor(hash).release(hash, counterUpdate.getIdentifier(), counterUpdate.getNewCounter(), persisted);
+            }
+        }
+    }
+
+    /**
+     * Stops writing behind, rejects further updates and flushes every cached update.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(maxLagMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // the updates are retried by the next flush
+        }
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> 32) & (segments.length - 1)];
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the identifier's characters, finalised to spread its bits; never 0,
+     * which marks an unused slot.
+     */
+    private static long hash(String identifier) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < identifier.length(); i++) {
+            hash ^= identifier.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+
+        return hash == 0 ? 1 : hash;
+    }
+
+    private final class Segment {
+
+        private final long[] hashes;
+
+        private final String[] identifiers;
+
+        private final long[] counters;
+
+        /**
+         * Whether each slot's counter has been updated since it was last persisted.
+         */
+        private final boolean[] dirty;
+
+        /**
+         * Whether each slot's counter is being persisted by a flush, which pins it in the segment.
+         */
+        private final boolean[] flushing;
+
+        /**
+         * Whether each slot has been used since the clock last passed it.
+         */
+        private final boolean[] referenced;
+
+        private final int mask;
+
+        Segment(int capacity) {
+            hashes = new long[capacity];
+            identifiers = new String[capacity];
+            counters = new long[capacity];
+            dirty = new boolean[capacity];
+            flushing = new boolean[capacity];
+            referenced = new boolean[capacity];
+            mask = capacity - 1;
+        }
+
+        /**
+         * Gets a counter, loading it from the underlying strategy on a miss.
+         */
+        synchronized OptionalLong get(long hash, String identifier) {
+            int slot = acquire(hash, identifier);
+            if (slot < 0) {
+                slot = ~slot;
+                if (!fill(slot, identifier)) {
+                    free(slot);
+                    return OptionalLong.empty();
+                }
+            }
+            referenced[slot] = true;
+
+            return OptionalLong.of(counters[slot]);
+        }
+
+        synchronized void put(long hash, String identifier, long counter) {
+            checkOpen();
+
+            int slot = acquire(hash, identifier);
+            if (slot < 0) {
+                slot = ~slot;
+            }
+            counters[slot] = counter;
+            dirty[slot] = true;
+            referenced[slot] = true;
+        }
+
+        synchronized boolean advance(long hash, String identifier, long counter) {
+            checkOpen();
+
+            int slot = acquire(hash, identifier);
+            if (slot < 0) {
+                slot = ~slot;
+                if (!fill(slot, identifier)) {
+                    counters[slot] = counter;
+                    dirty[slot] = true;
+                    referenced[slot] = true;
+                    return true;
+                }
+            }
+            referenced[slot] = true;
+            if (counters[slot] >= counter) {
+                return false;
+            }
+
+            counters[slot] = counter;
+            dirty[slot] = true;
+            return true;
+        }
+
+        /**
+         * Collects every unpersisted counter and pins it until it is {@link #release}d.
+         */
+        synchronized void drainDirty(List<CounterUpdate> counterUpdates) {
+            for (int slot = 0; slot <= mask; slot++) {
+                if (dirty[slot]) {
+                    counterUpdates.add(new CounterUpdate(identifiers[slot], counters[slot]));
+                    dirty[slot] = false;
+                    flushing[slot] = true;
+                }
+            }
+        }
+
+        /**
+         * Unpins a counter once its flush has returned. If persisting failed, the counter is marked
+         * dirty again, unless it has since been updated, which marked it dirty already.
+         */
+        synchronized void release(long hash, String identifier, long counter, boolean persisted) {
+            int slot = find(hash, identifier);
+            if (slot < 0) {
+                return;
+            }
+            flushing[slot] = false;
+            if (!persisted && counters[slot] == counter) {
+                dirty[slot] = true;
+            }
+            notifyAll();
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("Counter cache is closed");
+            }
+        }
+
+        /**
+         * Finds the identifier's slot, or claims one for it, waiting for a flush to unpin a slot if
+         * every slot of its probe sequence is pinned.
+         *
+         * @return the identifier's slot, or its bitwise complement if the slot was newly claimed.
+         */
+        private int acquire(long hash, String identifier) {
+            while (true) {
+                int slot = find(hash, identifier);
+                if (slot >= 0) {
+                    return slot;
+                }
+
+                slot = claim(hash, identifier);
+                if (slot >= 0) {
+                    return ~slot;
+                }
+
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted whilst waiting for a counter flush", e);
+                }
+            }
+        }
+
+        /**
+         * Loads a newly claimed slot's counter from the underlying strategy, freeing the slot if
+         * loading fails.
+         *
+         * @return true if the underlying strategy has a counter for the identifier.
+         */
+        private boolean fill(int slot, String identifier) {
+            OptionalLong counter;
+            try {
+                counter = persistenceStrategy.load(identifier);
+            } catch (RuntimeException | Error e) {
+                free(slot);
+                throw e;
+            }
+
+            counters[slot] = counter.orElse(0);
+            dirty[slot] = false;
+            return counter.isPresent();
+        }
+
+        private void free(int slot) {
+            hashes[slot] = 0;
+            identifiers[slot] = null;
+            referenced[slot] = false;
+        }
+
+        private int find(long hash, String identifier) {
+            int home = (int) hash & mask;
+
+            for (int probe = 0; probe < PROBE_LENGTH; probe++) {
+                int slot = (home + probe) & mask;
+                if (hashes[slot] == hash && identifier.equals(identifiers[slot])) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Claims an empty slot in the identifier's probe sequence or evicts one, sweeping the
+         * sequence like a clock: a referenced slot has its reference cleared and is passed over,
+         * slots holding unpersisted counters are only evicted if every slot was referenced, and
+         * pinned slots are never evicted.
+         *
+         * @return the claimed slot, or -1 if every slot of the sequence is pinned.
+         */
+        private int claim(long hash, String identifier) {
+            int home = (int) hash & mask;
+            int victim = -1;
+
+            for (int pass = 0; pass < 2 && victim < 0; pass++) {
+                for (int probe = 0; probe < PROBE_LENGTH; probe++) {
+                    int slot = (home + probe) & mask;
+
+                    if (hashes[slot] == 0) {
+                        victim = slot;
+                        break;
+                    }
+                    if (flushing[slot]) {
+                        continue;
+                    }
+                    if (referenced[slot]) {
+                        referenced[slot] = false;
+                    } else if (!dirty[slot] || pass > 0) {
+                        victim = slot;
+                        break;
+                    }
+                }
+            }
+            if (victim < 0) {
+                return -1;
+            }
+
+            if (dirty[victim]) {
+                persistenceStrategy.persist(new CounterUpdate(identifiers[victim], counters[victim]));
+                dirty[victim] = false;
+            }
+
+            hashes[victim] = hash;
+            identifiers[victim] = identifier;
+            return victim;
+        }
+    }
+
+}
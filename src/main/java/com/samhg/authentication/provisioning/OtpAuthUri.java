@@ -0,0 +1,92 @@
+package com.samhg.authentication.provisioning;
+
+import com.google.common.io.BaseEncoding;
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.key.SharedSecret;
+import com.samhg.authentication.validation.PasswordType;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formats otpauth:// URIs, the Key URI Format read by authenticator applications, for the secrets of
+ * a single issuer.
+ *
+ * The parameters shared by every URI are encoded once, at construction, so that formatting a URI
+ * only encodes its account name and secret. Secrets are encoded in base32 without padding, as the
+ * format requires.
+ */
+public final class OtpAuthUri {
+
+    /**
+     * The default period, in seconds, of time-based passwords.
+     */
+    public static final int DEFAULT_PERIOD = 30;
+
+    private static final BaseEncoding SECRET_ENCODING = BaseEncoding.base32().omitPadding();
+
+    private final PasswordType type;
+
+    /**
+     * The scheme, type and issuer prefix of the label, e.g. {@code otpauth://hotp/Issuer:}.
+     */
+    private final String prefix;
+
+    /**
+     * The issuer, algorithm, digits and, for time-based passwords, period parameters.
+     */
+    private final String parameters;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param issuer the name of the provider or service the secrets are for.
+     * @param type the type of password the secrets generate.
+     * @param algorithm the algorithm passwords are generated with.
+     * @param digits the number of digits in a password.
+     * @param period the number of seconds in a time step, ignored for event-based passwords.
+     */
+    public OtpAuthUri(String issuer, PasswordType type, HmacAlgorithm algorithm, int digits, int period) {
+        String encodedIssuer = encode(issuer);
+
+        this.type = type;
+        this.prefix = "otpauth://" + (type == PasswordType.EVENT_BASED ? "hotp" : "totp") + "/" + encodedIssuer + ":";
+        this.parameters = "&issuer=" + encodedIssuer + "&algorithm=" + algorithm.name() + "&digits=" + digits
+                + (type == PasswordType.TIME_BASED ? "&period=" + period : "");
+    }
+
+    public OtpAuthUri(String issuer, PasswordType type) {
+        this(issuer, type, HmacAlgorithm.SHA1, 6, DEFAULT_PERIOD);
+    }
+
+    /**
+     * Formats the URI of the given account's secret.
+     *
+     * @param account the name of the account, usually the identifier the secret is for.
+     * @param secret the secret.
+     * @param counter the initial counter, included only for event-based passwords.
+     * @return the otpauth:// URI.
+     */
+    public String format(String account, SharedSecret secret, long counter) {
+        StringBuilder uri = new StringBuilder(128)
+                .append(prefix)
+                .append(encode(account))
+                .append("?secret=")
+                .append(SECRET_ENCODING.encode(secret.getSecret()))
+                .append(parameters);
+
+        if (type == PasswordType.EVENT_BASED) {
+            uri.append("&counter=").append(counter);
+        }
+
+        return uri.toString();
+    }
+
+    /**
+     * Percent-encodes a label or parameter value, encoding spaces as {@code %20} rather than {@code +}.
+     */
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+}
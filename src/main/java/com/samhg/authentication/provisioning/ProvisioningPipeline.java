@@ -0,0 +1,209 @@
+package com.samhg.authentication.provisioning;
+
+import com.samhg.authentication.key.SharedSecret;
+import com.samhg.authentication.key.SharedSecretProvider;
+import com.samhg.authentication.persistence.counter.CounterPersistenceStrategy;
+import com.samhg.authentication.persistence.counter.CounterUpdate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Provisions secrets for a stream of identifiers, writing a {@link ProvisioningRecord} line for each
+ * identifier to an {@link OutputStream} and optionally seeding each identifier's counter.
+ *
+ * Identifiers are read in chunks of {@link #chunkSize}. Each chunk is provisioned on the
+ * {@link #executor}: its secrets are created with a single call to
+ * {@link SharedSecretProvider#createSecrets(int)}, its counters are seeded with a single call to
+ * {@link CounterPersistenceStrategy#persistAll}, and its records are encoded into one block of
+ * bytes. Blocks are written in the order their identifiers were read. At most {@link #maxInFlight}
+ * chunks are provisioned or awaiting writing at once, so memory use does not depend on the number
+ * of identifiers.
+ *
+ * A chunk's counters are seeded before its records are written, so every written record has been
+ * seeded. Chunks are seeded concurrently, so the {@link CounterPersistenceStrategy} must be safe
+ * for concurrent use. If provisioning fails, chunks not yet started are cancelled and records
+ * already written remain in the output.
+ */
+public final class ProvisioningPipeline {
+
+    /**
+     * The default number of identifiers provisioned together.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    private final SharedSecretProvider secretProvider;
+
+    private final OtpAuthUri uriFormat;
+
+    private final long initialCounter;
+
+    private final Executor executor;
+
+    private final int chunkSize;
+
+    private final int maxInFlight;
+
+    /**
+     * Constructs a new pipeline.
+     *
+     * @param secretProvider the provider of each identifier's secret.
+     * @param uriFormat formats the otpauth:// URI of each secret.
+     * @param initialCounter the counter each identifier starts at.
+     * @param executor the executor chunks are provisioned on.
+     * @param chunkSize the number of identifiers provisioned together.
+     * @param maxInFlight the maximum number of chunks held in memory at once.
+     */
+    public ProvisioningPipeline(SharedSecretProvider secretProvider, OtpAuthUri uriFormat, long initialCounter,
+                                Executor executor, int chunkSize, int maxInFlight) {
+        if (chunkSize < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("Chunk size and chunks in flight must be at least 1");
+        }
+        this.secretProvider = secretProvider;
+        this.uriFormat = uriFormat;
+        this.initialCounter = initialCounter;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Constructs a new pipeline starting every counter at 0, using {@link ForkJoinPool#commonPool()}
+     * and allowing two chunks in flight per thread of the pool.
+     *
+     * @param secretProvider the provider of each identifier's secret.
+     * @param uriFormat formats the otpauth:// URI of each secret.
+     */
+    public ProvisioningPipeline(SharedSecretProvider secretProvider, OtpAuthUri uriFormat) {
+        this(secretProvider, uriFormat, 0, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE,
+                ForkJoinPool.getCommonPoolParallelism() * 2);
+    }
+
+    /**
+     * Provisions every identifier, without seeding counters.
+     *
+     * @param identifiers the identifiers to provision, which must not contain tabs or line breaks.
+     * @param out the stream records are written to; it is neither flushed nor closed.
+     * @return the number of identifiers provisioned.
+     */
+    public long provision(Iterator<String> identifiers, OutputStream out) {
+        return provision(identifiers, out, null);
+    }
+
+    /**
+     * Provisions every identifier, seeding each identifier's counter with {@link #initialCounter}.
+     *
+     * @param identifiers the identifiers to provision, which must not contain tabs or line breaks.
+     * @param out the stream records are written to; it is neither flushed nor closed.
+     * @param persistenceStrategy the store counters are seeded in, or null to not seed counters.
+     * @return the number of identifiers provisioned.
+     * @throws RuntimeException if the {@link #executor} rejects a chunk.
+     */
+    public long provision(Iterator<String> identifiers, OutputStream out, CounterPersistenceStrategy persistenceStrategy) {
+        Deque<CompletableFuture<byte[]>> inFlight = new ArrayDeque<>(maxInFlight);
+        long provisioned = 0;
+        boolean completed = false;
+
+        try {
+            while (identifiers.hasNext()) {
+                List<String> chunk = new ArrayList<>(chunkSize);
+                while (chunk.size() < chunkSize && identifiers.hasNext()) {
+                    chunk.add(checkIdentifier(identifiers.next()));
+                }
+
+                if (inFlight.size() == maxInFlight) {
+                    out.write(inFlight.removeFirst().join());
+                }
+                inFlight.addLast(CompletableFuture.supplyAsync(() -> provision(chunk, persistenceStrategy), executor));
+                provisioned += chunk.size();
+            }
+
+            while (!inFlight.isEmpty()) {
+                out.write(inFlight.removeFirst().join());
+            }
+            completed = true;
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("IO error occurred whilst writing provisioning records", e);
+
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+
+        } catch (RejectedExecutionException e) {
+            throw new RuntimeException("Executor rejected a chunk of identifiers to provision", e);
+
+        } finally {
+            if (!completed) {
+                inFlight.forEach(future -> future.cancel(false));
+            }
+        }
+
+        return provisioned;
+    }
+
+    /**
+     * Provisions every identifier, writing records to the given channel.
+     *
+     * @see #provision(Iterator, OutputStream, CounterPersistenceStrategy)
+     */
+    public long provision(Iterator<String> identifiers, WritableByteChannel channel,
+                          CounterPersistenceStrategy persistenceStrategy) {
+        return provision(identifiers, Channels.newOutputStream(channel), persistenceStrategy);
+    }
+
+    /**
+     * Provisions a single chunk of identifiers.
+     *
+     * @return the chunk's encoded records.
+     */
+    private byte[] provision(List<String> chunk, CounterPersistenceStrategy persistenceStrategy) {
+        List<SharedSecret> secrets = secretProvider.createSecrets(chunk.size());
+        StringBuilder lines = new StringBuilder(chunk.size() * 160);
+
+        for (int i = 0; i < chunk.size(); i++) {
+            String identifier = chunk.get(i);
+            SharedSecret secret = secrets.get(i);
+
+            new ProvisioningRecord(identifier, secret, uriFormat.format(identifier, secret, initialCounter), initialCounter)
+                    .appendTo(lines);
+        }
+
+        if (persistenceStrategy != null) {
+            List<CounterUpdate> counterUpdates = new ArrayList<>(chunk.size());
+            for (String identifier : chunk) {
+                counterUpdates.add(new CounterUpdate(identifier, initialCounter));
+            }
+            persistenceStrategy.persistAll(counterUpdates);
+        }
+
+        return lines.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String checkIdentifier(String identifier) {
+        for (int i = 0; i < identifier.length(); i++) {
+            char c = identifier.charAt(i);
+            if (c == '\t' || c == '\n' || c == '\r') {
+                throw new IllegalArgumentException("Identifier contains a tab or line break: " + identifier);
+            }
+        }
+        return identifier;
+    }
+
+}
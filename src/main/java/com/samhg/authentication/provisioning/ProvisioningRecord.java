@@ -0,0 +1,61 @@
+package com.samhg.authentication.provisioning;
+
+import com.samhg.authentication.key.SharedSecret;
+
+/**
+ * The provisioning data of a single identifier, as produced by {@link ProvisioningPipeline}.
+ */
+public final class ProvisioningRecord {
+
+    private final String identifier;
+
+    private final SharedSecret secret;
+
+    private final String uri;
+
+    private final long counter;
+
+    public ProvisioningRecord(String identifier, SharedSecret secret, String uri, long counter) {
+        this.identifier = identifier;
+        this.secret = secret;
+        this.uri = uri;
+        this.counter = counter;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public SharedSecret getSecret() {
+        return secret;
+    }
+
+    /**
+     * @return the otpauth:// URI of the secret.
+     */
+    public String getUri() {
+        return uri;
+    }
+
+    /**
+     * @return the initial counter of the identifier.
+     */
+    public long getCounter() {
+        return counter;
+    }
+
+    /**
+     * Formats this record as a single line of tab separated fields: the identifier, the base32
+     * encoded secret, the counter and the URI, followed by a line feed.
+     *
+     * @param line the builder the line is appended to.
+     * @return the given builder.
+     */
+    public StringBuilder appendTo(StringBuilder line) {
+        return line.append(identifier).append('\t')
+                .append(secret.getEncodedSecret()).append('\t')
+                .append(counter).append('\t')
+                .append(uri).append('\n');
+    }
+
+}
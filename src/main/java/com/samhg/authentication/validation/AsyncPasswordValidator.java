@@ -0,0 +1,72 @@
+package com.samhg.authentication.validation;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Validates One Time Passwords without blocking the calling thread, generating passwords on an
+ * executor and notifying {@link AsyncValidationObserver}s without waiting for them.
+ *
+ * Passwords are generated by a {@link PasswordValidator}, whose factory caches key state per thread;
+ * the executor should therefore reuse its threads (e.g. {@link ForkJoinPool#commonPool()}) rather
+ * than start one per task. Blocking work, such as persistence, belongs to the observers and the
+ * executors they are given, see {@link com.samhg.authentication.persistence.AsyncPersistenceStrategy#defaultExecutor()}.
+ */
+public final class AsyncPasswordValidator {
+
+    private final PasswordValidator validator;
+
+    private final Executor executor;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param validator used to search for passwords.
+     * @param executor the executor passwords are generated on.
+     */
+    public AsyncPasswordValidator(PasswordValidator validator, Executor executor) {
+        this.validator = validator;
+        this.executor = executor;
+    }
+
+    /**
+     * Constructs a new instance which generates passwords on {@link ForkJoinPool#commonPool()}.
+     *
+     * @param validator used to search for passwords.
+     */
+    public AsyncPasswordValidator(PasswordValidator validator) {
+        this(validator, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Checks if the password enclosed in the specified request is valid and then invokes each of
+     * the given observers.
+     *
+     * @param request the request to validate the password for.
+     * @param observers observers that should be invoked upon validating the request.
+     * @return a future completed with the result once every observer's future has completed, or
+     * completed exceptionally if password generation or any observer failed.
+     */
+    public CompletableFuture<ValidationResult> validate(PasswordValidationRequest request,
+                                                        Collection<AsyncValidationObserver> observers) {
+
+        return CompletableFuture
+                .supplyAsync(() -> new ValidationResult(request, validator.search(request)), executor)
+                .thenCompose(result -> notify(result, observers));
+    }
+
+    private static CompletableFuture<ValidationResult> notify(ValidationResult result,
+                                                             Collection<AsyncValidationObserver> observers) {
+
+        CompletableFuture<?>[] notifications = new CompletableFuture<?>[observers.size()];
+        int i = 0;
+        for (AsyncValidationObserver observer : observers) {
+            notifications[i++] = observer.onValidationAsync(result.getRequest(), result.getIndex());
+        }
+
+        return CompletableFuture.allOf(notifications).thenApply(ignored -> result);
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.samhg.authentication.validation;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A non-blocking counterpart to {@link ValidationObserver}.
+ */
+public interface AsyncValidationObserver {
+
+    CompletableFuture<Void> onValidationAsync(PasswordValidationRequest request, int index);
+
+    /**
+     * Adapts a blocking {@link ValidationObserver} by running each call on the given executor.
+     *
+     * @param observer the blocking observer.
+     * @param executor the executor blocking calls are run on.
+     * @return an asynchronous view of the given observer.
+     */
+    static AsyncValidationObserver of(ValidationObserver observer, Executor executor) {
+        return (request, index) -> CompletableFuture.runAsync(() -> observer.onValidation(request, index), executor);
+    }
+
+}
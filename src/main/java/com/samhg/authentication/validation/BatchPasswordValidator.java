@@ -0,0 +1,233 @@
+package com.samhg.authentication.validation;
+
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.key.SecretHandle;
+import com.samhg.authentication.persistence.counter.CounterPersistenceStrategy;
+import com.samhg.authentication.persistence.counter.CounterUpdate;
+import com.samhg.authentication.validation.event.EventBasedCounterGuard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Validates batches of {@link PasswordValidationRequest}s in parallel.
+ *
+ * Requests are grouped by secret and algorithm, and each group is validated by a single thread so
+ * that the {@link com.samhg.authentication.generation.PasswordFactory}'s per-thread key state is set
+ * up once per group. Groups are split across a {@link ForkJoinPool}. The counters of every accepted
+ * {@link PasswordType#EVENT_BASED} request can then be advanced with one call to
+ * {@link CounterPersistenceStrategy#advanceAll}.
+ */
+public final class BatchPasswordValidator {
+
+    /**
+     * The default number of requests below which a task validates its groups rather than splitting.
+     */
+    public static final int DEFAULT_SPLIT_THRESHOLD = 64;
+
+    private final PasswordValidator validator;
+
+    private final ForkJoinPool pool;
+
+    private final int splitThreshold;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param validator used to search for each request's password.
+     * @param pool the pool groups of requests are validated in.
+     * @param splitThreshold the number of requests below which a task stops splitting.
+     */
+    public BatchPasswordValidator(PasswordValidator validator, ForkJoinPool pool, int splitThreshold) {
+        this.validator = validator;
+        this.pool = pool;
+        this.splitThreshold = splitThreshold;
+    }
+
+    /**
+     * Constructs a new instance using {@link ForkJoinPool#commonPool()} and {@link #DEFAULT_SPLIT_THRESHOLD}.
+     *
+     * @param validator used to search for each request's password.
+     */
+    public BatchPasswordValidator(PasswordValidator validator) {
+        this(validator, ForkJoinPool.commonPool(), DEFAULT_SPLIT_THRESHOLD);
+    }
+
+    /**
+     * Validates every request, without persisting any counters.
+     *
+     * @param requests the requests to validate.
+     * @return the result of each request, in the same order as the requests.
+     */
+    public List<ValidationResult> validate(List<PasswordValidationRequest> requests) {
+        ValidationResult[] results = new ValidationResult[requests.size()];
+        List<int[]> groups = group(requests);
+
+        pool.invoke(new GroupTask(requests, groups, 0, groups.size(), results));
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Validates every request and then advances the counter of each accepted event-based request
+     * to {@link CounterUpdate#accepted}, with a single call to {@link CounterPersistenceStrategy#advanceAll}
+     * in request order. A request whose counter cannot be advanced, because the persisted counter
+     * has already passed it, for example by an earlier request of the batch with the same password,
+     * is rejected in the returned results.
+     *
+     * The validator must not have an {@link EventBasedCounterGuard}, which advances counters itself;
+     * with one, use {@link #validate(List)}.
+     *
+     * @param requests the requests to validate.
+     * @param persistenceStrategy the strategy counters are advanced with.
+     * @return the result of each request, in the same order as the requests.
+     * @throws IllegalStateException if the validator has an {@link EventBasedCounterGuard}.
+     */
+    public List<ValidationResult> validate(List<PasswordValidationRequest> requests,
+                                           CounterPersistenceStrategy persistenceStrategy) {
+
+        if (validator.hasGuard(EventBasedCounterGuard.class)) {
+            throw new IllegalStateException("Counters are already advanced by the validator's EventBasedCounterGuard");
+        }
+
+        List<ValidationResult> results = validate(requests);
+        List<CounterUpdate> counterUpdates = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+
+        for (int i = 0; i < results.size(); i++) {
+            ValidationResult result = results.get(i);
+            if (result.isValid() && result.getRequest().getType() == PasswordType.EVENT_BASED) {
+                counterUpdates.add(CounterUpdate.accepted(result.getRequest(), result.getIndex()));
+                indices.add(i);
+            }
+        }
+
+        if (counterUpdates.isEmpty()) {
+            return results;
+        }
+
+        boolean[] advanced = persistenceStrategy.advanceAll(counterUpdates);
+        for (int i = 0; i < advanced.length; i++) {
+            if (!advanced[i]) {
+                int index = indices.get(i);
+                results.set(index, new ValidationResult(results.get(index).getRequest(), -1));
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Groups the indices of the given requests by secret and algorithm. Requests whose secrets are
+     * held in a {@link com.samhg.authentication.key.SecretStore} are grouped by handle, without
+     * reading their secrets.
+     */
+    private static List<int[]> group(List<PasswordValidationRequest> requests) {
+        Map<GroupKey, List<Integer>> groups = new LinkedHashMap<>();
+
+        for (int i = 0; i < requests.size(); i++) {
+            PasswordValidationRequest request = requests.get(i);
+            GroupKey key = request.getSecretHandle() != null
+                    ? new GroupKey(null, request.getSecretHandle(), request.getAlgorithm())
+                    : new GroupKey(request.getSecret(), null, request.getAlgorithm());
+
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+
+        List<int[]> indices = new ArrayList<>(groups.size());
+        for (List<Integer> group : groups.values()) {
+            indices.add(group.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        return indices;
+    }
+
+    /**
+     * Validates a range of groups, splitting the range in half while it holds more than
+     * {@link #splitThreshold} requests.
+     */
+    private final class GroupTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<PasswordValidationRequest> requests;
+
+        private final List<int[]> groups;
+
+        private final int from;
+
+        private final int to;
+
+        private final ValidationResult[] results;
+
+        GroupTask(List<PasswordValidationRequest> requests, List<int[]> groups, int from, int to,
+                  ValidationResult[] results) {
+            this.requests = requests;
+            this.groups = groups;
+            this.from = from;
+            this.to = to;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            int size = 0;
+            for (int i = from; i < to && size < splitThreshold; i++) {
+                size += groups.get(i).length;
+            }
+
+            if (to - from > 1 && size >= splitThreshold) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new GroupTask(requests, groups, from, middle, results),
+                        new GroupTask(requests, groups, middle, to, results));
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                for (int index : groups.get(i)) {
+                    PasswordValidationRequest request = requests.get(index);
+                    results[index] = new ValidationResult(request, validator.search(request));
+                }
+            }
+        }
+    }
+
+    /**
+     * A secret, compared by content, or secret handle, compared by identity, and algorithm.
+     */
+    private static final class GroupKey {
+
+        private final byte[] secret;
+
+        private final SecretHandle secretHandle;
+
+        private final HmacAlgorithm algorithm;
+
+        GroupKey(byte[] secret, SecretHandle secretHandle, HmacAlgorithm algorithm) {
+            this.secret = secret;
+            this.secretHandle = secretHandle;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof GroupKey)) {
+                return false;
+            }
+            GroupKey other = (GroupKey) o;
+            return algorithm == other.algorithm && secretHandle == other.secretHandle
+                    && Arrays.equals(secret, other.secret);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * Arrays.hashCode(secret) + System.identityHashCode(secretHandle)) + algorithm.hashCode();
+        }
+    }
+
+}
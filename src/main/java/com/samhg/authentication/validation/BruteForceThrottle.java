@@ -0,0 +1,216 @@
+package com.samhg.authentication.validation;
+
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Locks out identifiers with exponential backoff after repeated failed validations, rejecting their
+ * requests before any password is generated.
+ *
+ * Once an identifier has failed {@link #threshold} consecutive times, each further failure locks it
+ * out for twice as long as the last, starting at {@link #baseLockoutMillis} and capped at
+ * {@link #maxLockoutMillis}. Attempts made while locked out are not counted. A successful validation,
+ * or going {@link #maxLockoutMillis} without failing, clears the identifier's failures.
+ *
+ * State is held in a fixed-size {@link AtomicLongArray}, one packed entry per slot, and updated
+ * with compare-and-set, so memory is fixed at construction and no locks are taken. Each entry packs
+ * a 16-bit fingerprint of the identifier, an 8-bit failure count and the 40-bit time of the last
+ * failure. Identifiers are hashed with a per-instance random seed, so colliding identifiers cannot
+ * be chosen in advance; an entry belonging to another identifier is only replaced once it is no
+ * longer locked out.
+ *
+ * This class must be given to a {@link PasswordValidator} as a {@link ValidationGuard}, to reject
+ * locked out identifiers, and passed as a {@link ValidationObserver}, to count failures. Failures are
+ * counted from the index observers are given, so a correct password rejected by another guard, e.g.
+ * a replayed time-based password, counts as a failure; a client resubmitting an accepted password is
+ * locked out like one guessing.
+ */
+public final class BruteForceThrottle implements ValidationGuard, ValidationObserver {
+
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    public static final int DEFAULT_THRESHOLD = 5;
+
+    public static final long DEFAULT_BASE_LOCKOUT_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    public static final long DEFAULT_MAX_LOCKOUT_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private static final int TIME_BITS = 40;
+
+    private static final int FAILURE_BITS = 8;
+
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+
+    private static final int MAX_FAILURES = (1 << FAILURE_BITS) - 1;
+
+    /**
+     * Bounds the exponent of the backoff so that the lockout cannot overflow.
+     */
+    private static final int MAX_DOUBLINGS = 30;
+
+    private final AtomicLongArray entries;
+
+    private final int mask;
+
+    private final long seed = new SecureRandom().nextLong();
+
+    private final int threshold;
+
+    private final long baseLockoutMillis;
+
+    private final long maxLockoutMillis;
+
+    private final Clock clock;
+
+    /**
+     * The time entries' failure times are relative to, so that they fit in {@link #TIME_BITS} bits.
+     */
+    private final long epochMillis;
+
+    /**
+     * Constructs a new throttle.
+     *
+     * @param capacity the number of entries, rounded up to a power of two.
+     * @param threshold the number of consecutive failures before an identifier is locked out.
+     * @param baseLockoutMillis the duration of the first lockout.
+     * @param maxLockoutMillis the maximum duration of a lockout.
+     * @param clock the source of the current time.
+     */
+    public BruteForceThrottle(int capacity, int threshold, long baseLockoutMillis, long maxLockoutMillis,
+                              Clock clock) {
+
+        if (threshold < 1 || threshold > MAX_FAILURES) {
+            throw new IllegalArgumentException("Threshold must be between 1 and " + MAX_FAILURES + ": " + threshold);
+        }
+        int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+
+        this.entries = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.threshold = threshold;
+        this.baseLockoutMillis = baseLockoutMillis;
+        this.maxLockoutMillis = maxLockoutMillis;
+        this.clock = clock;
+        this.epochMillis = clock.millis();
+    }
+
+    public BruteForceThrottle() {
+        this(DEFAULT_CAPACITY, DEFAULT_THRESHOLD, DEFAULT_BASE_LOCKOUT_MILLIS, DEFAULT_MAX_LOCKOUT_MILLIS,
+                Clock.systemUTC());
+    }
+
+    @Override
+    public boolean permit(PasswordValidationRequest request) {
+        return !isLockedOut(request.getIdentifier());
+    }
+
+    @Override
+    public void onValidation(PasswordValidationRequest request, int index) {
+        if (index >= 0) {
+            recordSuccess(request.getIdentifier());
+        } else {
+            recordFailure(request.getIdentifier());
+        }
+    }
+
+    /**
+     * @param identifier the identifier to check.
+     * @return true if the identifier is currently locked out.
+     */
+    public boolean isLockedOut(String identifier) {
+        long hash = hash(identifier);
+        long entry = entries.get(slot(hash));
+
+        return fingerprint(entry) == fingerprint(hash) && isLockedOut(entry, now());
+    }
+
+    private void recordFailure(String identifier) {
+        long hash = hash(identifier);
+        int slot = slot(hash);
+        long now = now();
+
+        while (true) {
+            long entry = entries.get(slot);
+            int failures;
+
+            if (fingerprint(entry) == fingerprint(hash)) {
+                if (isLockedOut(entry, now)) {
+                    return;
+                }
+                failures = now - time(entry) > maxLockoutMillis ? 1 : Math.min(failures(entry) + 1, MAX_FAILURES);
+            } else {
+                if (entry != 0 && isLockedOut(entry, now)) {
+                    return;
+                }
+                failures = 1;
+            }
+
+            if (entries.compareAndSet(slot, entry, pack(fingerprint(hash), failures, now))) {
+                return;
+            }
+        }
+    }
+
+    private void recordSuccess(String identifier) {
+        long hash = hash(identifier);
+        int slot = slot(hash);
+        long entry = entries.get(slot);
+
+        if (entry != 0 && fingerprint(entry) == fingerprint(hash)) {
+            entries.compareAndSet(slot, entry, 0);
+        }
+    }
+
+    private boolean isLockedOut(long entry, long now) {
+        int failures = failures(entry);
+        if (failures < threshold) {
+            return false;
+        }
+
+        int doublings = Math.min(failures - threshold, MAX_DOUBLINGS);
+        long lockout = Math.min(baseLockoutMillis << doublings, maxLockoutMillis);
+
+        return now - time(entry) < lockout;
+    }
+
+    private long now() {
+        return (clock.millis() - epochMillis) & TIME_MASK;
+    }
+
+    private int slot(long hash) {
+        return (int) hash & mask;
+    }
+
+    private long hash(String identifier) {
+        long hash = seed;
+        for (int i = 0; i < identifier.length(); i++) {
+            hash = (hash ^ identifier.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+    private static long pack(int fingerprint, int failures, long time) {
+        return ((long) fingerprint << (TIME_BITS + FAILURE_BITS)) | ((long) failures << TIME_BITS) | time;
+    }
+
+    /**
+     * The top 16 bits of a hash or entry, which are not used to select a slot.
+     */
+    private static int fingerprint(long value) {
+        return (int) (value >>> (TIME_BITS + FAILURE_BITS));
+    }
+
+    private static int failures(long entry) {
+        return (int) (entry >>> TIME_BITS) & MAX_FAILURES;
+    }
+
+    private static long time(long entry) {
+        return entry & TIME_MASK;
+    }
+
+}
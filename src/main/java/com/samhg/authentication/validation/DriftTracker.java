@@ -0,0 +1,200 @@
+package com.samhg.authentication.validation;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks the offset at which each identifier's passwords last matched and narrows the window
+ * searched for the identifier to that offset and those around it, so that a well synchronised
+ * token costs a single password generation rather than one per offset in its window.
+ *
+ * An identifier without a tracked offset is searched across its whole window. Once it matches, its
+ * window is searched outward from the matching offset. After every {@link #shrinkAfter} consecutive
+ * matches at the same offset the radius of the search is halved, down to a minimum radius; a
+ * failed validation restores the whole window, and a match at a different offset restarts the
+ * count. Since a narrowed search can reject a password that the whole window would accept, a token
+ * that drifts beyond the radius is rejected once before its window is widened.
+ *
+ * Time-based requests have their own minimum radius, 1 by default, since a well synchronised user
+ * who types a password just after a step boundary submits the previous step's password; with a
+ * radius of 0 that password would be rejected and counted as a failure.
+ *
+ * State is held in a fixed-size {@link AtomicLongArray}, one packed entry per slot, and updated with
+ * compare-and-set. Each entry packs a 32-bit fingerprint of the identifier, the 16-bit signed offset
+ * of the last match, the 8-bit radius and an 8-bit count of consecutive matches at that offset.
+ * Colliding identifiers replace each other's entries, which only costs a wider search.
+ *
+ * This class must be given to a {@link PasswordValidator} as its {@link WindowSelector}, and passed
+ * as a {@link ValidationObserver} to record the index at which each request matched.
+ */
+public final class DriftTracker implements WindowSelector, ValidationObserver {
+
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    public static final int DEFAULT_SHRINK_AFTER = 3;
+
+    public static final int DEFAULT_MIN_RADIUS = 0;
+
+    public static final int DEFAULT_MIN_TIME_BASED_RADIUS = 1;
+
+    /**
+     * The radius of a search across the whole of any window that can be tracked.
+     */
+    private static final int MAX_RADIUS = 0xFF;
+
+    private static final int MAX_STREAK = 0xFF;
+
+    private final AtomicLongArray entries;
+
+    private final int mask;
+
+    private final long seed = new SecureRandom().nextLong();
+
+    private final int shrinkAfter;
+
+    private final int minRadius;
+
+    private final int minTimeBasedRadius;
+
+    /**
+     * Constructs a new tracker.
+     *
+     * @param capacity the number of entries, rounded up to a power of two.
+     * @param shrinkAfter the number of consecutive matches at the same offset before the radius is halved.
+     * @param minRadius the smallest radius searched around the tracked offset of event-based requests.
+     * @param minTimeBasedRadius the smallest radius searched around the tracked offset of time-based requests.
+     */
+    public DriftTracker(int capacity, int shrinkAfter, int minRadius, int minTimeBasedRadius) {
+        if (shrinkAfter < 1 || shrinkAfter > MAX_STREAK) {
+            throw new IllegalArgumentException("Shrink after must be between 1 and " + MAX_STREAK + ": " + shrinkAfter);
+        }
+        checkRadius(minRadius);
+        checkRadius(minTimeBasedRadius);
+        int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+
+        this.entries = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.shrinkAfter = shrinkAfter;
+        this.minRadius = minRadius;
+        this.minTimeBasedRadius = minTimeBasedRadius;
+    }
+
+    /**
+     * Constructs a new tracker with the same minimum radius for every type of request.
+     */
+    public DriftTracker(int capacity, int shrinkAfter, int minRadius) {
+        this(capacity, shrinkAfter, minRadius, minRadius);
+    }
+
+    public DriftTracker() {
+        this(DEFAULT_CAPACITY, DEFAULT_SHRINK_AFTER, DEFAULT_MIN_RADIUS, DEFAULT_MIN_TIME_BASED_RADIUS);
+    }
+
+    @Override
+    public Window select(PasswordValidationRequest request, Window window) {
+        long hash = hash(request.getIdentifier());
+        long entry = entries.get(slot(hash));
+
+        if (entry == 0 || fingerprint(entry) != fingerprint(hash)) {
+            return window;
+        }
+
+        int centre = window.indexOf(offset(entry));
+        if (centre < 0) {
+            return window;
+        }
+
+        return window.around(centre, radius(entry));
+    }
+
+    @Override
+    public void onValidation(PasswordValidationRequest request, int index) {
+        long hash = hash(request.getIdentifier());
+        int slot = slot(hash);
+        long offset = index >= 0 ? request.getWindow().getOffset(index) : 0;
+
+        if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+            return;
+        }
+
+        while (true) {
+            long entry = entries.get(slot);
+            boolean tracked = entry != 0 && fingerprint(entry) == fingerprint(hash);
+            long update;
+
+            if (index < 0) {
+                if (!tracked || radius(entry) == MAX_RADIUS) {
+                    return;
+                }
+                update = pack(fingerprint(hash), offset(entry), MAX_RADIUS, 0);
+
+            } else {
+                Window window = request.getWindow();
+                int reach = Math.min(MAX_RADIUS, Math.max(index, window.size() - 1 - index));
+                boolean drifted = !tracked || offset(entry) != offset;
+
+                int radius = drifted ? reach : Math.min(reach, radius(entry));
+                int streak = drifted ? 1 : streak(entry) + 1;
+
+                if (streak >= shrinkAfter) {
+                    int min = request.getType() == PasswordType.TIME_BASED ? minTimeBasedRadius : minRadius;
+                    radius = Math.max(min, radius >>> 1);
+                    streak = 0;
+                }
+                update = pack(fingerprint(hash), offset, radius, streak);
+            }
+
+            if (update == entry || entries.compareAndSet(slot, entry, update)) {
+                return;
+            }
+        }
+    }
+
+    private static void checkRadius(int minRadius) {
+        if (minRadius < 0 || minRadius > MAX_RADIUS) {
+            throw new IllegalArgumentException("Minimum radius must be between 0 and " + MAX_RADIUS + ": " + minRadius);
+        }
+    }
+
+    private int slot(long hash) {
+        return (int) hash & mask;
+    }
+
+    private long hash(String identifier) {
+        long hash = seed;
+        for (int i = 0; i < identifier.length(); i++) {
+            hash = (hash ^ identifier.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+    private static long pack(int fingerprint, long offset, int radius, int streak) {
+        return (long) fingerprint << 32 | (offset & 0xFFFF) << 16 | (long) radius << 8 | streak;
+    }
+
+    /**
+     * The top 32 bits of a hash or entry, which are not used to select a slot; never 0, so that an
+     * entry is never 0.
+     */
+    private static int fingerprint(long value) {
+        int fingerprint = (int) (value >>> 32);
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    private static long offset(long entry) {
+        return (short) (entry >>> 16);
+    }
+
+    private static int radius(long entry) {
+        return (int) (entry >>> 8) & MAX_RADIUS;
+    }
+
+    private static int streak(long entry) {
+        return (int) entry & MAX_STREAK;
+    }
+
+}
@@ -3,6 +3,9 @@ package com.samhg.authentication.validation;
 import com.samhg.authentication.validation.event.EventBasedWindowStrategy;
 import com.samhg.authentication.validation.time.TimeBasedWindowStrategy;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public enum PasswordType {
 
     TIME_BASED(3, new TimeBasedWindowStrategy()),
@@ -13,9 +16,17 @@ public enum PasswordType {
 
     private final int windowSize;
 
+    private final Window window;
+
+    /**
+     * Windows of sizes other than {@link #windowSize}, created on demand.
+     */
+    private final Map<Integer, Window> windows = new ConcurrentHashMap<>();
+
     PasswordType(int windowSize, WindowStrategy windowStrategy) {
         this.windowSize = windowSize;
         this.windowStrategy = windowStrategy;
+        this.window = Window.of(windowStrategy, windowSize);
     }
 
     public int getWindowSize() {
@@ -26,4 +37,25 @@ public enum PasswordType {
         return windowStrategy;
     }
 
+    /**
+     * @return the {@link Window} created by {@link #getWindowStrategy()} for {@link #getWindowSize()}.
+     */
+    public Window getWindow() {
+        return window;
+    }
+
+    /**
+     * @param windowSize the number of offsets in the window.
+     * @return the {@link Window} created by {@link #getWindowStrategy()} for the given size.
+     */
+    public Window getWindow(int windowSize) {
+        if (windowSize == this.windowSize) {
+            return window;
+        }
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be at least 1: " + windowSize);
+        }
+        return windows.computeIfAbsent(windowSize, size -> Window.of(windowStrategy, size));
+    }
+
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package com.samhg.authentication.validation;
 
 import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.key.SecretHandle;
+import com.samhg.authentication.validation.time.TimeStepProvider;
 
 public final class PasswordValidationRequest {
 
@@ -10,6 +12,12 @@ public final class PasswordValidationRequest {
 
     private final byte[] secret;
 
+    /**
+     * The handle of a secret held in a {@link com.samhg.authentication.key.SecretStore}, used in place
+     * of {@link #secret} when it is not null.
+     */
+    private final SecretHandle secretHandle;
+
     private final int digits;
 
     private final HmacAlgorithm algorithm;
@@ -18,15 +26,52 @@ public final class PasswordValidationRequest {
 
     private final PasswordType type;
 
-    public PasswordValidationRequest(String identifier, String password, byte[] secret, int digits, HmacAlgorithm algorithm,
-                                     long movingFactor, PasswordType type) {
+    private final int windowSize;
+
+    private PasswordValidationRequest(String identifier, String password, byte[] secret, SecretHandle secretHandle,
+                                      int digits, HmacAlgorithm algorithm, long movingFactor, PasswordType type,
+                                      int windowSize) {
         this.identifier = identifier;
         this.password = password;
         this.secret = secret;
+        this.secretHandle = secretHandle;
         this.digits = digits;
         this.algorithm = algorithm;
         this.movingFactor = movingFactor;
         this.type = type;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Constructs a request whose window has the given size, rather than the default size of its type.
+     */
+    public PasswordValidationRequest(String identifier, String password, byte[] secret, int digits, HmacAlgorithm algorithm,
+                                     long movingFactor, PasswordType type, int windowSize) {
+        this(identifier, password, secret, null, digits, algorithm, movingFactor, type, windowSize);
+    }
+
+    /**
+     * Constructs a request whose secret is held in a {@link com.samhg.authentication.key.SecretStore},
+     * so that the request itself holds no copy of the secret. The generator may still cache copies,
+     * see {@link com.samhg.authentication.key.SecretStore}.
+     */
+    public PasswordValidationRequest(String identifier, String password, SecretHandle secretHandle, int digits,
+                                     HmacAlgorithm algorithm, long movingFactor, PasswordType type) {
+        this(identifier, password, null, secretHandle, digits, algorithm, movingFactor, type, type.getWindowSize());
+    }
+
+    public PasswordValidationRequest(String identifier, String password, byte[] secret, int digits, HmacAlgorithm algorithm,
+                                     long movingFactor, PasswordType type) {
+        this(identifier, password, secret, digits, algorithm, movingFactor, type, type.getWindowSize());
+    }
+
+    /**
+     * Constructs a {@link PasswordType#TIME_BASED} request whose moving factor is the current step
+     * of the given {@link TimeStepProvider}.
+     */
+    public PasswordValidationRequest(String identifier, String password, byte[] secret, int digits, HmacAlgorithm algorithm,
+                                     TimeStepProvider timeSteps) {
+        this(identifier, password, secret, digits, algorithm, timeSteps.currentStep(), PasswordType.TIME_BASED);
     }
 
     public String getIdentifier() {
@@ -37,8 +82,19 @@ public final class PasswordValidationRequest {
         return password;
     }
 
+    /**
+     * @return the secret, or a new heap copy of it if it is held by a {@link #getSecretHandle()},
+     *         which the caller is responsible for clearing.
+     */
     public byte[] getSecret() {
-        return secret;
+        return secretHandle != null ? secretHandle.copy() : secret;
+    }
+
+    /**
+     * @return the handle of the secret, or null if the secret was given directly.
+     */
+    public SecretHandle getSecretHandle() {
+        return secretHandle;
     }
 
     public int getDigits() {
@@ -57,4 +113,15 @@ public final class PasswordValidationRequest {
         return type;
     }
 
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * @return the {@link Window} of this request's type and size; observers' indices refer to this window.
+     */
+    public Window getWindow() {
+        return type.getWindow(windowSize);
+    }
+
 }
\ No newline at end of file
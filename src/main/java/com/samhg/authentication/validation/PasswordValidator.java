@@ -1,27 +1,93 @@
 package com.samhg.authentication.validation;
 
-import com.google.common.primitives.Longs;
 import com.samhg.authentication.generation.PasswordFactory;
+import com.samhg.authentication.generation.PasswordGenerator;
+import com.samhg.authentication.key.SecretHandle;
+import com.samhg.authentication.metrics.Metrics;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.LongStream;
 
 /**
- * Validates One Time Passwords using the {@link PasswordFactory} class to create passwords.
+ * Validates One Time Passwords using a {@link PasswordGenerator}, usually a {@link PasswordFactory},
+ * to create passwords.
  */
 public final class PasswordValidator {
 
-    private final PasswordFactory factory;
+    private final PasswordGenerator generator;
+
+    private final ValidationMode mode;
+
+    private final ValidationGuard[] guards;
+
+    private final WindowSelector selector;
+
+    private final Metrics metrics;
+
+    /**
+     * Constructs a {@link PasswordValidator} instance with the given password generator, validation mode,
+     * guards, window selector and metrics.
+     *
+     * @param generator used to create passwords to validate against.
+     * @param mode determines whether the window search may stop at the first match.
+     * @param guards guards consulted, in order, before and after searching for each password.
+     * @param selector selects the part of each request's window that is searched.
+     * @param metrics receives the outcome and latency of each validation.
+     */
+    public PasswordValidator(PasswordGenerator generator, ValidationMode mode, List<ValidationGuard> guards,
+                             WindowSelector selector, Metrics metrics) {
+        this.generator = generator;
+        this.mode = mode;
+        this.guards = guards.toArray(new ValidationGuard[0]);
+        this.selector = selector;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Constructs a {@link PasswordValidator} instance with the given password generator, validation mode,
+     * guards and window selector.
+     *
+     * @param generator used to create passwords to validate against.
+     * @param mode determines whether the window search may stop at the first match.
+     * @param guards guards consulted, in order, before and after searching for each password.
+     * @param selector selects the part of each request's window that is searched.
+     */
+    public PasswordValidator(PasswordGenerator generator, ValidationMode mode, List<ValidationGuard> guards,
+                             WindowSelector selector) {
+        this(generator, mode, guards, selector, Metrics.NOOP);
+    }
 
     /**
-     * Constructs a {@link PasswordValidator} instance with the given password factory.
+     * Constructs a {@link PasswordValidator} instance with the given password generator, validation mode
+     * and guards, searching the whole of each request's window.
      *
-     * @param factory used to create passwords to validate against.
+     * @param generator used to create passwords to validate against.
+     * @param mode determines whether the window search may stop at the first match.
+     * @param guards guards consulted, in order, before and after searching for each password.
      */
-    public PasswordValidator(PasswordFactory factory) {
-        this.factory = factory;
+    public PasswordValidator(PasswordGenerator generator, ValidationMode mode, List<ValidationGuard> guards) {
+        this(generator, mode, guards, WindowSelector.FULL);
+    }
+
+    /**
+     * Constructs a {@link PasswordValidator} instance with the given password generator and validation mode.
+     *
+     * @param generator used to create passwords to validate against.
+     * @param mode determines whether the window search may stop at the first match.
+     */
+    public PasswordValidator(PasswordGenerator generator, ValidationMode mode) {
+        this(generator, mode, Collections.emptyList());
+    }
+
+    /**
+     * Constructs a {@link PasswordValidator} instance with the given password generator, using
+     * {@link ValidationMode#EARLY_EXIT}.
+     *
+     * @param generator used to create passwords to validate against.
+     */
+    public PasswordValidator(PasswordGenerator generator) {
+        this(generator, ValidationMode.EARLY_EXIT);
     }
 
     /**
@@ -36,32 +102,132 @@ public final class PasswordValidator {
      * @param observers observers that should be invoked upon validating a request
      */
     public void validate(PasswordValidationRequest request, Collection<ValidationObserver> observers) {
-        PasswordType passwordType = request.getType();
+        int index = search(request);
 
-        WindowStrategy windowStrategy = passwordType.getWindowStrategy();
-        LongStream window = windowStrategy.window(passwordType.getWindowSize());
+        for (ValidationObserver observer : observers) {
+            observer.onValidation(request, index);
+        }
+    }
 
-        List<String> passwords = generatePasswords(request, window);
-        int index = passwords.indexOf(request.getPassword());
+    /**
+     * Searches the window of the given request for its password, consulting each {@link ValidationGuard}.
+     *
+     * @param request the request to validate the password for.
+     * @return the window index at which the password matched, or -1 if it did not or a guard rejected it.
+     */
+    int search(PasswordValidationRequest request) {
+        if (metrics == Metrics.NOOP) {
+            return find(request);
+        }
+
+        long start = System.nanoTime();
+        int index = find(request);
+        metrics.onValidation(request, index, System.nanoTime() - start);
+
+        return index;
+    }
+
+    /**
+     * @param type the type of guard.
+     * @return true if any of this validator's guards is of the given type.
+     */
+    boolean hasGuard(Class<? extends ValidationGuard> type) {
+        for (ValidationGuard guard : guards) {
+            if (type.isInstance(guard)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int find(PasswordValidationRequest request) {
+        for (ValidationGuard guard : guards) {
+            if (!guard.permit(request)) {
+                return -1;
+            }
+        }
+
+        Window window = selector.select(request, request.getWindow());
+        int password = PasswordFactory.parsePassword(request.getPassword(), request.getDigits());
+
+        SecretHandle secretHandle = request.getSecretHandle();
+        byte[] secret = secretHandle != null ? secretHandle.borrow() : request.getSecret();
+        int index;
+
+        try {
+            index = mode == ValidationMode.CONSTANT_TIME
+                    ? constantTimeIndexOf(password, secret, request, window)
+                    : indexOf(password, secret, request, window);
+        } finally {
+            if (secretHandle != null) {
+                secretHandle.release(secret);
+            }
+        }
+
+        if (index >= 0) {
+            for (ValidationGuard guard : guards) {
+                if (!guard.accept(request, index)) {
+                    return -1;
+                }
+            }
+        }
 
-        observers.forEach(o -> o.onValidation(request, index));
+        return index;
     }
 
     /**
-     * Generates a {@link List} of {@link String} passwords for the given window, using the given
-     * {@link PasswordValidationRequest} request.
+     * Searches the window, in its search order, for the given password and stops at the first match.
      *
-     * @param request the request to generate the passwords for.
-     * @param window a stream of longs, each of which are an offset from the
-     *                request's {@link PasswordValidationRequest#getMovingFactor()}.
-     * @return a {@link List} of passwords for the given window.
+     * @param password the parsed password, or a negative value if it could not be parsed.
+     * @param secret the secret of the request.
+     * @param request the request to generate passwords for.
+     * @param window the offsets to search.
+     * @return the window index of the matching password, or -1 if there is none.
      */
-    private List<String> generatePasswords(PasswordValidationRequest request, LongStream window) {
-        return window
-                .map(offset -> offset + request.getMovingFactor())
-                .mapToObj(Longs::toByteArray)
-                .map(b -> factory.generatePassword(request.getSecret(), b, request.getAlgorithm(), request.getDigits()))
-                .collect(Collectors.toList());
+    private int indexOf(int password, byte[] secret, PasswordValidationRequest request, Window window) {
+        if (password < 0) {
+            return -1;
+        }
+
+        for (int position = 0; position < window.searchLength(); position++) {
+            int index = window.getSearchIndex(position);
+
+            if (generatePassword(secret, request, window.getOffset(index)) == password) {
+                return index;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Generates every password in the window's search order and compares each against the given
+     * password without branching on the result, selecting the first matching index.
+     *
+     * @param password the parsed password, or a negative value if it could not be parsed.
+     * @param secret the secret of the request.
+     * @param request the request to generate passwords for.
+     * @param window the offsets to search.
+     * @return the window index of the matching password, or -1 if there is none.
+     */
+    private int constantTimeIndexOf(int password, byte[] secret, PasswordValidationRequest request, Window window) {
+        int found = -1;
+
+        for (int position = 0; position < window.searchLength(); position++) {
+            int index = window.getSearchIndex(position);
+            int difference = generatePassword(secret, request, window.getOffset(index)) ^ password;
+            int matches = ((difference | -difference) >>> 31) ^ 1;
+            int take = matches & (found >>> 31);
+
+            found = (found & (take - 1)) | (index & -take);
+        }
+
+        return found;
+    }
+
+    private int generatePassword(byte[] secret, PasswordValidationRequest request, long offset) {
+        return generator.generateCode(secret, request.getMovingFactor() + offset,
+                request.getAlgorithm(), request.getDigits());
     }
 
-}
\ No newline at end of file
+}
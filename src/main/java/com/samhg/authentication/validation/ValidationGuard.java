@@ -0,0 +1,35 @@
+package com.samhg.authentication.validation;
+
+/**
+ * Allows a {@link PasswordValidator} to reject a request independently of its password: before any
+ * password is generated, and after its password has matched.
+ *
+ * Unlike a {@link ValidationObserver}, which is told the outcome of a validation, a guard takes
+ * part in deciding it; a rejected request is reported to observers with an index of -1.
+ */
+public interface ValidationGuard {
+
+    /**
+     * Called before any password is generated for the given request.
+     *
+     * @param request the request being validated.
+     * @return false to reject the request without generating any passwords.
+     */
+    default boolean permit(PasswordValidationRequest request) {
+        return true;
+    }
+
+    /**
+     * Called once the password of the given request has matched, before observers are invoked.
+     * Guards are called in order and stop at the first rejection, so a guard that records accepted
+     * requests should be placed last.
+     *
+     * @param request the request being validated.
+     * @param index the window index at which the password matched.
+     * @return false to reject the request.
+     */
+    default boolean accept(PasswordValidationRequest request, int index) {
+        return true;
+    }
+
+}
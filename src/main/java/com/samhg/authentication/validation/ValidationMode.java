@@ -0,0 +1,20 @@
+package com.samhg.authentication.validation;
+
+/**
+ * Determines how {@link PasswordValidator} searches a {@link Window} for a password.
+ */
+public enum ValidationMode {
+
+    /**
+     * Searches the window in its search order, most likely offset first, and stops at the first
+     * match. The time taken depends on where, and whether, the password matched.
+     */
+    EARLY_EXIT,
+
+    /**
+     * Generates and compares every password in the window, without branching on the comparisons,
+     * so that the time taken does not reveal where, or whether, the password matched.
+     */
+    CONSTANT_TIME
+
+}
@@ -0,0 +1,32 @@
+package com.samhg.authentication.validation;
+
+/**
+ * The outcome of validating a {@link PasswordValidationRequest}.
+ */
+public final class ValidationResult {
+
+    private final PasswordValidationRequest request;
+
+    /**
+     * The window index at which the password matched, or -1 if it did not.
+     */
+    private final int index;
+
+    public ValidationResult(PasswordValidationRequest request, int index) {
+        this.request = request;
+        this.index = index;
+    }
+
+    public PasswordValidationRequest getRequest() {
+        return request;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public boolean isValid() {
+        return index >= 0;
+    }
+
+}
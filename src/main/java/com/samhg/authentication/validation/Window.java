@@ -0,0 +1,129 @@
+package com.samhg.authentication.validation;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The offsets, from a request's moving factor, at which passwords are accepted, together with the
+ * order in which they should be searched.
+ *
+ * Offsets are indexed in the order produced by {@link WindowStrategy#window(int)}; this index is the
+ * one passed to {@link ValidationObserver#onValidation(PasswordValidationRequest, int)}. The search
+ * order of a window narrowed by {@link #around(int, int)} covers only some of its indices.
+ */
+public final class Window {
+
+    private final long[] offsets;
+
+    private final int[] searchOrder;
+
+    /**
+     * Windows created by {@link #around(int, int)}, keyed by centre and radius.
+     */
+    private final Map<Long, Window> narrowed = new ConcurrentHashMap<>();
+
+    private Window(long[] offsets, int[] searchOrder) {
+        this.offsets = offsets;
+        this.searchOrder = searchOrder;
+    }
+
+    /**
+     * Creates a {@link Window} of the given size, using the offsets and search order of the given strategy.
+     *
+     * @param strategy the strategy defining the window.
+     * @param windowSize the number of offsets in the window.
+     * @return a new {@link Window}.
+     */
+    public static Window of(WindowStrategy strategy, int windowSize) {
+        long[] offsets = strategy.window(windowSize).toArray();
+        int[] searchOrder = strategy.searchOrder(windowSize);
+
+        int[] sorted = searchOrder.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            if (sorted[i] != i || sorted.length != offsets.length) {
+                throw new IllegalArgumentException("Search order is not a permutation of the window indices");
+            }
+        }
+
+        return new Window(offsets, searchOrder);
+    }
+
+    /**
+     * @return the number of offsets in this window.
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * @param index an index in window order.
+     * @return the offset, from the moving factor, at the given index.
+     */
+    public long getOffset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * @param position a position in the search order, between 0 and {@link #size()}.
+     * @return the window index that should be searched at the given position.
+     */
+    public int getSearchIndex(int position) {
+        return searchOrder[position];
+    }
+
+    /**
+     * @return the number of indices in the search order, which is {@link #size()} unless this
+     * window has been narrowed.
+     */
+    public int searchLength() {
+        return searchOrder.length;
+    }
+
+    /**
+     * @param offset an offset from the moving factor.
+     * @return the index of the given offset, or -1 if it is not in this window.
+     */
+    public int indexOf(long offset) {
+        for (int index = 0; index < offsets.length; index++) {
+            if (offsets[index] == offset) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Narrows this window to the indices within the given radius of the given centre, searched
+     * from the centre outward, lower index first. The offsets, and so the indices, are unchanged.
+     *
+     * @param centre the index searched first.
+     * @param radius the greatest distance from the centre of a searched index.
+     * @return a window with the same offsets as this one and the narrowed search order.
+     */
+    public Window around(int centre, int radius) {
+        if (centre < 0 || centre >= offsets.length) {
+            throw new IndexOutOfBoundsException("Centre is outside the window: " + centre);
+        }
+        int reach = Math.max(0, Math.min(radius, Math.max(centre, offsets.length - 1 - centre)));
+
+        return narrowed.computeIfAbsent((long) centre << 32 | reach, k -> {
+            int[] order = new int[offsets.length];
+            int length = 0;
+
+            order[length++] = centre;
+            for (int distance = 1; distance <= reach; distance++) {
+                if (centre - distance >= 0) {
+                    order[length++] = centre - distance;
+                }
+                if (centre + distance < offsets.length) {
+                    order[length++] = centre + distance;
+                }
+            }
+
+            return new Window(offsets, Arrays.copyOf(order, length));
+        });
+    }
+
+}
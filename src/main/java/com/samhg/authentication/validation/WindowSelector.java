@@ -0,0 +1,22 @@
+package com.samhg.authentication.validation;
+
+/**
+ * Selects the {@link Window} a {@link PasswordValidator} searches for a request, allowing the search
+ * to be narrowed or reordered for each request, for example by {@link DriftTracker}.
+ */
+@FunctionalInterface
+public interface WindowSelector {
+
+    /**
+     * A selector that searches the whole of each request's window.
+     */
+    WindowSelector FULL = (request, window) -> window;
+
+    /**
+     * @param request the request to be validated.
+     * @param window the window of the request, see {@link PasswordValidationRequest#getWindow()}.
+     * @return the window to search, which must have the same offsets as the given window.
+     */
+    Window select(PasswordValidationRequest request, Window window);
+
+}
@@ -1,9 +1,20 @@
 package com.samhg.authentication.validation;
 
+import java.util.stream.IntStream;
 import java.util.stream.LongStream;
 
 public interface WindowStrategy {
 
     LongStream window(int windowSize);
 
-}
\ No newline at end of file
+    /**
+     * Orders the indices of {@link #window(int)} so that the offsets most likely to match come first.
+     *
+     * @param windowSize the number of offsets in the window.
+     * @return a permutation of the window indices, most likely first.
+     */
+    default int[] searchOrder(int windowSize) {
+        return IntStream.range(0, windowSize).toArray();
+    }
+
+}
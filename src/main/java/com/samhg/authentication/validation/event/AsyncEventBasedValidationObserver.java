@@ -0,0 +1,30 @@
+package com.samhg.authentication.validation.event;
+
+import com.samhg.authentication.persistence.counter.AsyncCounterPersistenceStrategy;
+import com.samhg.authentication.persistence.counter.CounterUpdate;
+import com.samhg.authentication.validation.AsyncValidationObserver;
+import com.samhg.authentication.validation.PasswordValidationRequest;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The non-blocking counterpart to {@link EventBasedValidationObserver}.
+ */
+public final class AsyncEventBasedValidationObserver implements AsyncValidationObserver {
+
+    private final AsyncCounterPersistenceStrategy persistenceStrategy;
+
+    public AsyncEventBasedValidationObserver(AsyncCounterPersistenceStrategy persistenceStrategy) {
+        this.persistenceStrategy = persistenceStrategy;
+    }
+
+    @Override
+    public CompletableFuture<Void> onValidationAsync(PasswordValidationRequest request, int index) {
+        if (index < 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return persistenceStrategy.advanceAsync(CounterUpdate.accepted(request, index))
+                .thenApply(advanced -> null);
+    }
+}
@@ -0,0 +1,38 @@
+package com.samhg.authentication.validation.event;
+
+import com.samhg.authentication.persistence.counter.CounterPersistenceStrategy;
+import com.samhg.authentication.persistence.counter.CounterUpdate;
+import com.samhg.authentication.validation.PasswordType;
+import com.samhg.authentication.validation.PasswordValidationRequest;
+import com.samhg.authentication.validation.ValidationGuard;
+
+/**
+ * Accepts an event-based password only if it advances the identifier's persisted counter, using
+ * {@link CounterPersistenceStrategy#advance(CounterUpdate)}, so that a password cannot be used
+ * twice even when two requests with it are validated concurrently: only one of them advances the
+ * counter and the other is rejected.
+ *
+ * The counter persisted is {@link CounterUpdate#accepted}, the one following the counter the
+ * password matched at, so the next request should be made with the persisted counter as its
+ * moving factor. This guard persists the counter itself and so replaces an
+ * {@link EventBasedValidationObserver}. It should be the last guard given to a
+ * {@link com.samhg.authentication.validation.PasswordValidator}.
+ */
+public final class EventBasedCounterGuard implements ValidationGuard {
+
+    private final CounterPersistenceStrategy persistenceStrategy;
+
+    public EventBasedCounterGuard(CounterPersistenceStrategy persistenceStrategy) {
+        this.persistenceStrategy = persistenceStrategy;
+    }
+
+    @Override
+    public boolean accept(PasswordValidationRequest request, int index) {
+        if (request.getType() != PasswordType.EVENT_BASED) {
+            return true;
+        }
+
+        return persistenceStrategy.advance(CounterUpdate.accepted(request, index));
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.samhg.authentication.validation.event;
+
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.generation.PasswordFactory;
+import com.samhg.authentication.generation.PasswordGenerator;
+
+import java.util.OptionalLong;
+
+/**
+ * Resynchronises the counter of an event-based token that has moved further ahead than the
+ * validation window, as described in section 7.4 of RFC 4226: the user enters two consecutive
+ * passwords, and a much larger look-ahead range than the window is searched for the pair.
+ *
+ * Passwords are generated in blocks with {@link PasswordGenerator#generateCodes}, so that a
+ * {@link PasswordFactory} generates each block with one keyed HMAC per thread and splits large
+ * blocks across cores. The search stops at the first block containing the pair.
+ */
+public final class EventBasedResynchronizer {
+
+    /**
+     * The default number of counters after the persisted counter that are searched.
+     */
+    public static final int DEFAULT_LOOK_AHEAD = 100_000;
+
+    /**
+     * The default number of passwords generated at a time.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 14;
+
+    private final PasswordGenerator generator;
+
+    private final int lookAhead;
+
+    private final int blockSize;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param generator used to create passwords to search.
+     * @param lookAhead the number of counters after the persisted counter that are searched.
+     * @param blockSize the number of passwords generated at a time.
+     */
+    public EventBasedResynchronizer(PasswordGenerator generator, int lookAhead, int blockSize) {
+        if (lookAhead < 1 || blockSize < 1) {
+            throw new IllegalArgumentException("Look-ahead and block size must be at least 1");
+        }
+        this.generator = generator;
+        this.lookAhead = lookAhead;
+        this.blockSize = blockSize;
+    }
+
+    public EventBasedResynchronizer(PasswordGenerator generator) {
+        this(generator, DEFAULT_LOOK_AHEAD, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Searches for two consecutive passwords, the first at a counter from {@code counter} to
+     * {@code counter + lookAhead - 1}.
+     *
+     * @param rawSecret the token's shared secret.
+     * @param counter the token's persisted counter, from which the search starts.
+     * @param first the first password entered.
+     * @param second the password entered after it.
+     * @param algorithm the hashing algorithm used to create a HMAC.
+     * @param digits the number of digits of the passwords.
+     * @return the counter following the second password, to be persisted as the token's counter,
+     *         or empty if the passwords are not consecutive passwords within the look-ahead.
+     */
+    public OptionalLong resynchronize(byte[] rawSecret, long counter, String first, String second,
+                                      HmacAlgorithm algorithm, int digits) {
+
+        int firstCode = PasswordFactory.parsePassword(first, digits);
+        int secondCode = PasswordFactory.parsePassword(second, digits);
+        if (firstCode < 0 || secondCode < 0) {
+            return OptionalLong.empty();
+        }
+
+        long end = counter + lookAhead + 1;
+        int[] codes = new int[(int) Math.min(blockSize, end - counter)];
+        int previous = -1;
+
+        for (long base = counter; base < end; base += codes.length) {
+            int length = (int) Math.min(codes.length, end - base);
+            generator.generateCodes(rawSecret, base, algorithm, digits, codes, 0, length);
+
+            for (int i = 0; i < length; i++) {
+                if (previous == firstCode && codes[i] == secondCode) {
+                    return OptionalLong.of(base + i + 1);
+                }
+                previous = codes[i];
+            }
+        }
+
+        return OptionalLong.empty();
+    }
+
+}
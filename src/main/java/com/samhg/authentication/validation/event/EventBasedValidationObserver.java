@@ -5,6 +5,13 @@ import com.samhg.authentication.persistence.counter.CounterUpdate;
 import com.samhg.authentication.validation.PasswordValidationRequest;
 import com.samhg.authentication.validation.ValidationObserver;
 
+/**
+ * Persists the counter of each accepted event-based password with
+ * {@link CounterPersistenceStrategy#advance(CounterUpdate)}, so a counter never goes backwards.
+ *
+ * An observer cannot reject a password, so two concurrent requests with the same password are
+ * both accepted; use an {@link EventBasedCounterGuard} instead to reject the second.
+ */
 public final class EventBasedValidationObserver implements ValidationObserver {
 
     private final CounterPersistenceStrategy persistenceStrategy;
@@ -16,7 +23,7 @@ public final class EventBasedValidationObserver implements ValidationObserver {
     @Override
     public void onValidation(PasswordValidationRequest request, int index) {
         if (index >= 0) {
-            persistenceStrategy.persist(new CounterUpdate(request, request.getMovingFactor()));
+            persistenceStrategy.advance(CounterUpdate.accepted(request, index));
         }
     }
 }
\ No newline at end of file
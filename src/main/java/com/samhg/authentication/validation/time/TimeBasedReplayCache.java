@@ -0,0 +1,190 @@
+package com.samhg.authentication.validation.time;
+
+import com.samhg.authentication.validation.PasswordType;
+import com.samhg.authentication.validation.PasswordValidationRequest;
+import com.samhg.authentication.validation.ValidationGuard;
+
+import java.security.SecureRandom;
+
+/**
+ * Rejects time-based passwords generated for a time step at or before the last time step accepted
+ * for the same identifier, so that a password cannot be reused within its validity window.
+ *
+ * The last accepted step of each identifier is held in fixed-size arrays split into independently
+ * locked segments, so memory is fixed at construction (16 bytes per entry) and no lock is shared by
+ * all identifiers. Identifiers are stored as 64-bit hashes, with a per-instance random seed, so
+ * identifiers that collide or share a probe sequence cannot be chosen in advance to evict another
+ * identifier's entry. An identifier is placed within a short probe sequence of its home slot; when
+ * every slot in the sequence is taken, the entry with the oldest step is evicted. Since old steps fall outside every validation window, eviction only
+ * weakens protection when the cache is too small for the number of identifiers active per step.
+ *
+ * As a {@link ValidationGuard}, the check and the recording of an accepted step are a single atomic
+ * operation, so concurrent requests with the same password cannot both be accepted. It should be
+ * the last guard given to a {@link com.samhg.authentication.validation.PasswordValidator}.
+ */
+public final class TimeBasedReplayCache implements ValidationGuard {
+
+    /**
+     * The default number of entries held by the cache.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    /**
+     * The number of consecutive slots an identifier may occupy, starting at its home slot.
+     */
+    private static final int PROBE_LENGTH = 8;
+
+    /**
+     * Marks an unused slot; identifiers that hash to this value are remapped.
+     */
+    private static final long EMPTY = 0;
+
+    private final Segment[] segments;
+
+    private final int segmentShift;
+
+    private final long seed = new SecureRandom().nextLong();
+
+    /**
+     * Constructs a new cache.
+     *
+     * @param capacity the number of entries, rounded up to a power of two.
+     * @param concurrency the number of independently locked segments, rounded up to a power of two.
+     */
+    public TimeBasedReplayCache(int capacity, int concurrency) {
+        int segmentCount = ceilingPowerOfTwo(concurrency);
+        int segmentCapacity = Math.max(PROBE_LENGTH, ceilingPowerOfTwo(capacity) / segmentCount);
+
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+        segmentShift = Long.SIZE - Integer.numberOfTrailingZeros(segmentCount);
+    }
+
+    public TimeBasedReplayCache() {
+        this(DEFAULT_CAPACITY, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    @Override
+    public boolean accept(PasswordValidationRequest request, int index) {
+        if (request.getType() != PasswordType.TIME_BASED) {
+            return true;
+        }
+
+        long step = request.getMovingFactor() + request.getWindow().getOffset(index);
+
+        return tryAccept(request.getIdentifier(), step);
+    }
+
+    /**
+     * Records the given step as accepted for the given identifier, if it is after the last step
+     * accepted for the identifier.
+     *
+     * @param identifier the identifier the step was accepted for.
+     * @param step the time step of the accepted password.
+     * @return true if the step was recorded, false if it is a replay.
+     */
+    public boolean tryAccept(String identifier, long step) {
+        long hash = hash(identifier);
+
+        return segmentFor(hash).tryAccept(hash, step);
+    }
+
+    /**
+     * Gets the last step accepted for the given identifier.
+     *
+     * @param identifier the identifier to look up.
+     * @return the last accepted step, or {@link Long#MIN_VALUE} if none is held.
+     */
+    public long lastAcceptedStep(String identifier) {
+        long hash = hash(identifier);
+
+        return segmentFor(hash).lastAcceptedStep(hash);
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments.length == 1 ? segments[0] : segments[(int) (hash >>> segmentShift)];
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the identifier's characters, starting from {@link #seed} and
+     * finalised to spread its bits.
+     */
+    private long hash(String identifier) {
+        long hash = seed;
+        for (int i = 0; i < identifier.length(); i++) {
+            hash = (hash ^ identifier.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    private static final class Segment {
+
+        private final long[] hashes;
+
+        private final long[] steps;
+
+        private final int mask;
+
+        Segment(int capacity) {
+            hashes = new long[capacity];
+            steps = new long[capacity];
+            mask = capacity - 1;
+        }
+
+        synchronized boolean tryAccept(long hash, long step) {
+            int home = (int) hash & mask;
+            int victim = home;
+
+            for (int probe = 0; probe < PROBE_LENGTH; probe++) {
+                int slot = (home + probe) & mask;
+
+                if (hashes[slot] == hash) {
+                    if (step <= steps[slot]) {
+                        return false;
+                    }
+                    steps[slot] = step;
+                    return true;
+                }
+                if (hashes[slot] == EMPTY) {
+                    victim = slot;
+                    break;
+                }
+                if (steps[slot] < steps[victim]) {
+                    victim = slot;
+                }
+            }
+
+            hashes[victim] = hash;
+            steps[victim] = step;
+            return true;
+        }
+
+        synchronized long lastAcceptedStep(long hash) {
+            int home = (int) hash & mask;
+
+            for (int probe = 0; probe < PROBE_LENGTH; probe++) {
+                int slot = (home + probe) & mask;
+
+                if (hashes[slot] == hash) {
+                    return steps[slot];
+                }
+                if (hashes[slot] == EMPTY) {
+                    break;
+                }
+            }
+
+            return Long.MIN_VALUE;
+        }
+    }
+
+}
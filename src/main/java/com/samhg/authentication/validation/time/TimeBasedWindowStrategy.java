@@ -11,4 +11,27 @@ public final class TimeBasedWindowStrategy implements WindowStrategy {
         return LongStream.rangeClosed(-(windowSize - 1) / 2, windowSize / 2);
     }
 
-}
\ No newline at end of file
+    /**
+     * Orders the window outward from the current time step, alternating between the previous and
+     * next steps, since a password is most likely to have been generated for the current step.
+     */
+    @Override
+    public int[] searchOrder(int windowSize) {
+        int current = (windowSize - 1) / 2;
+        int[] order = new int[windowSize];
+        int position = 0;
+
+        order[position++] = current;
+        for (int distance = 1; position < windowSize; distance++) {
+            if (current - distance >= 0) {
+                order[position++] = current - distance;
+            }
+            if (current + distance < windowSize) {
+                order[position++] = current + distance;
+            }
+        }
+
+        return order;
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.samhg.authentication.validation.time;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides the current time step, the moving factor of time-based passwords, as defined in RFC 6238:
+ * the number of whole step durations between T0 and the current time.
+ *
+ * The current step is cached, so reading it does not consult the clock. Once {@link #start()}ed, a
+ * daemon thread {@link #tick()}s at each step boundary to advance it; alternatively {@link #tick()}
+ * can be called directly, e.g. with a fixed or manually advanced {@link Clock} for deterministic tests.
+ */
+public final class TimeStepProvider implements Closeable {
+
+    /**
+     * The step duration recommended by RFC 6238.
+     */
+    public static final Duration DEFAULT_STEP = Duration.ofSeconds(30);
+
+    private final Clock clock;
+
+    private final long stepMillis;
+
+    private final long t0Millis;
+
+    private volatile long currentStep;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructs a provider for the given clock, step duration and T0, reading the current step
+     * from the clock. The step only advances when {@link #tick()} is called or once {@link #start()}ed.
+     *
+     * @param clock the source of the current time.
+     * @param step the duration of each time step.
+     * @param t0 the time from which steps are counted.
+     */
+    public TimeStepProvider(Clock clock, Duration step, Instant t0) {
+        if (step.toMillis() <= 0) {
+            throw new IllegalArgumentException("Step must be at least 1ms: " + step);
+        }
+        this.clock = clock;
+        this.stepMillis = step.toMillis();
+        this.t0Millis = t0.toEpochMilli();
+
+        tick();
+    }
+
+    /**
+     * Constructs a provider using the system clock, {@link #DEFAULT_STEP} and the Unix epoch as T0.
+     * Call {@link #start()} to advance it automatically.
+     */
+    public TimeStepProvider() {
+        this(Clock.systemUTC(), DEFAULT_STEP, Instant.EPOCH);
+    }
+
+    /**
+     * @return the cached current time step.
+     */
+    public long currentStep() {
+        return currentStep;
+    }
+
+    /**
+     * Computes the time step containing the given time.
+     *
+     * @param epochMillis a time, in milliseconds since the Unix epoch.
+     * @return the time step containing that time.
+     */
+    public long stepAt(long epochMillis) {
+        return Math.floorDiv(epochMillis - t0Millis, stepMillis);
+    }
+
+    /**
+     * Updates the cached step from the clock.
+     *
+     * @return the current time step.
+     */
+    public long tick() {
+        long step = stepAt(clock.millis());
+        currentStep = step;
+
+        return step;
+    }
+
+    /**
+     * Starts a daemon thread which calls {@link #tick()} at each step boundary.
+     *
+     * @return this provider.
+     */
+    public synchronized TimeStepProvider start() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "time-step-tick");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduleTick();
+        }
+        return this;
+    }
+
+    /**
+     * Stops the thread started by {@link #start()}, if any.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Ticks, then schedules the next tick for the following step boundary. The delay is recomputed
+     * from the clock each time, so ticks do not drift.
+     */
+    private synchronized void scheduleTick() {
+        if (scheduler == null) {
+            return;
+        }
+
+        long step = tick();
+        long nextBoundary = t0Millis + (step + 1) * stepMillis;
+        long delay = Math.max(0, nextBoundary - clock.millis());
+
+        scheduler.schedule(this::scheduleTick, delay, TimeUnit.MILLISECONDS);
+    }
+
+}
@@ -0,0 +1,180 @@
+package com.samhg.authentication.server;
+
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.generation.PasswordFactory;
+import com.samhg.authentication.key.RandomSecretProvider;
+import com.samhg.authentication.key.SecretStore;
+import com.samhg.authentication.key.SharedSecret;
+import com.samhg.authentication.persistence.counter.InMemoryCounterPersistence;
+import com.samhg.authentication.validation.PasswordType;
+import com.samhg.authentication.validation.ValidationObserver;
+import com.samhg.authentication.validation.time.TimeStepProvider;
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class OtpServerTest {
+
+    private static final byte[] SECRET_KEY = { 20, -37, 28, 73, -53, 23, -2, -59, 70, 89 };
+
+    private static final InetSocketAddress LOOPBACK = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+    @Test
+    public void testValidate() {
+        try (TimeStepProvider timeSteps = new TimeStepProvider();
+             OtpServer server = startServer(new SecretStore(2), timeSteps);
+             OtpClient client = new OtpClient(server.getLocalAddress())) {
+
+            SharedSecret secret = client.createSecret("sammy");
+            assertTrue(secret.getSecret().length > 0);
+            assertFalse(secret.getEncodedSecret().isEmpty());
+            assertThrows(IllegalStateException.class, () -> client.createSecret("sammy"));
+
+            PasswordFactory factory = new PasswordFactory();
+            String first = String.format("%06d", factory.generateCode(secret.getSecret(), 0, HmacAlgorithm.SHA1, 6));
+            String second = String.format("%06d", factory.generateCode(secret.getSecret(), 1, HmacAlgorithm.SHA1, 6));
+
+            assertEquals(0, client.validate("sammy", first, 6, HmacAlgorithm.SHA1, PasswordType.EVENT_BASED));
+            assertEquals(-1, client.validate("sammy", first, 6, HmacAlgorithm.SHA1, PasswordType.EVENT_BASED));
+            assertEquals(0, client.validate("sammy", second, 6, HmacAlgorithm.SHA1, PasswordType.EVENT_BASED));
+            assertEquals(-1, client.validate("other", first, 6, HmacAlgorithm.SHA1, PasswordType.EVENT_BASED));
+        }
+    }
+
+    @Test
+    public void testValidate_Error() {
+        SecretStore secrets = new SecretStore(1);
+        secrets.put("sammy", SECRET_KEY);
+
+        try (TimeStepProvider timeSteps = new TimeStepProvider();
+             OtpServer server = startServer(secrets, timeSteps);
+             OtpClient client = new OtpClient(server.getLocalAddress())) {
+
+            client.sendValidate("sammy", "257225", 12, HmacAlgorithm.SHA1, PasswordType.EVENT_BASED);
+            client.sendValidate("sammy", "257225", 6, HmacAlgorithm.SHA1, PasswordType.EVENT_BASED);
+            client.flush();
+
+            IllegalStateException e = assertThrows(IllegalStateException.class, client::receiveValidation);
+            assertTrue(e.getMessage().endsWith("Invalid request"));
+            assertEquals(0, client.receiveValidation());
+        }
+    }
+
+    @Test
+    public void testRun_Pipelined() {
+        try (TimeStepProvider timeSteps = new TimeStepProvider();
+             OtpServer server = startServer(new SecretStore(4), timeSteps)) {
+            LoadGenerator.Result result = new LoadGenerator(server.getLocalAddress(), 4, 64).run(5000);
+
+            assertEquals(20000, result.getRequests());
+            assertEquals(20000, result.getValid());
+            assertEquals(20000, result.getLatency().count());
+        }
+    }
+
+    @Test
+    public void testValidate_ObserverFailure() {
+        ValidationObserver failing = (request, index) -> {
+            if (request.getPassword().equals("000000")) {
+                throw new IllegalStateException("observer failed");
+            }
+        };
+        SecretStore secrets = new SecretStore(1);
+        secrets.put("sammy", SECRET_KEY);
+
+        try (TimeStepProvider timeSteps = new TimeStepProvider();
+             OtpServer server = startServer(secrets, failing, ForkJoinPool.commonPool(), timeSteps);
+             OtpClient client = new OtpClient(server.getLocalAddress())) {
+
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> client.validate("sammy",
+                    "000000", 6, HmacAlgorithm.SHA1, PasswordType.EVENT_BASED));
+            assertFalse(e.getMessage().contains("observer failed"));
+            assertEquals(0, client.validate("sammy", "257225", 6, HmacAlgorithm.SHA1, PasswordType.EVENT_BASED));
+        }
+    }
+
+    @Test
+    public void testValidate_ObserverError() {
+        ValidationObserver failing = (request, index) -> {
+            if (request.getPassword().equals("000000")) {
+                throw new AssertionError("observer failed");
+            }
+        };
+        SecretStore secrets = new SecretStore(1);
+        secrets.put("sammy", SECRET_KEY);
+        // run tasks on their own threads, so that the propagated error does not reach the common pool
+        Executor executor = task -> new Thread(() -> {
+            try {
+                task.run();
+            } catch (AssertionError e) {
+                // expected
+            }
+        }).start();
+
+        try (TimeStepProvider timeSteps = new TimeStepProvider();
+             OtpServer server = startServer(secrets, failing, executor, timeSteps)) {
+
+            // an error is not answered, but closes the connection
+            try (OtpClient client = new OtpClient(server.getLocalAddress())) {
+                assertThrows(UncheckedIOException.class, () -> client.validate("sammy", "000000", 6,
+                        HmacAlgorithm.SHA1, PasswordType.EVENT_BASED));
+            }
+
+            try (OtpClient client = new OtpClient(server.getLocalAddress())) {
+                assertEquals(0, client.validate("sammy", "257225", 6, HmacAlgorithm.SHA1,
+                        PasswordType.EVENT_BASED));
+            }
+        }
+    }
+
+    @Test
+    public void testValidate_Rejected() {
+        AtomicBoolean reject = new AtomicBoolean(true);
+        Executor executor = task -> {
+            if (reject.getAndSet(false)) {
+                throw new RejectedExecutionException("saturated");
+            }
+            ForkJoinPool.commonPool().execute(task);
+        };
+        SecretStore secrets = new SecretStore(1);
+        secrets.put("sammy", SECRET_KEY);
+
+        try (TimeStepProvider timeSteps = new TimeStepProvider();
+             OtpServer server = startServer(secrets, (request, index) -> { }, executor, timeSteps)) {
+
+            try (OtpClient client = new OtpClient(server.getLocalAddress())) {
+                assertThrows(UncheckedIOException.class, () -> client.validate("sammy", "257225", 6,
+                        HmacAlgorithm.SHA1, PasswordType.EVENT_BASED));
+            }
+
+            // the rejected connection is closed, but the server carries on
+            try (OtpClient client = new OtpClient(server.getLocalAddress())) {
+                assertEquals(0, client.validate("sammy", "257225", 6, HmacAlgorithm.SHA1,
+                        PasswordType.EVENT_BASED));
+            }
+        }
+    }
+
+    private static OtpServer startServer(SecretStore secrets, TimeStepProvider timeSteps) {
+        return new OtpServer(LOOPBACK, secrets, new InMemoryCounterPersistence(), new RandomSecretProvider(),
+                timeSteps).start();
+    }
+
+    private static OtpServer startServer(SecretStore secrets, ValidationObserver observer, Executor executor,
+                                         TimeStepProvider timeSteps) {
+
+        return new OtpServer(LOOPBACK, secrets, new InMemoryCounterPersistence(), new PasswordFactory(),
+                Collections.singletonList(observer), new RandomSecretProvider(), timeSteps, executor,
+                OtpServer.DEFAULT_BUFFER_SIZE).start();
+    }
+
+}
@@ -0,0 +1,230 @@
+package com.samhg.authentication.server;
+
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.generation.PasswordFactory;
+import com.samhg.authentication.key.SharedSecret;
+import com.samhg.authentication.metrics.LatencyHistogram;
+import com.samhg.authentication.validation.PasswordType;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives an {@link OtpServer} with pipelined {@link OtpProtocol#VALIDATE} requests and measures
+ * its throughput and latency.
+ *
+ * Each connection runs on its own thread with a new identifier, enrolled with
+ * {@link OtpProtocol#CREATE_SECRET} before the run, and keeps up to the pipeline depth of requests
+ * outstanding: it sends a full pipeline, then each time half of it has been answered, sends as many
+ * requests again. Every request carries the correct event-based password for the identifier's next
+ * counter, so every response should be valid. Passwords are generated before the run starts, so the
+ * client does no HMAC work while measuring.
+ */
+public final class LoadGenerator {
+
+    private static final int DIGITS = 6;
+
+    private static final HmacAlgorithm ALGORITHM = HmacAlgorithm.SHA1;
+
+    private final InetSocketAddress address;
+
+    private final int connections;
+
+    private final int pipelineDepth;
+
+    /**
+     * @param address the address of the server.
+     * @param connections the number of connections, each driven by its own thread.
+     * @param pipelineDepth the largest number of requests outstanding on each connection.
+     */
+    public LoadGenerator(InetSocketAddress address, int connections, int pipelineDepth) {
+        if (connections < 1 || pipelineDepth < 1) {
+            throw new IllegalArgumentException("Connections and pipeline depth must be positive");
+        }
+        this.address = address;
+        this.connections = connections;
+        this.pipelineDepth = pipelineDepth;
+    }
+
+    /**
+     * Sends the given number of requests on every connection and waits for all their responses.
+     *
+     * @param requestsPerConnection the number of requests each connection sends.
+     * @return the result of the run.
+     */
+    public Result run(int requestsPerConnection) {
+        PasswordFactory factory = new PasswordFactory();
+        String run = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        List<Driver> drivers = new ArrayList<>(connections);
+
+        try (OtpClient client = new OtpClient(address)) {
+            for (int i = 0; i < connections; i++) {
+                String identifier = "load-" + run + "-" + i;
+                drivers.add(new Driver(factory, identifier, client.createSecret(identifier), requestsPerConnection));
+            }
+        }
+
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder valid = new LongAdder();
+        ExecutorService threads = Executors.newFixedThreadPool(connections);
+
+        try {
+            long start = System.nanoTime();
+
+            List<Future<?>> futures = new ArrayList<>(connections);
+            for (Driver driver : drivers) {
+                futures.add(threads.submit(() -> driver.drive(latency, valid)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            long nanos = System.nanoTime() - start;
+            return new Result((long) connections * requestsPerConnection, valid.sum(), nanos, latency);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted whilst waiting for the run to finish", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("A connection failed", e.getCause());
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    /**
+     * The requests of one connection.
+     */
+    private final class Driver {
+
+        private final String identifier;
+
+        private final String[] passwords;
+
+        Driver(PasswordFactory factory, String identifier, SharedSecret secret, int requests) {
+            this.identifier = identifier;
+
+            int[] codes = factory.generateCodes(secret.getSecret(), 0, ALGORITHM, DIGITS, requests);
+            passwords = new String[requests];
+            for (int i = 0; i < requests; i++) {
+                passwords[i] = String.format("%0" + DIGITS + "d", codes[i]);
+            }
+        }
+
+        void drive(LatencyHistogram latency, LongAdder valid) {
+            long[] sendTimes = new long[pipelineDepth];
+            int refill = Math.max(1, pipelineDepth / 2);
+            int sent = 0;
+            int received = 0;
+
+            try (OtpClient client = new OtpClient(address)) {
+                sent = send(client, sendTimes, sent, pipelineDepth);
+
+                while (received < passwords.length) {
+                    int index = client.receiveValidation();
+                    latency.record(System.nanoTime() - sendTimes[received % pipelineDepth]);
+                    if (index >= 0) {
+                        valid.increment();
+                    }
+                    received++;
+
+                    if (sent - received <= pipelineDepth - refill) {
+                        sent = send(client, sendTimes, sent, pipelineDepth - (sent - received));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Sends up to the given number of requests, never beyond the last password, and flushes them.
+         *
+         * @return the number of requests sent so far.
+         */
+        private int send(OtpClient client, long[] sendTimes, int sent, int count) {
+            int end = Math.min(passwords.length, sent + count);
+            if (sent == end) {
+                return sent;
+            }
+
+            long now = System.nanoTime();
+            for (; sent < end; sent++) {
+                sendTimes[sent % pipelineDepth] = now;
+                client.sendValidate(identifier, passwords[sent], DIGITS, ALGORITHM, PasswordType.EVENT_BASED);
+            }
+            client.flush();
+
+            return sent;
+        }
+    }
+
+    /**
+     * The outcome of a {@link LoadGenerator#run(int)}.
+     */
+    public static final class Result {
+
+        private final long requests;
+
+        private final long valid;
+
+        private final long nanos;
+
+        private final LatencyHistogram latency;
+
+        Result(long requests, long valid, long nanos, LatencyHistogram latency) {
+            this.requests = requests;
+            this.valid = valid;
+            this.nanos = nanos;
+            this.latency = latency;
+        }
+
+        /**
+         * @return the number of requests sent.
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * @return the number of requests whose password was valid.
+         */
+        public long getValid() {
+            return valid;
+        }
+
+        /**
+         * @return the wall-clock duration of the run, in nanoseconds.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return the number of requests answered per second.
+         */
+        public double getThroughput() {
+            return requests * 1e9 / Math.max(1, nanos);
+        }
+
+        /**
+         * @return the latency of each request, in nanoseconds, from being flushed to its response being read.
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests (%d valid) in %.1f ms: %.0f requests/s, latency mean %.0f us, p99 %d us",
+                    requests, valid, nanos / 1e6, getThroughput(), latency.mean() / 1e3,
+                    latency.percentile(99) / 1000);
+        }
+    }
+
+}
@@ -0,0 +1,225 @@
+package com.samhg.authentication.server;
+
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.key.SharedSecret;
+import com.samhg.authentication.validation.PasswordType;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A blocking client of an {@link OtpServer}, speaking the {@link OtpProtocol}.
+ *
+ * Requests can be pipelined: the {@code send} methods only buffer a request, {@link #flush()} writes
+ * every buffered request, and the {@code receive} methods read the responses, which arrive in the
+ * order the requests were sent. {@link #validate} and {@link #createSecret()} make a single round trip.
+ *
+ * Instances are not thread-safe; use one client per thread.
+ */
+public final class OtpClient implements Closeable {
+
+    /**
+     * The default size, in bytes, of the read and write buffers.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 << 10;
+
+    private final SocketChannel channel;
+
+    /**
+     * Requests waiting to be written, in write mode.
+     */
+    private final ByteBuffer out;
+
+    /**
+     * Responses read but not yet consumed, in read mode.
+     */
+    private final ByteBuffer in;
+
+    private int nextId;
+
+    private int expectedId;
+
+    /**
+     * Connects to a server.
+     *
+     * @param address the address of the server.
+     * @param bufferSize the size, in bytes, of the read and write buffers.
+     */
+    public OtpClient(InetSocketAddress address, int bufferSize) {
+        if (bufferSize < OtpProtocol.MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("Buffer size must be at least one frame: " + bufferSize);
+        }
+
+        try {
+            channel = SocketChannel.open(address);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("IO error occurred whilst connecting to " + address, e);
+        }
+
+        out = ByteBuffer.allocateDirect(bufferSize);
+        in = ByteBuffer.allocateDirect(bufferSize);
+        in.flip();
+    }
+
+    public OtpClient(InetSocketAddress address) {
+        this(address, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Validates a password in a single round trip.
+     *
+     * @return the window index the password matched at, or -1 if it is invalid.
+     */
+    public int validate(String identifier, String password, int digits, HmacAlgorithm algorithm, PasswordType type) {
+        sendValidate(identifier, password, digits, algorithm, type);
+        flush();
+
+        return receiveValidation();
+    }
+
+    /**
+     * Enrols an identifier in a single round trip.
+     *
+     * @return the identifier's new secret.
+     */
+    public SharedSecret createSecret(String identifier) {
+        sendCreateSecret(identifier);
+        flush();
+
+        return receiveSecret();
+    }
+
+    /**
+     * Buffers a {@link OtpProtocol#VALIDATE} request, writing earlier requests if the buffer is full.
+     */
+    public void sendValidate(String identifier, String password, int digits, HmacAlgorithm algorithm,
+                             PasswordType type) {
+
+        reserve();
+        OtpProtocol.putValidate(out, nextId++, identifier, password, digits, algorithm, type);
+    }
+
+    /**
+     * Buffers a {@link OtpProtocol#CREATE_SECRET} request, writing earlier requests if the buffer is full.
+     */
+    public void sendCreateSecret(String identifier) {
+        reserve();
+        OtpProtocol.putCreateSecret(out, nextId++, identifier);
+    }
+
+    /**
+     * Writes every buffered request.
+     */
+    public void flush() {
+        try {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            out.clear();
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("IO error occurred whilst writing requests", e);
+        }
+    }
+
+    /**
+     * Reads the response to the oldest unanswered request, which must be a
+     * {@link OtpProtocol#VALIDATE} request.
+     *
+     * @return the window index the password matched at, or -1 if it is invalid.
+     */
+    public int receiveValidation() {
+        return receive().getInt();
+    }
+
+    /**
+     * Reads the response to the oldest unanswered request, which must be a
+     * {@link OtpProtocol#CREATE_SECRET} request.
+     */
+    public SharedSecret receiveSecret() {
+        ByteBuffer response = receive();
+        byte[] secret = OtpProtocol.getBytes(response);
+
+        return new SharedSecret(secret, OtpProtocol.getString(response));
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the buffered requests if another frame might not fit.
+     */
+    private void reserve() {
+        if (out.remaining() < OtpProtocol.MAX_FRAME_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Reads the next response frame and checks its id and status.
+     *
+     * @return the body of the response, which is valid until the next read.
+     */
+    private ByteBuffer receive() {
+        fill(Integer.BYTES);
+        int length = in.getInt();
+        fill(length);
+
+        ByteBuffer frame = in.duplicate();
+        frame.limit(in.position() + length);
+        in.position(in.position() + length);
+
+        int id = frame.getInt();
+        byte status = frame.get();
+
+        if (id != expectedId) {
+            throw new IllegalStateException("Expected the response to request " + expectedId + " but got " + id);
+        }
+        expectedId++;
+
+        if (status != OtpProtocol.OK) {
+            throw new IllegalStateException("Request " + id + " failed: " + OtpProtocol.getString(frame));
+        }
+        return frame;
+    }
+
+    /**
+     * Reads until at least the given number of bytes are available.
+     */
+    private void fill(int bytes) {
+        if (in.remaining() >= bytes) {
+            return;
+        }
+        if (bytes > in.capacity()) {
+            throw new IllegalStateException("Response of " + bytes + " bytes exceeds the buffer");
+        }
+
+        try {
+            in.compact();
+            while (in.position() < bytes) {
+                if (channel.read(in) < 0) {
+                    throw new EOFException("Connection closed by the server");
+                }
+            }
+            in.flip();
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("IO error occurred whilst reading responses", e);
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.samhg.authentication.server;
+
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.validation.PasswordType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The binary protocol spoken by {@link OtpServer} and {@link OtpClient}.
+ *
+ * Every message is a frame: a 4-byte length of the rest of the frame, a 4-byte id chosen by the
+ * client and a 1-byte opcode (requests) or status (responses), followed by a body. Integers are
+ * big-endian and strings are a 2-byte length followed by UTF-8 bytes. A client may send any number
+ * of requests without waiting for their responses; each connection's responses are sent in the order
+ * of its requests, echoing their ids.
+ *
+ * <pre>
+ * VALIDATE       type:1 algorithm:1 digits:1 identifier:string password:string
+ *   OK           index:4, the window index the password matched at, or -1
+ * CREATE_SECRET  identifier:string
+ *   OK           secret:bytes encodedSecret:string
+ * ERROR          message:string
+ * </pre>
+ *
+ * Type and algorithm are the ordinals of {@link PasswordType} and {@link HmacAlgorithm}; bytes are a
+ * 2-byte length followed by the bytes. Clients never send a secret or a moving factor: the server
+ * holds each identifier's secret and uses its persisted counter for event-based requests, or its
+ * current time step for time-based requests. {@link #CREATE_SECRET} enrols an identifier that has no
+ * secret yet, returning the new secret once.
+ */
+public final class OtpProtocol {
+
+    /**
+     * The largest frame, including its length, either side sends or accepts.
+     */
+    public static final int MAX_FRAME_SIZE = 4096;
+
+    /**
+     * The size of the length, id and opcode or status that start every frame.
+     */
+    public static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Byte.BYTES;
+
+    public static final byte VALIDATE = 1;
+
+    public static final byte CREATE_SECRET = 2;
+
+    public static final byte OK = 0;
+
+    public static final byte ERROR = 1;
+
+    private OtpProtocol() {
+    }
+
+    /**
+     * Writes a {@link #VALIDATE} request.
+     */
+    public static void putValidate(ByteBuffer buffer, int id, String identifier, String password, int digits,
+                                   HmacAlgorithm algorithm, PasswordType type) {
+
+        int start = startFrame(buffer, id, VALIDATE);
+        buffer.put((byte) type.ordinal());
+        buffer.put((byte) algorithm.ordinal());
+        buffer.put((byte) digits);
+        putString(buffer, identifier);
+        putString(buffer, password);
+        endFrame(buffer, start);
+    }
+
+    /**
+     * Writes a {@link #CREATE_SECRET} request.
+     */
+    public static void putCreateSecret(ByteBuffer buffer, int id, String identifier) {
+        int start = startFrame(buffer, id, CREATE_SECRET);
+        putString(buffer, identifier);
+        endFrame(buffer, start);
+    }
+
+    /**
+     * Writes the {@link #OK} response to a {@link #VALIDATE} request.
+     */
+    public static void putValidation(ByteBuffer buffer, int id, int index) {
+        int start = startFrame(buffer, id, OK);
+        buffer.putInt(index);
+        endFrame(buffer, start);
+    }
+
+    /**
+     * Writes the {@link #OK} response to a {@link #CREATE_SECRET} request.
+     */
+    public static void putSecret(ByteBuffer buffer, int id, byte[] secret, String encodedSecret) {
+        int start = startFrame(buffer, id, OK);
+        putBytes(buffer, secret);
+        putString(buffer, encodedSecret);
+        endFrame(buffer, start);
+    }
+
+    /**
+     * Writes an {@link #ERROR} response, truncating the message to at most 200 characters.
+     */
+    public static void putError(ByteBuffer buffer, int id, String message) {
+        String text = String.valueOf(message);
+
+        int start = startFrame(buffer, id, ERROR);
+        putString(buffer, text.length() > 200 ? text.substring(0, 200) : text);
+        endFrame(buffer, start);
+    }
+
+    /**
+     * Reads a string written by {@link #putString(ByteBuffer, String)}.
+     */
+    public static String getString(ByteBuffer buffer) {
+        return new String(getBytes(buffer), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a byte array written by {@link #putBytes(ByteBuffer, byte[])}.
+     */
+    public static byte[] getBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+
+        return bytes;
+    }
+
+    static void putString(ByteBuffer buffer, String value) {
+        putBytes(buffer, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes.length > MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("Field of " + bytes.length + " bytes exceeds the maximum frame size");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static int startFrame(ByteBuffer buffer, int id, byte opcode) {
+        int start = buffer.position();
+        buffer.putInt(0);
+        buffer.putInt(id);
+        buffer.put(opcode);
+
+        return start;
+    }
+
+    private static void endFrame(ByteBuffer buffer, int start) {
+        int length = buffer.position() - start;
+        if (length > MAX_FRAME_SIZE) {
+            buffer.position(start);
+            throw new IllegalArgumentException("Frame of " + length + " bytes exceeds the maximum frame size");
+        }
+        buffer.putInt(start, length - Integer.BYTES);
+    }
+
+}
@@ -0,0 +1,611 @@
+package com.samhg.authentication.server;
+
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.generation.PasswordFactory;
+import com.samhg.authentication.generation.PasswordGenerator;
+import com.samhg.authentication.key.SecretHandle;
+import com.samhg.authentication.key.SecretStore;
+import com.samhg.authentication.key.SharedSecret;
+import com.samhg.authentication.key.SharedSecretProvider;
+import com.samhg.authentication.persistence.counter.CounterPersistenceStrategy;
+import com.samhg.authentication.persistence.counter.CounterUpdate;
+import com.samhg.authentication.validation.PasswordType;
+import com.samhg.authentication.validation.PasswordValidationRequest;
+import com.samhg.authentication.validation.PasswordValidator;
+import com.samhg.authentication.validation.ValidationMode;
+import com.samhg.authentication.validation.ValidationObserver;
+import com.samhg.authentication.validation.event.EventBasedCounterGuard;
+import com.samhg.authentication.validation.time.TimeStepProvider;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Validates the passwords of the identifiers in a {@link SecretStore} over TCP with the
+ * {@link OtpProtocol}, and enrols new identifiers with secrets from a {@link SharedSecretProvider}.
+ *
+ * Clients only send an identifier, a password and its parameters; the secret is read from the
+ * store and the moving factor is the identifier's persisted counter, for event-based passwords, or
+ * the current time step, for time-based passwords. Event-based passwords are accepted through an
+ * {@link EventBasedCounterGuard}, which advances the persisted counter, so each password is only
+ * accepted once. A password for an identifier without a secret is invalid.
+ *
+ * One selector thread accepts connections and moves bytes; validation runs on an executor. Clients
+ * may pipeline requests: every complete frame a connection has sent is decoded into a batch, which
+ * is validated by a single task and answered with a single buffer of responses, so a batch costs one
+ * task hand-off and, usually, one write. While a connection's batch is in flight or its responses
+ * are unwritten, the server stops reading from it, so a client cannot queue unbounded work.
+ *
+ * Since the {@link PasswordFactory} caches key state per thread, the executor should reuse a fixed
+ * set of threads, e.g. {@link ForkJoinPool#commonPool()}. A connection whose batch the executor
+ * rejects is closed.
+ *
+ * A request that fails is answered with an {@link OtpProtocol#ERROR} that does not describe the
+ * failure, so that no internal state is disclosed to clients.
+ */
+public final class OtpServer implements Closeable {
+
+    /**
+     * The default size, in bytes, of each connection's read and write buffers.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 << 10;
+
+    /**
+     * The largest number of requests processed by one task.
+     */
+    private static final int MAX_BATCH = 4096;
+
+    private final InetSocketAddress address;
+
+    private final SecretStore secrets;
+
+    private final CounterPersistenceStrategy counters;
+
+    private final PasswordValidator validator;
+
+    private final List<ValidationObserver> observers;
+
+    private final SharedSecretProvider secretProvider;
+
+    private final TimeStepProvider timeSteps;
+
+    private final Executor executor;
+
+    private final int bufferSize;
+
+    /**
+     * Connections whose batch has been processed, to be written by the selector thread.
+     */
+    private final Queue<Connection> completed = new ConcurrentLinkedQueue<>();
+
+    private Selector selector;
+
+    private ServerSocketChannel serverChannel;
+
+    private Thread selectorThread;
+
+    private volatile boolean running;
+
+    /**
+     * Constructs a new server, which listens once {@link #start()}ed.
+     *
+     * The generator is registered as an eviction listener of the store, so that its caches do not
+     * keep secrets that are replaced or removed.
+     *
+     * @param address the address to listen on; port 0 picks a free port.
+     * @param secrets holds the secret of each identifier.
+     * @param counters holds the counter of each identifier with event-based passwords.
+     * @param generator generates the passwords requests are validated against.
+     * @param observers are notified of every validation.
+     * @param secretProvider creates the secrets of {@link OtpProtocol#CREATE_SECRET} requests.
+     * @param timeSteps provides the moving factor of time-based requests.
+     * @param executor the executor requests are processed on.
+     * @param bufferSize the size, in bytes, of each connection's read and write buffers.
+     */
+    public OtpServer(InetSocketAddress address, SecretStore secrets, CounterPersistenceStrategy counters,
+                     PasswordGenerator generator, Collection<ValidationObserver> observers,
+                     SharedSecretProvider secretProvider, TimeStepProvider timeSteps, Executor executor, int bufferSize) {
+
+        if (bufferSize < 2 * OtpProtocol.MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("Buffer size must be at least two frames: " + bufferSize);
+        }
+        this.address = address;
+        this.secrets = secrets;
+        this.counters = counters;
+        this.validator = new PasswordValidator(generator, ValidationMode.EARLY_EXIT,
+                Collections.singletonList(new EventBasedCounterGuard(counters)));
+        this.observers = new ArrayList<>(observers);
+        this.secretProvider = secretProvider;
+        this.timeSteps = timeSteps;
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+
+        secrets.addEvictionListener(generator::evict);
+    }
+
+    public OtpServer(InetSocketAddress address, SecretStore secrets, CounterPersistenceStrategy counters,
+                     SharedSecretProvider secretProvider, TimeStepProvider timeSteps) {
+
+        this(address, secrets, counters, new PasswordFactory(), Collections.emptyList(), secretProvider, timeSteps,
+                ForkJoinPool.commonPool(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Binds the server's address and starts serving connections on a new thread.
+     *
+     * @return this server.
+     */
+    public synchronized OtpServer start() {
+        if (running) {
+            return this;
+        }
+
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(address);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        } catch (IOException e) {
+            closeQuietly();
+            throw new UncheckedIOException("IO error occurred whilst binding " + address, e);
+        }
+
+        running = true;
+        selectorThread = new Thread(this::serve, "otp-server-selector");
+        selectorThread.start();
+
+        return this;
+    }
+
+    /**
+     * @return the address the server is listening on.
+     */
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stops serving and closes every connection. Batches already being processed are discarded.
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeQuietly();
+    }
+
+    private void serve() {
+        while (running) {
+            try {
+                selector.select();
+
+                Connection connection;
+                while ((connection = completed.poll()) != null) {
+                    try {
+                        connection.onBatchProcessed();
+                    } catch (RuntimeException e) {
+                        connection.close();
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+
+                    connection = (Connection) key.attachment();
+                    try {
+                        if (key.isWritable()) {
+                            connection.write();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.read();
+                        }
+                    } catch (RuntimeException e) {
+                        // a failure of one connection must not stop the selector
+                        connection.close();
+                    }
+                }
+
+            } catch (IOException e) {
+                // the selector itself failed, so there is nothing left to serve
+                running = false;
+            }
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                ((Connection) key.attachment()).close();
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+
+            } catch (IOException e) {
+                channel.close();
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            if (selector != null) {
+                selector.close();
+            }
+        } catch (IOException e) {
+            // the server is shutting down
+        }
+    }
+
+    /**
+     * Decodes a request frame, positioned after its header.
+     */
+    private static Call decode(int id, byte opcode, ByteBuffer frame) {
+        if (opcode != OtpProtocol.VALIDATE && opcode != OtpProtocol.CREATE_SECRET) {
+            return new Call(id, opcode, "Unknown opcode: " + opcode);
+        }
+
+        try {
+            if (opcode == OtpProtocol.CREATE_SECRET) {
+                return new Call(id, opcode, OtpProtocol.getString(frame), null, null, null, 0);
+            }
+
+            PasswordType type = PasswordType.values()[frame.get()];
+            HmacAlgorithm algorithm = HmacAlgorithm.values()[frame.get()];
+            int digits = frame.get();
+            String identifier = OtpProtocol.getString(frame);
+            String password = OtpProtocol.getString(frame);
+
+            return new Call(id, opcode, identifier, password, type, algorithm, digits);
+
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            return new Call(id, opcode, "Malformed request");
+        }
+    }
+
+    /**
+     * Processes a batch on the executor, writing responses to the connection's write buffer while
+     * another frame is sure to fit; requests left over are kept to be processed with the next batch.
+     *
+     * A request that fails with an exception is answered with an {@link OtpProtocol#ERROR}. An error
+     * is not caught: the connection is closed and the error propagates to the executor.
+     */
+    private void process(Connection connection, List<Call> batch) {
+        ByteBuffer out = connection.out;
+        int processed = 0;
+        boolean failed = true;
+
+        try {
+            IndexRecorder recorder = new IndexRecorder();
+            List<ValidationObserver> batchObservers = new ArrayList<>(observers.size() + 1);
+            batchObservers.add(recorder);
+            batchObservers.addAll(observers);
+
+            for (; processed < batch.size() && out.remaining() >= OtpProtocol.MAX_FRAME_SIZE; processed++) {
+                Call call = batch.get(processed);
+                int start = out.position();
+
+                try {
+                    if (call.error != null) {
+                        OtpProtocol.putError(out, call.id, call.error);
+
+                    } else if (call.opcode == OtpProtocol.VALIDATE) {
+                        OtpProtocol.putValidation(out, call.id, validate(call, batchObservers, recorder));
+
+                    } else {
+                        enrol(call, out);
+                    }
+
+                } catch (IllegalArgumentException e) {
+                    out.position(start);
+                    OtpProtocol.putError(out, call.id, "Invalid request");
+                } catch (RuntimeException e) {
+                    out.position(start);
+                    OtpProtocol.putError(out, call.id, "Request failed");
+                }
+            }
+            failed = false;
+
+        } finally {
+            // hand the connection back even if the batch failed, so it is not left processing
+            connection.failed = failed;
+            connection.pending = new ArrayList<>(batch.subList(processed, batch.size()));
+            completed.add(connection);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Validates a request's password against its identifier's secret and moving factor.
+     *
+     * @return the window index the password matched at, or -1.
+     */
+    private int validate(Call call, List<ValidationObserver> batchObservers, IndexRecorder recorder) {
+        SecretHandle handle = secrets.get(call.identifier);
+        if (handle == null) {
+            return -1;
+        }
+
+        long movingFactor = call.type == PasswordType.TIME_BASED
+                ? timeSteps.currentStep()
+                : counters.load(call.identifier).orElse(0);
+
+        recorder.index = -1;
+        validator.validate(new PasswordValidationRequest(call.identifier, call.password, handle, call.digits,
+                call.algorithm, movingFactor, call.type), batchObservers);
+
+        return recorder.index;
+    }
+
+    /**
+     * Creates and stores a secret for an identifier that has none, starting its counter at 0, and
+     * writes the secret as the response.
+     */
+    private void enrol(Call call, ByteBuffer out) {
+        SharedSecret secret = secretProvider.createSecret();
+
+        if (secrets.putIfAbsent(call.identifier, secret.getSecret()) == null) {
+            OtpProtocol.putError(out, call.id, "Identifier is already enrolled");
+            return;
+        }
+        counters.persist(new CounterUpdate(call.identifier, 0));
+
+        OtpProtocol.putSecret(out, call.id, secret.getSecret(), secret.getEncodedSecret());
+    }
+
+    /**
+     * Records the index of the last validation, as the first observer of each batch.
+     */
+    private static final class IndexRecorder implements ValidationObserver {
+
+        private int index;
+
+        @Override
+        public void onValidation(PasswordValidationRequest request, int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * A decoded request, or the error to respond to it with.
+     */
+    private static final class Call {
+
+        private final int id;
+
+        private final byte opcode;
+
+        private final String identifier;
+
+        private final String password;
+
+        private final PasswordType type;
+
+        private final HmacAlgorithm algorithm;
+
+        private final int digits;
+
+        private final String error;
+
+        Call(int id, byte opcode, String identifier, String password, PasswordType type, HmacAlgorithm algorithm,
+             int digits) {
+
+            this.id = id;
+            this.opcode = opcode;
+            this.identifier = identifier;
+            this.password = password;
+            this.type = type;
+            this.algorithm = algorithm;
+            this.digits = digits;
+            this.error = null;
+        }
+
+        Call(int id, byte opcode, String error) {
+            this.id = id;
+            this.opcode = opcode;
+            this.identifier = null;
+            this.password = null;
+            this.type = null;
+            this.algorithm = null;
+            this.digits = 0;
+            this.error = error;
+        }
+    }
+
+    /**
+     * The state of one client connection. Apart from {@link #out}, {@link #pending} and
+     * {@link #failed} while a batch is in flight, which the executor owns, every field is only used
+     * by the selector thread.
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+
+        private final ByteBuffer in = ByteBuffer.allocateDirect(bufferSize);
+
+        private final ByteBuffer out = ByteBuffer.allocateDirect(bufferSize);
+
+        private SelectionKey key;
+
+        /**
+         * Whether a batch is being processed on the executor.
+         */
+        private boolean processing;
+
+        /**
+         * Requests decoded but not yet processed, which start the next batch.
+         */
+        private List<Call> pending = new ArrayList<>();
+
+        /**
+         * Whether the last batch was abandoned by an error, after which the connection is closed.
+         */
+        private boolean failed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() {
+            try {
+                if (channel.read(in) < 0) {
+                    close();
+                    return;
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            dispatch();
+        }
+
+        /**
+         * Decodes every complete frame, up to {@link #MAX_BATCH}, and hands them, after any pending
+         * requests, to the executor as one batch.
+         */
+        void dispatch() {
+            if (processing) {
+                key.interestOps(0);
+                return;
+            }
+            if (out.position() > 0) {
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+
+            List<Call> batch = pending;
+            pending = new ArrayList<>();
+
+            in.flip();
+            while (batch.size() < MAX_BATCH && in.remaining() >= Integer.BYTES) {
+                int length = in.getInt(in.position());
+                if (length < OtpProtocol.HEADER_SIZE - Integer.BYTES || length > OtpProtocol.MAX_FRAME_SIZE - Integer.BYTES) {
+                    close();
+                    return;
+                }
+                if (in.remaining() < Integer.BYTES + length) {
+                    break;
+                }
+
+                int end = in.position() + Integer.BYTES + length;
+                ByteBuffer frame = in.duplicate();
+                frame.limit(end);
+                frame.position(in.position() + Integer.BYTES);
+
+                int id = frame.getInt();
+                byte opcode = frame.get();
+                batch.add(decode(id, opcode, frame));
+
+                in.position(end);
+            }
+            in.compact();
+
+            if (batch.isEmpty()) {
+                key.interestOps(SelectionKey.OP_READ);
+                return;
+            }
+
+            processing = true;
+            key.interestOps(0);
+            try {
+                executor.execute(() -> process(this, batch));
+            } catch (RejectedExecutionException e) {
+                close();
+            }
+        }
+
+        void onBatchProcessed() {
+            processing = false;
+            if (failed) {
+                close();
+            } else if (key.isValid()) {
+                write();
+            }
+        }
+
+        /**
+         * Writes as much of {@link #out} as the socket accepts, and once it is empty, dispatches any
+         * frames read while the batch was processed.
+         */
+        void write() {
+            try {
+                out.flip();
+                channel.write(out);
+                out.compact();
+            } catch (IOException e) {
+                close();
+                return;
+            }
+
+            if (out.position() > 0) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else {
+                dispatch();
+            }
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // the connection is being discarded
+            }
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.samhg.authentication.generation;
+
+import com.samhg.authentication.metrics.Metrics;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class HmacEngineTest {
+
+    private static final byte[] SHA1_SEED = "12345678901234567890".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] SHA256_SEED = "12345678901234567890123456789012".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] SHA512_SEED =
+            "1234567890123456789012345678901234567890123456789012345678901234".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The HOTP values of RFC 4226, appendix D, for counters 0 to 9.
+     */
+    private static final int[] RFC_4226_CODES = {
+            755224, 287082, 359152, 969429, 338314, 254676, 287922, 162583, 399871, 520489
+    };
+
+    /**
+     * The times, in seconds, of RFC 6238, appendix B.
+     */
+    private static final long[] RFC_6238_TIMES = { 59, 1111111109, 1111111111, 1234567890, 2000000000, 20000000000L };
+
+    /**
+     * The TOTP values of RFC 6238, appendix B, for each time with SHA-1, SHA-256 and SHA-512.
+     */
+    private static final int[][] RFC_6238_CODES = {
+            { 94287082, 7081804, 14050471, 89005924, 69279037, 65353130 },
+            { 46119246, 68084774, 67062674, 91819424, 90698825, 77737706 },
+            { 90693936, 25091201, 99943326, 93441116, 38618901, 47863826 }
+    };
+
+    @Test
+    public void testGenerateCode_Rfc4226() {
+        for (HmacEngineProvider provider : new HmacEngineProvider[] { HmacEngineProvider.INTERNAL, HmacEngineProvider.JCA }) {
+            PasswordFactory factory = new PasswordFactory(1, Metrics.NOOP, provider);
+
+            for (int counter = 0; counter < RFC_4226_CODES.length; counter++) {
+                assertEquals(RFC_4226_CODES[counter], factory.generateCode(SHA1_SEED, counter, HmacAlgorithm.SHA1, 6));
+            }
+        }
+    }
+
+    @Test
+    public void testGenerateCode_Rfc6238() {
+        byte[][] seeds = { SHA1_SEED, SHA256_SEED, SHA512_SEED };
+
+        for (HmacEngineProvider provider : new HmacEngineProvider[] { HmacEngineProvider.INTERNAL, HmacEngineProvider.JCA }) {
+            PasswordFactory factory = new PasswordFactory(1, Metrics.NOOP, provider);
+
+            for (HmacAlgorithm algorithm : HmacAlgorithm.values()) {
+                for (int i = 0; i < RFC_6238_TIMES.length; i++) {
+                    int code = factory.generateCode(seeds[algorithm.ordinal()], RFC_6238_TIMES[i] / 30, algorithm, 8);
+                    assertEquals(RFC_6238_CODES[algorithm.ordinal()][i], code, algorithm + " at " + RFC_6238_TIMES[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCompute_MatchesJca() throws GeneralSecurityException {
+        Random random = new Random(42);
+
+        for (HmacAlgorithm algorithm : HmacAlgorithm.values()) {
+            HmacEngine internal = HmacEngineProvider.INTERNAL.create(algorithm);
+            HmacEngine jca = HmacEngineProvider.JCA.create(algorithm);
+            byte[] expected = new byte[jca.getMacLength()];
+            byte[] actual = new byte[internal.getMacLength()];
+
+            for (int keyLength = 1; keyLength <= 200; keyLength += 7) {
+                byte[] key = new byte[keyLength];
+                random.nextBytes(key);
+                internal.init(key);
+                jca.init(key);
+
+                long movingFactor = random.nextLong();
+                jca.compute(movingFactor, expected);
+                internal.compute(movingFactor, actual);
+
+                assertArrayEquals(expected, actual, algorithm + " with a " + keyLength + " byte key");
+            }
+        }
+    }
+
+}
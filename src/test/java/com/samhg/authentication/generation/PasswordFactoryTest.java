@@ -52,6 +52,60 @@ public final class PasswordFactoryTest {
         testGeneratePassword(HmacAlgorithm.SHA512, 8, 17, "77809971");
     }
 
+    @Test
+    public void testGeneratePassword_KeyCacheEviction() {
+        byte[] otherKey = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+        PasswordFactory factory = new PasswordFactory(1);
+
+        String expected = factory.generatePassword(otherKey, Longs.toByteArray(0), HmacAlgorithm.SHA1, 6);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("257225", factory.generatePassword(SECRET_KEY, Longs.toByteArray(0), HmacAlgorithm.SHA1, 6));
+            assertEquals(expected, factory.generatePassword(otherKey, Longs.toByteArray(0), HmacAlgorithm.SHA1, 6));
+        }
+    }
+
+    @Test
+    public void testGenerateCode_Evicted() throws InterruptedException {
+        byte[] otherKey = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+        PasswordFactory factory = new PasswordFactory();
+
+        int expected = factory.generateCode(otherKey, 0, HmacAlgorithm.SHA1, 6);
+        assertEquals(257225, factory.generateCode(SECRET_KEY, 0, HmacAlgorithm.SHA1, 6));
+
+        Thread evicting = new Thread(() -> {
+            factory.evict(otherKey);
+            factory.evict(SECRET_KEY);
+        });
+        evicting.start();
+        evicting.join();
+
+        assertEquals(257225, factory.generateCode(SECRET_KEY, 0, HmacAlgorithm.SHA1, 6));
+        assertEquals(expected, factory.generateCode(otherKey, 0, HmacAlgorithm.SHA1, 6));
+    }
+
+    @Test
+    public void testGenerateCode() {
+        PasswordFactory factory = new PasswordFactory();
+
+        assertEquals(64583, factory.generateCode(SECRET_KEY, 12, HmacAlgorithm.SHA512, 6));
+        assertEquals(64583, PasswordFactory.parsePassword("064583", 6));
+        assertEquals(-1, PasswordFactory.parsePassword("64583", 6));
+        assertEquals(-1, PasswordFactory.parsePassword("06458a", 6));
+    }
+
+    @Test
+    public void testGenerateCodes() {
+        PasswordFactory factory = new PasswordFactory();
+
+        int[] codes = factory.generateCodes(SECRET_KEY, 5, HmacAlgorithm.SHA256, 8, 10_000);
+
+        for (int i = 0; i < codes.length; i += 97) {
+            assertEquals(factory.generateCode(SECRET_KEY, 5 + i, HmacAlgorithm.SHA256, 8), codes[i]);
+        }
+        assertEquals(factory.generateCode(SECRET_KEY, 10_004, HmacAlgorithm.SHA256, 8), codes[9_999]);
+    }
+
     private static final byte[] SECRET_KEY = { 20, -37, 28, 73, -53, 23, -2, -59, 70, 89 };
 
     private void testGeneratePassword(HmacAlgorithm algorithm, int digits, long counter, String expectedValue) {
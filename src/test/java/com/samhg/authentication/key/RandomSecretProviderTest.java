@@ -0,0 +1,51 @@
+package com.samhg.authentication.key;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class RandomSecretProviderTest {
+
+    @Test
+    public void testCreateSecrets() {
+        RandomSecretProvider provider = new RandomSecretProvider(new SecureRandomPool(2, 64, 100, 1000));
+
+        List<SharedSecret> secrets = provider.createSecrets(100);
+        Set<String> encoded = new HashSet<>();
+
+        assertEquals(100, secrets.size());
+        for (SharedSecret secret : secrets) {
+            assertEquals(KeyConstants.KEY_SIZE, secret.getSecret().length);
+            assertEquals(KeyConstants.KEY_ENCODING_SCHEME.encode(secret.getSecret()), secret.getEncodedSecret());
+            encoded.add(secret.getEncodedSecret());
+        }
+        assertEquals(100, encoded.size());
+    }
+
+    @Test
+    public void testCreateSecret_Concurrent() throws InterruptedException {
+        RandomSecretProvider provider = new RandomSecretProvider(new SecureRandomPool(4, 64, 100, 1000));
+        Set<String> encoded = ConcurrentHashMap.newKeySet();
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    encoded.add(provider.createSecret().getEncodedSecret());
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(threads.length * 1000, encoded.size());
+    }
+
+}
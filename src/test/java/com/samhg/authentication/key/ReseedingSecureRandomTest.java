@@ -0,0 +1,47 @@
+package com.samhg.authentication.key;
+
+import com.samhg.authentication.metrics.Metrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class ReseedingSecureRandomTest {
+
+    @Test
+    public void testNextBytes_ReseedInterval() throws InterruptedException {
+        AtomicInteger reseeds = new AtomicInteger();
+        ReseedingSecureRandom random = new ReseedingSecureRandom(Long.MAX_VALUE, 1, new Metrics() {
+            @Override
+            public void onReseed() {
+                reseeds.incrementAndGet();
+            }
+        });
+
+        // each call after the interval has passed reseeds, and must still produce bytes
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(2);
+            assertFalse(Arrays.equals(new byte[32], random.getNextBytes(32)));
+        }
+        assertTrue(reseeds.get() >= 5, "reseeded " + reseeds.get() + " times");
+    }
+
+    @Test
+    public void testNextBytes_ReseedBytes() {
+        AtomicInteger reseeds = new AtomicInteger();
+        ReseedingSecureRandom random = new ReseedingSecureRandom(64, Long.MAX_VALUE, new Metrics() {
+            @Override
+            public void onReseed() {
+                reseeds.incrementAndGet();
+            }
+        });
+
+        for (int i = 0; i < 8; i++) {
+            random.getNextBytes(32);
+        }
+        assertEquals(3, reseeds.get());
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.samhg.authentication.key;
+
+import com.samhg.authentication.generation.CachingPasswordGenerator;
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.generation.PasswordFactory;
+import com.samhg.authentication.generation.PasswordGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class SecretStoreTest {
+
+    private static final byte[] SECRET_KEY = { 20, -37, 28, 73, -53, 23, -2, -59, 70, 89 };
+
+    @Test
+    public void testPut() {
+        SecretStore store = new SecretStore(2);
+        SecretHandle handle = store.put("sammy", SECRET_KEY);
+
+        assertSame(handle, store.get("sammy"));
+        assertArrayEquals(SECRET_KEY, handle.copy());
+        assertNull(store.putIfAbsent("sammy", new byte[] { 1, 2, 3 }));
+        assertSame(handle, store.get("sammy"));
+        assertArrayEquals(SECRET_KEY, handle.copy());
+        assertEquals(KeyConstants.KEY_ENCODING_SCHEME.encode(SECRET_KEY), handle.encode());
+
+        byte[] borrowed = handle.borrow();
+        assertArrayEquals(SECRET_KEY, borrowed);
+        handle.release(borrowed);
+        assertArrayEquals(new byte[SECRET_KEY.length], borrowed);
+    }
+
+    @Test
+    public void testRemove() {
+        SecretStore store = new SecretStore(1);
+        SecretHandle handle = store.put("sammy", SECRET_KEY);
+
+        assertTrue(store.remove("sammy"));
+        assertFalse(store.remove("sammy"));
+        assertNull(store.get("sammy"));
+        assertThrows(IllegalStateException.class, handle::borrow);
+
+        SecretHandle reused = store.put("other", new byte[] { 1, 2, 3 });
+        assertArrayEquals(new byte[] { 1, 2, 3 }, reused.copy());
+        assertThrows(IllegalStateException.class, handle::borrow);
+        assertThrows(IllegalStateException.class, () -> store.put("full", SECRET_KEY));
+    }
+
+    @Test
+    public void testRemove_Evicted() {
+        SecretStore store = new SecretStore(2);
+        List<byte[]> evicted = new ArrayList<>();
+        List<byte[]> copies = new ArrayList<>();
+        store.addEvictionListener(secret -> {
+            evicted.add(secret);
+            copies.add(secret.clone());
+        });
+
+        store.put("sammy", SECRET_KEY);
+        store.put("sammy", new byte[] { 1, 2, 3 });
+        store.put("other", new byte[] { 4, 5 });
+        store.remove("sammy");
+        store.close();
+
+        assertEquals(3, copies.size());
+        assertArrayEquals(SECRET_KEY, copies.get(0));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, copies.get(1));
+        assertArrayEquals(new byte[] { 4, 5 }, copies.get(2));
+        for (byte[] secret : evicted) {
+            assertArrayEquals(new byte[secret.length], secret);
+        }
+    }
+
+    @Test
+    public void testRemove_EvictedFromGenerator() {
+        AtomicInteger generated = new AtomicInteger();
+        PasswordFactory factory = new PasswordFactory();
+        PasswordGenerator counting = new PasswordGenerator() {
+            @Override
+            public int generateCode(byte[] rawSecret, long movingFactor, HmacAlgorithm algorithm, int digits) {
+                generated.incrementAndGet();
+                return factory.generateCode(rawSecret, movingFactor, algorithm, digits);
+            }
+
+            @Override
+            public void evict(byte[] rawSecret) {
+                factory.evict(rawSecret);
+            }
+        };
+        CachingPasswordGenerator generator = new CachingPasswordGenerator(counting);
+
+        SecretStore store = new SecretStore(1);
+        store.addEvictionListener(generator::evict);
+
+        byte[] secret = store.put("sammy", SECRET_KEY).copy();
+        int code = generator.generateCode(secret, 0, HmacAlgorithm.SHA1, 6);
+        assertEquals(code, generator.generateCode(secret, 0, HmacAlgorithm.SHA1, 6));
+        assertEquals(1, generated.get());
+
+        store.remove("sammy");
+        assertEquals(code, generator.generateCode(secret, 0, HmacAlgorithm.SHA1, 6));
+        assertEquals(2, generated.get());
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.samhg.authentication.key;
+
+import com.samhg.authentication.metrics.Metrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class SecureRandomPoolTest {
+
+    @Test
+    public void testNextBytes_ReseedInterval() throws InterruptedException {
+        AtomicInteger reseeds = new AtomicInteger();
+        Metrics metrics = new Metrics() {
+            @Override
+            public void onReseed() {
+                reseeds.incrementAndGet();
+            }
+        };
+        SecureRandomPool pool = new SecureRandomPool(1, 4096, Long.MAX_VALUE, 200, metrics);
+
+        pool.getNextBytes(16);
+        int before = reseeds.get();
+
+        // the buffer still holds bytes, but they were generated before the reseed that is now due
+        Thread.sleep(250);
+        pool.getNextBytes(16);
+        assertEquals(before + 1, reseeds.get());
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.samhg.authentication.metrics;
+
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.generation.PasswordFactory;
+import com.samhg.authentication.persistence.counter.CounterUpdate;
+import com.samhg.authentication.persistence.counter.InstrumentedCounterPersistence;
+import com.samhg.authentication.validation.PasswordType;
+import com.samhg.authentication.validation.PasswordValidationRequest;
+import com.samhg.authentication.validation.PasswordValidator;
+import com.samhg.authentication.validation.ValidationMode;
+import com.samhg.authentication.validation.WindowSelector;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class RecordingMetricsTest {
+
+    private static final byte[] SECRET_KEY = { 20, -37, 28, 73, -53, 23, -2, -59, 70, 89 };
+
+    @Test
+    public void testValidation() {
+        RecordingMetrics metrics = new RecordingMetrics();
+        PasswordValidator validator = new PasswordValidator(new PasswordFactory(16, metrics), ValidationMode.EARLY_EXIT,
+                Collections.emptyList(), WindowSelector.FULL, metrics);
+
+        for (long movingFactor = 10; movingFactor <= 13; movingFactor++) {
+            validator.validate(new PasswordValidationRequest("sammy", "40584582", SECRET_KEY, 8, HmacAlgorithm.SHA256,
+                    movingFactor, PasswordType.TIME_BASED), Collections.emptyList());
+        }
+
+        assertEquals(4, metrics.getValidations(PasswordType.TIME_BASED));
+        assertEquals(1, metrics.getFailures(PasswordType.TIME_BASED));
+        assertEquals(Map.of(-1L, 1L, 0L, 1L, 1L, 1L), metrics.getMatchesByOffset(PasswordType.TIME_BASED));
+        assertEquals(3 + 1 + 2 + 3, metrics.getHmacs(HmacAlgorithm.SHA256));
+        assertEquals(4, metrics.getValidationLatency().count());
+    }
+
+    @Test
+    public void testPersist() {
+        RecordingMetrics metrics = new RecordingMetrics();
+        InstrumentedCounterPersistence persistence = new InstrumentedCounterPersistence(update -> {
+            if (update.getNewCounter() < 0) {
+                throw new IllegalArgumentException();
+            }
+            return update.getNewCounter();
+        }, metrics);
+
+        persistence.persist(new CounterUpdate("sammy", 1));
+        assertThrows(IllegalArgumentException.class, () -> persistence.persist(new CounterUpdate("sammy", -1)));
+
+        assertEquals(1, metrics.getPersistedUpdates());
+        assertEquals(1, metrics.getPersistFailures());
+        assertEquals(2, metrics.getPersistLatency().count());
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(1000, histogram.count());
+        assertEquals(1000, histogram.max());
+        assertEquals(500.5, histogram.mean());
+        assertEquals(1, histogram.percentile(0));
+        assertTrue(histogram.percentile(50) >= 500 && histogram.percentile(50) <= 500 * 1.125);
+        assertTrue(histogram.percentile(99) >= 990 && histogram.percentile(99) <= 1000);
+        assertEquals(1000, histogram.percentile(100));
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.samhg.authentication.persistence.counter;
+
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.validation.PasswordType;
+import com.samhg.authentication.validation.PasswordValidationRequest;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class AppendOnlyCounterPersistenceTest {
+
+    @Test
+    public void testPersist_Replay() throws IOException {
+        Path path = Files.createTempFile("counters", ".log");
+        try {
+            try (AppendOnlyCounterPersistence persistence = new AppendOnlyCounterPersistence(path)) {
+                persistence.persist(update("sammy", 1));
+                persistence.persist(update("alex", 7));
+                persistence.persist(update("sammy", 2));
+            }
+
+            // a partially written record, as left by a crash mid-append
+            Files.write(path, new byte[] { 0, 5, 'j' }, StandardOpenOption.APPEND);
+
+            try (AppendOnlyCounterPersistence persistence = new AppendOnlyCounterPersistence(path)) {
+                assertEquals(OptionalLong.of(2), persistence.load("sammy"));
+                assertEquals(OptionalLong.of(7), persistence.load("alex"));
+                assertEquals(OptionalLong.empty(), persistence.load("jamie"));
+
+                persistence.persist(update("jamie", 3));
+                assertEquals(OptionalLong.of(3), persistence.load("jamie"));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        Path path = Files.createTempFile("counters", ".log");
+        try {
+            try (AppendOnlyCounterPersistence persistence = new AppendOnlyCounterPersistence(path, false, 2)) {
+                for (int i = 0; i < 100; i++) {
+                    persistence.persist(update("sammy", i));
+                }
+                long sizeBeforeCompaction = Files.size(path);
+
+                persistence.compact();
+                assertTrue(Files.size(path) < sizeBeforeCompaction);
+
+                persistence.persist(update("alex", 1));
+            }
+
+            try (AppendOnlyCounterPersistence persistence = new AppendOnlyCounterPersistence(path)) {
+                assertEquals(OptionalLong.of(99), persistence.load("sammy"));
+                assertEquals(OptionalLong.of(1), persistence.load("alex"));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testCompact_Failed() throws IOException {
+        Path path = Files.createTempFile("counters", ".log");
+        Path blocker = path.resolveSibling(path.getFileName() + ".compact");
+        Files.createDirectories(blocker.resolve("blocker"));
+        try {
+            try (AppendOnlyCounterPersistence persistence = new AppendOnlyCounterPersistence(path, false, 2)) {
+                persistence.persist(update("sammy", 1));
+
+                assertThrows(IOException.class, persistence::compact);
+
+                persistence.persist(update("sammy", 2));
+                assertEquals(OptionalLong.of(2), persistence.load("sammy"));
+            }
+
+            try (AppendOnlyCounterPersistence persistence = new AppendOnlyCounterPersistence(path)) {
+                assertEquals(OptionalLong.of(2), persistence.load("sammy"));
+            }
+        } finally {
+            Files.deleteIfExists(blocker.resolve("blocker"));
+            Files.deleteIfExists(blocker);
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static CounterUpdate update(String identifier, long counter) {
+        PasswordValidationRequest request = new PasswordValidationRequest(identifier, "000000", new byte[0], 6,
+                HmacAlgorithm.SHA1, counter, PasswordType.EVENT_BASED);
+
+        return new CounterUpdate(request, counter);
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.samhg.authentication.persistence.counter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class CounterFilesTest {
+
+    @Test
+    public void testRead_Regions() throws IOException {
+        Path path = Files.createTempFile("counters", ".txt");
+        try {
+            StringBuilder file = new StringBuilder();
+            for (int i = 0; i < 2000; i++) {
+                file.append("user").append(i).append(':').append(i * 31L).append('\n');
+                if (i % 100 == 0) {
+                    file.append("not a counter\n").append("user-x:1\n").append("user_y:1a\n").append('\n');
+                }
+            }
+            file.append("last:9");
+            Files.writeString(path, file);
+
+            CounterMap counters = new CounterFileReader(97, 13).read(path);
+
+            assertEquals(2001, counters.size());
+            for (int i = 0; i < 2000; i++) {
+                assertEquals(OptionalLong.of(i * 31L), counters.get("user" + i));
+            }
+            assertEquals(OptionalLong.of(9), counters.get("last"));
+            assertEquals(OptionalLong.empty(), counters.get("user_y"));
+
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testExportImport() throws IOException {
+        Path path = Files.createTempFile("counters", ".txt");
+        try {
+            InMemoryCounterPersistence source = new InMemoryCounterPersistence();
+            for (int i = 0; i < 1000; i++) {
+                source.persist(new CounterUpdate("user" + i, i));
+            }
+
+            assertEquals(1000, CounterFiles.exportFile(source, path));
+
+            InMemoryCounterPersistence target = new InMemoryCounterPersistence();
+            assertEquals(1000, CounterFiles.importFile(path, target, new CounterFileReader(256, 64), 64));
+
+            Map<String, Long> imported = new HashMap<>();
+            target.forEach(imported::put);
+            assertEquals(1000, imported.size());
+            assertEquals(OptionalLong.of(999), new TextFileCounterPersistence(path).load("user999"));
+
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+}
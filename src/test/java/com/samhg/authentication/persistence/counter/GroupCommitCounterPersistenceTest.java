@@ -0,0 +1,224 @@
+package com.samhg.authentication.persistence.counter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class GroupCommitCounterPersistenceTest {
+
+    @Test
+    public void testSubmit_Coalesced() throws InterruptedException {
+        GatedPersistence backing = new GatedPersistence();
+
+        try (GroupCommitCounterPersistence persistence = new GroupCommitCounterPersistence(backing)) {
+            // the first group holds the committer while the rest queue up behind it
+            CompletableFuture<Long> first = persistence.submit(new CounterUpdate("alex", 1));
+            backing.entered.await();
+
+            CompletableFuture<Long> low = persistence.submit(new CounterUpdate("sammy", 3));
+            CompletableFuture<Long> high = persistence.submit(new CounterUpdate("sammy", 5));
+            CompletableFuture<Long> lower = persistence.submit(new CounterUpdate("sammy", 4));
+            CompletableFuture<Long> other = persistence.submit(new CounterUpdate("jamie", 2));
+            backing.gate.countDown();
+
+            assertEquals(1, first.join());
+            assertEquals(5, low.join());
+            assertEquals(5, high.join());
+            assertEquals(5, lower.join());
+            assertEquals(2, other.join());
+
+            assertEquals(2, backing.groups.size());
+            assertEquals(2, backing.groups.get(1).size());
+            assertEquals(OptionalLong.of(5), backing.delegate.load("sammy"));
+        }
+    }
+
+    @Test
+    public void testSubmit_Failed() {
+        GatedPersistence backing = new GatedPersistence();
+        backing.gate.countDown();
+
+        try (GroupCommitCounterPersistence persistence = new GroupCommitCounterPersistence(backing)) {
+            backing.failure = new IllegalStateException("disk full");
+            CompletionException e = assertThrows(CompletionException.class,
+                    () -> persistence.submit(new CounterUpdate("sammy", 1)).join());
+            assertSame(backing.failure, e.getCause());
+
+            backing.failure = new AssertionError("committer must survive errors");
+            e = assertThrows(CompletionException.class, () -> persistence.submit(new CounterUpdate("sammy", 2)).join());
+            assertSame(backing.failure, e.getCause());
+
+            backing.failure = null;
+            assertEquals(3, persistence.persist(new CounterUpdate("sammy", 3)));
+        }
+    }
+
+    @Test
+    public void testAdvance() throws InterruptedException {
+        GatedPersistence backing = new GatedPersistence();
+
+        try (GroupCommitCounterPersistence persistence = new GroupCommitCounterPersistence(backing)) {
+            CompletableFuture<Long> first = persistence.submit(new CounterUpdate("alex", 1));
+            backing.entered.await();
+
+            // queued behind the committer, so each compare-and-set must see the update before it
+            CompletableFuture<Long> queued = persistence.submit(new CounterUpdate("sammy", 5));
+            boolean[] stale = { true };
+            Thread advancer = new Thread(() -> stale[0] = persistence.advance(new CounterUpdate("sammy", 5)));
+            advancer.start();
+            while (advancer.getState() != Thread.State.WAITING) {
+                Thread.sleep(1);
+            }
+            backing.gate.countDown();
+            advancer.join();
+
+            assertEquals(1, first.join());
+            assertEquals(5, queued.join());
+            assertFalse(stale[0]);
+
+            assertTrue(persistence.advance(new CounterUpdate("sammy", 6)));
+            assertFalse(persistence.advance(new CounterUpdate("sammy", 6)));
+            assertEquals(OptionalLong.of(6), backing.delegate.load("sammy"));
+
+            backing.failure = new IllegalStateException("disk full");
+            assertSame(backing.failure, assertThrows(CompletionException.class,
+                    () -> persistence.advance(new CounterUpdate("sammy", 7))).getCause());
+        }
+    }
+
+    @Test
+    public void testAdvance_Coalesced() throws InterruptedException {
+        GatedPersistence backing = new GatedPersistence();
+        backing.delegate.persist(new CounterUpdate("jamie", 10));
+
+        try (GroupCommitCounterPersistence persistence = new GroupCommitCounterPersistence(backing)) {
+            CompletableFuture<Long> first = persistence.submit(new CounterUpdate("alex", 1));
+            backing.entered.await();
+
+            // resolved against each other and the stored counters, then persisted together
+            CompletableFuture<Boolean> advanced = persistence.advanceAsync(new CounterUpdate("sammy", 1));
+            CompletableFuture<Boolean> replayed = persistence.advanceAsync(new CounterUpdate("sammy", 1));
+            CompletableFuture<Boolean> next = persistence.advanceAsync(new CounterUpdate("sammy", 2));
+            CompletableFuture<Boolean> stale = persistence.advanceAsync(new CounterUpdate("jamie", 9));
+            CompletableFuture<Boolean> other = persistence.advanceAsync(new CounterUpdate("alex", 2));
+            backing.gate.countDown();
+
+            assertEquals(1, first.join());
+            assertTrue(advanced.join());
+            assertFalse(replayed.join());
+            assertTrue(next.join());
+            assertFalse(stale.join());
+            assertTrue(other.join());
+
+            assertEquals(2, backing.groups.size());
+            assertEquals(2, backing.groups.get(1).size());
+            assertEquals(OptionalLong.of(2), backing.delegate.load("sammy"));
+            assertEquals(OptionalLong.of(10), backing.delegate.load("jamie"));
+            assertEquals(OptionalLong.of(2), backing.delegate.load("alex"));
+        }
+    }
+
+    @Test
+    public void testClose_WhileSubmitting() throws InterruptedException {
+        for (int round = 0; round < 20; round++) {
+            GatedPersistence backing = new GatedPersistence();
+            backing.gate.countDown();
+            GroupCommitCounterPersistence persistence = new GroupCommitCounterPersistence(backing, 16);
+
+            List<CompletableFuture<Long>> futures = new ArrayList<>();
+            CountDownLatch started = new CountDownLatch(4);
+            List<Thread> submitters = new ArrayList<>();
+
+            for (int t = 0; t < 4; t++) {
+                String identifier = "user" + t;
+                Thread submitter = new Thread(() -> {
+                    started.countDown();
+                    for (int i = 0; i < 1000; i++) {
+                        CompletableFuture<Long> future = persistence.submit(new CounterUpdate(identifier, i));
+                        synchronized (futures) {
+                            futures.add(future);
+                        }
+                    }
+                });
+                submitters.add(submitter);
+                submitter.start();
+            }
+
+            started.await();
+            persistence.close();
+            for (Thread submitter : submitters) {
+                submitter.join();
+            }
+
+            for (CompletableFuture<Long> future : futures) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalStateException);
+                } catch (TimeoutException e) {
+                    fail("An update submitted during close never completed");
+                }
+            }
+        }
+    }
+
+    /**
+     * Persists groups in memory, recording each group, after waiting for {@link #gate} to open.
+     */
+    private static final class GatedPersistence implements CounterPersistenceStrategy {
+
+        private final InMemoryCounterPersistence delegate = new InMemoryCounterPersistence();
+
+        private final List<List<CounterUpdate>> groups = new ArrayList<>();
+
+        private final CountDownLatch entered = new CountDownLatch(1);
+
+        private final CountDownLatch gate = new CountDownLatch(1);
+
+        private volatile Throwable failure;
+
+        @Override
+        public Long persist(CounterUpdate counterUpdate) {
+            persistAll(Collections.singletonList(counterUpdate));
+            return counterUpdate.getNewCounter();
+        }
+
+        @Override
+        public void persistAll(Collection<CounterUpdate> counterUpdates) {
+            entered.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+
+            Throwable t = failure;
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            }
+
+            groups.add(new ArrayList<>(counterUpdates));
+            delegate.persistAll(counterUpdates);
+        }
+
+        @Override
+        public OptionalLong load(String identifier) {
+            return delegate.load(identifier);
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.samhg.authentication.persistence.counter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class InMemoryCounterPersistenceTest {
+
+    @Test
+    public void testAdvance() {
+        InMemoryCounterPersistence persistence = new InMemoryCounterPersistence();
+
+        assertTrue(persistence.advance(new CounterUpdate("sammy", 5)));
+        assertFalse(persistence.advance(new CounterUpdate("sammy", 5)));
+        assertFalse(persistence.advance(new CounterUpdate("sammy", 4)));
+        assertTrue(persistence.advance(new CounterUpdate("sammy", 6)));
+        assertEquals(OptionalLong.of(6), persistence.load("sammy"));
+    }
+
+    @Test
+    public void testAdvance_Concurrent() throws InterruptedException {
+        InMemoryCounterPersistence persistence = new InMemoryCounterPersistence();
+        int threads = 8;
+        int increments = 10_000;
+
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger[] winners = new AtomicInteger[threads * increments + 1];
+        for (int i = 0; i < winners.length; i++) {
+            winners[i] = new AtomicInteger();
+        }
+        List<Thread> incrementers = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            Thread incrementer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+
+                // every thread races for the next counter, which only adds up if no update is lost
+                for (int i = 0; i < increments; ) {
+                    long counter = persistence.load("sammy").orElse(0) + 1;
+                    if (persistence.advance(new CounterUpdate("sammy", counter))) {
+                        winners[(int) counter].incrementAndGet();
+                        i++;
+                    }
+                }
+            });
+            incrementers.add(incrementer);
+            incrementer.start();
+        }
+
+        start.countDown();
+        for (Thread incrementer : incrementers) {
+            incrementer.join();
+        }
+
+        assertEquals(OptionalLong.of(threads * increments), persistence.load("sammy"));
+        for (int i = 1; i < winners.length; i++) {
+            assertEquals(1, winners[i].get(), "winners of counter " + i);
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.samhg.authentication.persistence.counter;
+
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.validation.PasswordType;
+import com.samhg.authentication.validation.PasswordValidationRequest;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class MappedCounterPersistenceTest {
+
+    @Test
+    public void testPersist_Reopen() throws IOException {
+        Path path = Files.createTempFile("counters", ".map");
+        Files.delete(path);
+        try {
+            try (MappedCounterPersistence persistence = new MappedCounterPersistence(path, 4, 16,
+                    ForcePolicy.ON_CLOSE, 0)) {
+
+                for (int i = 0; i < 4; i++) {
+                    persistence.persist(update("user" + i, i));
+                }
+                persistence.persist(update("user2", 20));
+
+                assertThrows(IllegalStateException.class, () -> persistence.persist(update("user4", 4)));
+            }
+
+            try (MappedCounterPersistence persistence = new MappedCounterPersistence(path, 4, 16,
+                    ForcePolicy.EVERY_WRITE, 0)) {
+
+                assertEquals(OptionalLong.of(0), persistence.load("user0"));
+                assertEquals(OptionalLong.of(20), persistence.load("user2"));
+                assertEquals(OptionalLong.of(3), persistence.load("user3"));
+                assertEquals(OptionalLong.empty(), persistence.load("user4"));
+            }
+
+            assertThrows(IllegalStateException.class, () -> new MappedCounterPersistence(path, 8));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        Path path = Files.createTempFile("counters", ".map");
+        Files.delete(path);
+        try {
+            assertThrows(IllegalArgumentException.class,
+                    () -> new MappedCounterPersistence(path, 4, 16, ForcePolicy.PERIODIC, 0));
+
+            MappedCounterPersistence persistence = new MappedCounterPersistence(path, 4, 16, ForcePolicy.PERIODIC, 1000);
+            persistence.persist(update("sammy", 1));
+            persistence.close();
+            persistence.close();
+
+            assertThrows(IllegalStateException.class, () -> persistence.persist(update("sammy", 2)));
+            assertThrows(IllegalStateException.class, () -> persistence.advance(update("sammy", 2)));
+            assertThrows(IllegalStateException.class, () -> persistence.load("sammy"));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testAdvance_Concurrent() throws Exception {
+        Path path = Files.createTempFile("counters", ".map");
+        Files.delete(path);
+        try (MappedCounterPersistence persistence = new MappedCounterPersistence(path, 4, 16,
+                ForcePolicy.ON_CLOSE, 0)) {
+
+            AtomicInteger advanced = new AtomicInteger();
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        if (persistence.advance(update("user", i))) {
+                            advanced.incrementAndGet();
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertEquals(OptionalLong.of(999), persistence.load("user"));
+            assertTrue(advanced.get() >= 1000 && advanced.get() < 4000);
+            assertFalse(persistence.advance(update("user", 999)));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static CounterUpdate update(String identifier, long counter) {
+        PasswordValidationRequest request = new PasswordValidationRequest(identifier, "000000", new byte[0], 6,
+                HmacAlgorithm.SHA1, counter, PasswordType.EVENT_BASED);
+
+        return new CounterUpdate(request, counter);
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.samhg.authentication.persistence.counter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.function.ObjLongConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class ShardedCounterPersistenceTest {
+
+    @Test
+    public void testPersist() {
+        List<MapCounterPersistence> shards = List.of(new MapCounterPersistence(), new MapCounterPersistence(),
+                new MapCounterPersistence());
+        ShardedCounterPersistence persistence = new ShardedCounterPersistence(shards);
+
+        List<CounterUpdate> updates = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            updates.add(new CounterUpdate("user" + i, i));
+        }
+        persistence.persistAll(updates);
+
+        for (MapCounterPersistence shard : shards) {
+            assertTrue(shard.counters.size() > 500, "shard holds " + shard.counters.size() + " counters");
+        }
+        for (int i = 0; i < 3000; i++) {
+            assertEquals(OptionalLong.of(i), persistence.load("user" + i));
+        }
+        assertEquals(OptionalLong.empty(), persistence.load("unknown"));
+    }
+
+    @Test
+    public void testAddShard() {
+        ShardedCounterPersistence persistence = new ShardedCounterPersistence(
+                List.of(new MapCounterPersistence(), new MapCounterPersistence()));
+
+        for (int i = 0; i < 3000; i++) {
+            persistence.persist(new CounterUpdate("user" + i, i));
+        }
+
+        MapCounterPersistence added = new MapCounterPersistence();
+        persistence.addShard(added);
+
+        assertEquals(3, persistence.shardCount());
+        assertTrue(added.counters.size() > 500 && added.counters.size() < 1500);
+        for (int i = 0; i < 3000; i++) {
+            assertEquals(OptionalLong.of(i), persistence.load("user" + i));
+        }
+
+        Map<String, Long> all = new HashMap<>();
+        persistence.forEach(all::put);
+        assertEquals(3000, all.size());
+    }
+
+    private static final class MapCounterPersistence implements CounterPersistenceStrategy {
+
+        private final Map<String, Long> counters = new HashMap<>();
+
+        @Override
+        public Long persist(CounterUpdate counterUpdate) {
+            counters.put(counterUpdate.getIdentifier(), counterUpdate.getNewCounter());
+            return counterUpdate.getNewCounter();
+        }
+
+        @Override
+        public OptionalLong load(String identifier) {
+            Long counter = counters.get(identifier);
+            return counter == null ? OptionalLong.empty() : OptionalLong.of(counter);
+        }
+
+        @Override
+        public void forEach(ObjLongConsumer<String> action) {
+            counters.forEach(action::accept);
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.samhg.authentication.persistence.counter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class TextFileCounterPersistenceTest {
+
+    private static final int INCREMENTS = 200;
+
+    @Test
+    public void testAdvance() throws IOException {
+        Path path = Files.createTempFile("counters", ".txt");
+        try {
+            TextFileCounterPersistence persistence = new TextFileCounterPersistence(path);
+
+            assertTrue(persistence.advance(new CounterUpdate("sammy", 5)));
+            assertFalse(persistence.advance(new CounterUpdate("sammy", 5)));
+            assertFalse(persistence.advance(new CounterUpdate("sammy", 4)));
+            assertTrue(persistence.advance(new CounterUpdate("alex", 1)));
+            assertTrue(persistence.advance(new CounterUpdate("sammy", 6)));
+
+            // compares against the file, not anything this instance has seen
+            persistence.persist(new CounterUpdate("sammy", 10));
+            assertFalse(new TextFileCounterPersistence(path).advance(new CounterUpdate("sammy", 9)));
+            assertEquals(OptionalLong.of(10), persistence.load("sammy"));
+            assertEquals(OptionalLong.of(1), persistence.load("alex"));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testPersist_ShorterRewrite() throws IOException {
+        Path path = Files.createTempFile("counters", ".txt");
+        try {
+            TextFileCounterPersistence persistence = new TextFileCounterPersistence(path);
+
+            persistence.persist(new CounterUpdate("sammy", 1_000_000));
+            assertEquals(OptionalLong.of(1_000_000), persistence.load("sammy"));
+
+            // the rewrite is shorter than the file, whose tail must not survive it
+            persistence.persist(new CounterUpdate("sammy", 1));
+            assertEquals("sammy:1\n", Files.readString(path));
+            assertEquals(OptionalLong.of(1), persistence.load("sammy"));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testAdvance_ConcurrentProcesses() throws Exception {
+        Path path = Files.createTempFile("counters", ".txt");
+        try {
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    TextFileCounterPersistenceTest.class.getName(), path.toString())
+                    .inheritIO()
+                    .start();
+
+            // both processes increment the same counter, which only adds up if no update is lost
+            increment(new TextFileCounterPersistence(path));
+
+            assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+            assertEquals(0, process.exitValue());
+            assertEquals(OptionalLong.of(2 * INCREMENTS), new TextFileCounterPersistence(path).load("sammy"));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Increments the counter from another process, for {@link #testAdvance_ConcurrentProcesses()}.
+     */
+    public static void main(String[] args) {
+        increment(new TextFileCounterPersistence(Paths.get(args[0])));
+    }
+
+    private static void increment(TextFileCounterPersistence persistence) {
+        for (int i = 0; i < INCREMENTS; ) {
+            long counter = persistence.load("sammy").orElse(0);
+            if (persistence.advance(new CounterUpdate("sammy", counter + 1))) {
+                i++;
+            }
+        }
+    }
+
+    @Test
+    public void testPersistAll_LargerThanBuffer() throws IOException {
+        Path path = Files.createTempFile("counters", ".txt");
+        try {
+            TextFileCounterPersistence persistence = new TextFileCounterPersistence(path);
+
+            List<CounterUpdate> counterUpdates = new ArrayList<>();
+            for (int i = 0; i < 20_000; i++) {
+                counterUpdates.add(new CounterUpdate("user" + i, i));
+            }
+            persistence.persistAll(counterUpdates);
+            assertTrue(Files.size(path) > 64 << 10);
+
+            // a shorter rewrite must truncate the rest of the longer file
+            long size = Files.size(path);
+            persistence.persist(new CounterUpdate("user19999", 0));
+            assertEquals(size - 4, Files.size(path));
+            assertEquals(OptionalLong.of(0), persistence.load("user19999"));
+            assertEquals(OptionalLong.of(7), persistence.load("user7"));
+
+            long[] count = { 0 };
+            persistence.forEach((identifier, counter) -> count[0]++);
+            assertEquals(20_000, count[0]);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+}
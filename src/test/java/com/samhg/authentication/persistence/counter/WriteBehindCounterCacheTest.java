@@ -0,0 +1,108 @@
+package com.samhg.authentication.persistence.counter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class WriteBehindCounterCacheTest {
+
+    @Test
+    public void testPersist_WrittenBehind() {
+        InMemoryCounterPersistence backing = new InMemoryCounterPersistence();
+        backing.persist(new CounterUpdate("stored", 7));
+
+        try (WriteBehindCounterCache cache = new WriteBehindCounterCache(backing, 1024, 60_000)) {
+            assertEquals(OptionalLong.of(7), cache.load("stored"));
+            assertEquals(OptionalLong.empty(), cache.load("unknown"));
+
+            cache.persist(new CounterUpdate("cached", 3));
+            assertTrue(cache.advance(new CounterUpdate("stored", 8)));
+            assertFalse(cache.advance(new CounterUpdate("stored", 8)));
+
+            assertEquals(OptionalLong.of(3), cache.load("cached"));
+            assertEquals(OptionalLong.empty(), backing.load("cached"));
+            assertEquals(OptionalLong.of(7), backing.load("stored"));
+
+            cache.flush();
+            assertEquals(OptionalLong.of(3), backing.load("cached"));
+            assertEquals(OptionalLong.of(8), backing.load("stored"));
+        }
+    }
+
+    @Test
+    public void testPersist_Evicted() {
+        InMemoryCounterPersistence backing = new InMemoryCounterPersistence();
+
+        try (WriteBehindCounterCache cache = new WriteBehindCounterCache(backing, 16, 60_000)) {
+            for (int i = 0; i < 5000; i++) {
+                cache.persist(new CounterUpdate("user" + i, i));
+            }
+            for (int i = 0; i < 5000; i++) {
+                assertEquals(OptionalLong.of(i), cache.load("user" + i));
+            }
+        }
+
+        Map<String, Long> all = new HashMap<>();
+        backing.forEach(all::put);
+        assertEquals(5000, all.size());
+    }
+
+    @Test
+    public void testFlush_EvictionDuringFlush() throws InterruptedException {
+        InMemoryCounterPersistence backing = new InMemoryCounterPersistence();
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CounterPersistenceStrategy blocking = new CounterPersistenceStrategy() {
+            @Override
+            public Long persist(CounterUpdate counterUpdate) {
+                return backing.persist(counterUpdate);
+            }
+
+            @Override
+            public void persistAll(Collection<CounterUpdate> counterUpdates) {
+                flushing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                backing.persistAll(counterUpdates);
+            }
+
+            @Override
+            public OptionalLong load(String identifier) {
+                return backing.load(identifier);
+            }
+        };
+
+        WriteBehindCounterCache cache = new WriteBehindCounterCache(blocking, 16, 60_000);
+        cache.persist(new CounterUpdate("sammy", 5));
+
+        Thread flusher = new Thread(cache::flush);
+        flusher.start();
+        flushing.await();
+
+        // update the counter being flushed, then try to evict it
+        cache.persist(new CounterUpdate("sammy", 6));
+        for (int i = 0; i < 5000; i++) {
+            cache.persist(new CounterUpdate("user" + i, i));
+        }
+
+        release.countDown();
+        flusher.join();
+        cache.close();
+
+        assertEquals(OptionalLong.of(6), backing.load("sammy"));
+        assertThrows(IllegalStateException.class, () -> cache.persist(new CounterUpdate("sammy", 7)));
+        assertThrows(IllegalStateException.class, () -> cache.advance(new CounterUpdate("sammy", 7)));
+        assertEquals(OptionalLong.of(6), backing.load("sammy"));
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.samhg.authentication.provisioning;
+
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.key.RandomSecretProvider;
+import com.samhg.authentication.key.SharedSecret;
+import com.samhg.authentication.persistence.counter.CounterPersistenceStrategy;
+import com.samhg.authentication.validation.PasswordType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class ProvisioningPipelineTest {
+
+    @Test
+    public void testFormat() {
+        SharedSecret secret = new SharedSecret(new byte[] { 72, 101, 108, 108, 111, 33, -34, -83, -66, -17 }, null);
+
+        assertEquals("otpauth://totp/ACME%20Co:john.doe%40example.com?secret=JBSWY3DPEHPK3PXP&issuer=ACME%20Co"
+                        + "&algorithm=SHA1&digits=6&period=30",
+                new OtpAuthUri("ACME Co", PasswordType.TIME_BASED).format("john.doe@example.com", secret, 0));
+
+        assertEquals("otpauth://hotp/ACME:sammy?secret=JBSWY3DPEHPK3PXP&issuer=ACME&algorithm=SHA256&digits=8&counter=5",
+                new OtpAuthUri("ACME", PasswordType.EVENT_BASED, HmacAlgorithm.SHA256, 8, 30).format("sammy", secret, 5));
+    }
+
+    @Test
+    public void testProvision() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Map<String, Long> counters = new ConcurrentHashMap<>();
+        CounterPersistenceStrategy store = update -> {
+            counters.put(update.getIdentifier(), update.getNewCounter());
+            return update.getNewCounter();
+        };
+
+        try {
+            ProvisioningPipeline pipeline = new ProvisioningPipeline(new RandomSecretProvider(),
+                    new OtpAuthUri("ACME", PasswordType.EVENT_BASED), 7, executor, 100, 3);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            long provisioned = pipeline.provision(IntStream.range(0, 2500).mapToObj(i -> "user" + i).iterator(), out,
+                    store);
+
+            String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+            assertEquals(2500, provisioned);
+            assertEquals(2500, lines.length);
+            assertEquals(2500, counters.size());
+
+            for (int i = 0; i < lines.length; i++) {
+                String[] fields = lines[i].split("\t");
+                assertEquals("user" + i, fields[0]);
+                assertEquals("7", fields[2]);
+                assertEquals("otpauth://hotp/ACME:user" + i + "?secret=" + fields[1]
+                        + "&issuer=ACME&algorithm=SHA1&digits=6&counter=7", fields[3]);
+                assertEquals(7L, counters.get(fields[0]));
+            }
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testProvision_Rejected() {
+        // holds the first two chunks without running them, then rejects the rest
+        List<Runnable> accepted = new ArrayList<>();
+        Executor executor = command -> {
+            if (accepted.size() == 2) {
+                throw new RejectedExecutionException("Queue full");
+            }
+            accepted.add(command);
+        };
+        AtomicInteger seeded = new AtomicInteger();
+        CounterPersistenceStrategy store = update -> {
+            seeded.incrementAndGet();
+            return update.getNewCounter();
+        };
+
+        ProvisioningPipeline pipeline = new ProvisioningPipeline(new RandomSecretProvider(),
+                new OtpAuthUri("ACME", PasswordType.EVENT_BASED), 0, executor, 10, 3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> pipeline.provision(IntStream.range(0, 100).mapToObj(i -> "user" + i).iterator(), out, store));
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        assertEquals(0, out.size());
+
+        // the accepted chunks were cancelled, so running them now provisions nothing
+        accepted.forEach(Runnable::run);
+        assertEquals(0, seeded.get());
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.samhg.authentication.validation;
+
+import com.samhg.authentication.generation.HmacAlgorithm;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class BruteForceThrottleTest {
+
+    private static final byte[] SECRET_KEY = { 20, -37, 28, 73, -53, 23, -2, -59, 70, 89 };
+
+    private final MutableClock clock = new MutableClock();
+
+    private final BruteForceThrottle throttle = new BruteForceThrottle(1024, 3, 1000, 8000, clock);
+
+    @Test
+    public void testLockout_Threshold() {
+        fail("sammy", 2);
+        assertFalse(throttle.isLockedOut("sammy"));
+
+        fail("sammy", 1);
+        assertTrue(throttle.isLockedOut("sammy"));
+        assertFalse(throttle.permit(request("sammy")));
+        assertFalse(throttle.isLockedOut("alex"));
+
+        clock.advance(999);
+        assertTrue(throttle.isLockedOut("sammy"));
+        clock.advance(1);
+        assertFalse(throttle.isLockedOut("sammy"));
+    }
+
+    @Test
+    public void testLockout_Escalation() {
+        fail("sammy", 3);
+
+        for (long lockout : new long[] { 1000, 2000, 4000, 8000, 8000, 8000 }) {
+            // attempts while locked out are not counted
+            fail("sammy", 5);
+
+            clock.advance(lockout - 1);
+            assertTrue(throttle.isLockedOut("sammy"), "locked out for " + lockout);
+            clock.advance(1);
+            assertFalse(throttle.isLockedOut("sammy"), "released after " + lockout);
+
+            fail("sammy", 1);
+        }
+    }
+
+    @Test
+    public void testLockout_ResetOnSuccess() {
+        fail("sammy", 2);
+        throttle.onValidation(request("sammy"), 0);
+        fail("sammy", 2);
+        assertFalse(throttle.isLockedOut("sammy"));
+
+        fail("sammy", 1);
+        clock.advance(1000);
+        throttle.onValidation(request("sammy"), 0);
+        fail("sammy", 1);
+        assertFalse(throttle.isLockedOut("sammy"));
+    }
+
+    @Test
+    public void testLockout_Expiry() {
+        fail("sammy", 2);
+        clock.advance(8001);
+
+        fail("sammy", 2);
+        assertFalse(throttle.isLockedOut("sammy"));
+        fail("sammy", 1);
+        assertTrue(throttle.isLockedOut("sammy"));
+    }
+
+    @Test
+    public void testLockout_Collision() {
+        // a single slot, so every identifier collides
+        BruteForceThrottle throttle = new BruteForceThrottle(1, 3, 1000, 8000, clock);
+        for (int i = 0; i < 3; i++) {
+            throttle.onValidation(request("sammy"), -1);
+        }
+        assertTrue(throttle.isLockedOut("sammy"));
+
+        // skip identifiers whose 16-bit fingerprint happens to match, which are indistinguishable
+        String other = null;
+        for (int i = 0; other == null; i++) {
+            if (!throttle.isLockedOut("user" + i)) {
+                other = "user" + i;
+            }
+        }
+
+        throttle.onValidation(request(other), -1);
+        throttle.onValidation(request(other), 0);
+        assertTrue(throttle.isLockedOut("sammy"));
+
+        clock.advance(1000);
+        assertFalse(throttle.isLockedOut("sammy"));
+        for (int i = 0; i < 3; i++) {
+            throttle.onValidation(request(other), -1);
+        }
+        assertTrue(throttle.isLockedOut(other));
+        assertFalse(throttle.isLockedOut("sammy"));
+    }
+
+    private void fail(String identifier, int times) {
+        for (int i = 0; i < times; i++) {
+            throttle.onValidation(request(identifier), -1);
+        }
+    }
+
+    private static PasswordValidationRequest request(String identifier) {
+        return new PasswordValidationRequest(identifier, "000000", SECRET_KEY, 6, HmacAlgorithm.SHA1, 0,
+                PasswordType.EVENT_BASED);
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private long millis = 1_000_000;
+
+        void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+    }
+
+}
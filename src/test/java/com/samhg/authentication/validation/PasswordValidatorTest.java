@@ -1,12 +1,30 @@
 package com.samhg.authentication.validation;
 
+import com.samhg.authentication.generation.CachingPasswordGenerator;
 import com.samhg.authentication.generation.HmacAlgorithm;
 import com.samhg.authentication.generation.PasswordFactory;
+import com.samhg.authentication.generation.PasswordGenerator;
+import com.samhg.authentication.key.SecretStore;
+import com.samhg.authentication.persistence.counter.AsyncCounterPersistenceStrategy;
+import com.samhg.authentication.persistence.counter.CounterPersistenceStrategy;
+import com.samhg.authentication.persistence.counter.CounterUpdate;
+import com.samhg.authentication.persistence.counter.GroupCommitCounterPersistence;
+import com.samhg.authentication.persistence.counter.InMemoryCounterPersistence;
+import com.samhg.authentication.validation.event.AsyncEventBasedValidationObserver;
+import com.samhg.authentication.validation.event.EventBasedCounterGuard;
+import com.samhg.authentication.validation.event.EventBasedValidationObserver;
+import com.samhg.authentication.validation.time.TimeBasedReplayCache;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class PasswordValidatorTest {
 
@@ -23,4 +41,327 @@ public final class PasswordValidatorTest {
         validator.validate(request, Collections.singleton((request1, index) -> assertEquals(index, 0)));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testValidate_TimeBased() {
+        testValidate(ValidationMode.EARLY_EXIT, "40584582", 10, 2);
+        testValidate(ValidationMode.EARLY_EXIT, "40584582", 11, 1);
+        testValidate(ValidationMode.EARLY_EXIT, "40584582", 12, 0);
+        testValidate(ValidationMode.EARLY_EXIT, "40584582", 13, -1);
+    }
+
+    @Test
+    public void testValidate_TimeBasedConstantTime() {
+        testValidate(ValidationMode.CONSTANT_TIME, "40584582", 10, 2);
+        testValidate(ValidationMode.CONSTANT_TIME, "40584582", 11, 1);
+        testValidate(ValidationMode.CONSTANT_TIME, "40584582", 12, 0);
+        testValidate(ValidationMode.CONSTANT_TIME, "40584582", 13, -1);
+        testValidate(ValidationMode.CONSTANT_TIME, "4058458x", 11, -1);
+    }
+
+    @Test
+    public void testValidate_TimeBasedCached() {
+        PasswordValidator validator = new PasswordValidator(new CachingPasswordGenerator(new PasswordFactory(), 4, 1));
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals(2, validator.search(new PasswordValidationRequest("sammy", "40584582", SECRET_KEY, 8,
+                    HmacAlgorithm.SHA256, 10, PasswordType.TIME_BASED)));
+            assertEquals(1, validator.search(new PasswordValidationRequest("sammy", "40584582", SECRET_KEY, 8,
+                    HmacAlgorithm.SHA256, 11, PasswordType.TIME_BASED)));
+            assertEquals(-1, validator.search(new PasswordValidationRequest("sammy", "40584583", SECRET_KEY, 8,
+                    HmacAlgorithm.SHA256, 11, PasswordType.TIME_BASED)));
+        }
+    }
+
+    @Test
+    public void testValidate_TimeBasedCachedWindow() {
+        PasswordFactory factory = new PasswordFactory();
+        AtomicInteger generated = new AtomicInteger();
+        PasswordGenerator counting = (secret, movingFactor, algorithm, digits) -> {
+            generated.incrementAndGet();
+            return factory.generateCode(secret, movingFactor, algorithm, digits);
+        };
+        PasswordValidator validator = new PasswordValidator(new CachingPasswordGenerator(counting));
+        byte[] otherKey = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+
+        // the first search raises the current step to 12, one step past the window around 11
+        assertEquals(-1, validator.search(new PasswordValidationRequest("alex", "40584583", otherKey, 8,
+                HmacAlgorithm.SHA256, 11, PasswordType.TIME_BASED)));
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals(-1, validator.search(new PasswordValidationRequest("sammy", "40584583", SECRET_KEY, 8,
+                    HmacAlgorithm.SHA256, 11, PasswordType.TIME_BASED)));
+        }
+        assertEquals(6, generated.get());
+    }
+
+    @Test
+    public void testValidate_SecretHandle() {
+        SecretStore store = new SecretStore(1);
+        PasswordValidator validator = new PasswordValidator(new PasswordFactory());
+
+        assertEquals(1, validator.search(new PasswordValidationRequest("sammy", "40584582", store.put("sammy", SECRET_KEY),
+                8, HmacAlgorithm.SHA256, 11, PasswordType.TIME_BASED)));
+    }
+
+    @Test
+    public void testValidate_EventBasedReplay() throws InterruptedException {
+        testEventBasedReplay(new InMemoryCounterPersistence());
+    }
+
+    @Test
+    public void testValidate_EventBasedReplayGroupCommit() throws InterruptedException {
+        try (GroupCommitCounterPersistence counters = new GroupCommitCounterPersistence(new InMemoryCounterPersistence())) {
+            testEventBasedReplay(counters);
+        }
+    }
+
+    @Test
+    public void testValidate_EventBasedObserver() {
+        InMemoryCounterPersistence counters = new InMemoryCounterPersistence();
+        PasswordValidator validator = new PasswordValidator(new PasswordFactory());
+        PasswordValidationRequest request = new PasswordValidationRequest("sammy", "257225", SECRET_KEY, 6,
+                HmacAlgorithm.SHA1, 0, PasswordType.EVENT_BASED);
+
+        // persists the counter following the match, as the guard does
+        validator.validate(request, Collections.singleton(new EventBasedValidationObserver(counters)));
+        assertEquals(OptionalLong.of(1), counters.load("sammy"));
+
+        // a stale request must not move the counter backwards
+        counters.persist(new CounterUpdate("sammy", 5));
+        validator.validate(request, Collections.singleton(new EventBasedValidationObserver(counters)));
+        assertEquals(OptionalLong.of(5), counters.load("sammy"));
+
+        new AsyncPasswordValidator(validator).validate(request, Collections.singleton(
+                new AsyncEventBasedValidationObserver(AsyncCounterPersistenceStrategy.of(counters, Runnable::run)))).join();
+        assertEquals(OptionalLong.of(5), counters.load("sammy"));
+
+        PasswordValidationRequest other = new PasswordValidationRequest("alex", "257225", SECRET_KEY, 6,
+                HmacAlgorithm.SHA1, 0, PasswordType.EVENT_BASED);
+        new AsyncPasswordValidator(validator).validate(other, Collections.singleton(
+                new AsyncEventBasedValidationObserver(AsyncCounterPersistenceStrategy.of(counters, Runnable::run)))).join();
+        assertEquals(OptionalLong.of(1), counters.load("alex"));
+    }
+
+    private static void testEventBasedReplay(CounterPersistenceStrategy counters) throws InterruptedException {
+        PasswordValidator validator = new PasswordValidator(new PasswordFactory(), ValidationMode.EARLY_EXIT,
+                Collections.singletonList(new EventBasedCounterGuard(counters)));
+
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (validator.search(new PasswordValidationRequest("sammy", "257225", SECRET_KEY, 6,
+                        HmacAlgorithm.SHA1, 0, PasswordType.EVENT_BASED)) >= 0) {
+                    accepted.incrementAndGet();
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, accepted.get());
+        assertEquals(OptionalLong.of(1), counters.load("sammy"));
+    }
+
+    @Test
+    public void testValidateAsync() {
+        PasswordValidationRequest request = new PasswordValidationRequest("sammy", "257225", SECRET_KEY, 6,
+                HmacAlgorithm.SHA1, 0, PasswordType.EVENT_BASED);
+
+        AsyncPasswordValidator validator = new AsyncPasswordValidator(new PasswordValidator(new PasswordFactory()));
+        ValidationResult result = validator.validate(request, Collections.singleton(
+                AsyncValidationObserver.of((request1, index) -> assertEquals(0, index), Runnable::run))).join();
+
+        assertTrue(result.isValid());
+        assertEquals(0, result.getIndex());
+    }
+
+    @Test
+    public void testValidateBatch() {
+        List<PasswordValidationRequest> requests = Arrays.asList(
+                new PasswordValidationRequest("sammy", "257225", SECRET_KEY, 6, HmacAlgorithm.SHA1, 0, PasswordType.EVENT_BASED),
+                new PasswordValidationRequest("sammy", "40584582", SECRET_KEY, 8, HmacAlgorithm.SHA256, 10, PasswordType.TIME_BASED),
+                new PasswordValidationRequest("sammy", "257225", SECRET_KEY.clone(), 6, HmacAlgorithm.SHA1, 1, PasswordType.EVENT_BASED));
+
+        BatchPasswordValidator validator = new BatchPasswordValidator(new PasswordValidator(new PasswordFactory()));
+        List<ValidationResult> results = validator.validate(requests);
+
+        assertEquals(0, results.get(0).getIndex());
+        assertEquals(2, results.get(1).getIndex());
+        assertEquals(-1, results.get(2).getIndex());
+    }
+
+    @Test
+    public void testValidateBatch_Persisted() {
+        List<PasswordValidationRequest> requests = Arrays.asList(
+                new PasswordValidationRequest("sammy", "257225", SECRET_KEY, 6, HmacAlgorithm.SHA1, 0, PasswordType.EVENT_BASED),
+                new PasswordValidationRequest("sammy", "40584582", SECRET_KEY, 8, HmacAlgorithm.SHA256, 10, PasswordType.TIME_BASED),
+                new PasswordValidationRequest("jamie", "257225", SECRET_KEY.clone(), 6, HmacAlgorithm.SHA1, 1, PasswordType.EVENT_BASED),
+                new PasswordValidationRequest("alex", "257225", SECRET_KEY.clone(), 6, HmacAlgorithm.SHA1, 0, PasswordType.EVENT_BASED),
+                new PasswordValidationRequest("sammy", "257225", SECRET_KEY.clone(), 6, HmacAlgorithm.SHA1, 0, PasswordType.EVENT_BASED),
+                new PasswordValidationRequest("kim", "257225", SECRET_KEY.clone(), 6, HmacAlgorithm.SHA1, 0, PasswordType.EVENT_BASED));
+
+        InMemoryCounterPersistence counters = new InMemoryCounterPersistence();
+        counters.persist(new CounterUpdate("kim", 5));
+        List<List<CounterUpdate>> advanced = new ArrayList<>();
+        CounterPersistenceStrategy persistenceStrategy = new CounterPersistenceStrategy() {
+            @Override
+            public Long persist(CounterUpdate counterUpdate) {
+                throw new AssertionError("Counters must only be advanced");
+            }
+
+            @Override
+            public boolean advance(CounterUpdate counterUpdate) {
+                throw new AssertionError("Counters must be advanced together");
+            }
+
+            @Override
+            public boolean[] advanceAll(List<CounterUpdate> counterUpdates) {
+                advanced.add(new ArrayList<>(counterUpdates));
+                boolean[] results = new boolean[counterUpdates.size()];
+                for (int i = 0; i < results.length; i++) {
+                    results[i] = counters.advance(counterUpdates.get(i));
+                }
+                return results;
+            }
+        };
+
+        BatchPasswordValidator validator = new BatchPasswordValidator(new PasswordValidator(new PasswordFactory()));
+        List<ValidationResult> results = validator.validate(requests, persistenceStrategy);
+
+        // the replay within the batch and the stale request are rejected
+        assertEquals(0, results.get(0).getIndex());
+        assertEquals(2, results.get(1).getIndex());
+        assertEquals(-1, results.get(2).getIndex());
+        assertEquals(0, results.get(3).getIndex());
+        assertEquals(-1, results.get(4).getIndex());
+        assertEquals(-1, results.get(5).getIndex());
+
+        // only the matched event-based requests, in request order, with the counter after the match
+        assertEquals(1, advanced.size());
+        List<CounterUpdate> counterUpdates = advanced.get(0);
+        assertEquals(4, counterUpdates.size());
+        assertEquals("sammy", counterUpdates.get(0).getIdentifier());
+        assertEquals(1, counterUpdates.get(0).getNewCounter());
+        assertEquals("alex", counterUpdates.get(1).getIdentifier());
+        assertEquals("sammy", counterUpdates.get(2).getIdentifier());
+        assertEquals("kim", counterUpdates.get(3).getIdentifier());
+
+        assertEquals(OptionalLong.of(1), counters.load("sammy"));
+        assertEquals(OptionalLong.of(1), counters.load("alex"));
+        assertEquals(OptionalLong.of(5), counters.load("kim"));
+    }
+
+    @Test
+    public void testValidateBatch_Guarded() {
+        List<PasswordValidationRequest> requests = Arrays.asList(
+                new PasswordValidationRequest("sammy", "257225", SECRET_KEY, 6, HmacAlgorithm.SHA1, 0, PasswordType.EVENT_BASED),
+                new PasswordValidationRequest("sammy", "257225", SECRET_KEY.clone(), 6, HmacAlgorithm.SHA1, 0, PasswordType.EVENT_BASED),
+                new PasswordValidationRequest("kim", "257225", SECRET_KEY.clone(), 6, HmacAlgorithm.SHA1, 0, PasswordType.EVENT_BASED));
+
+        InMemoryCounterPersistence counters = new InMemoryCounterPersistence();
+        counters.persist(new CounterUpdate("kim", 5));
+        BatchPasswordValidator validator = new BatchPasswordValidator(new PasswordValidator(new PasswordFactory(),
+                ValidationMode.EARLY_EXIT, Collections.singletonList(new EventBasedCounterGuard(counters))));
+
+        List<ValidationResult> results = validator.validate(requests);
+        assertEquals(1, results.stream().filter(result -> result.getRequest().getIdentifier().equals("sammy")
+                && result.isValid()).count());
+        assertFalse(results.get(2).isValid());
+        assertEquals(OptionalLong.of(1), counters.load("sammy"));
+        assertEquals(OptionalLong.of(5), counters.load("kim"));
+
+        // the guard has already advanced the counters, so they must not be advanced again
+        assertThrows(IllegalStateException.class, () -> validator.validate(requests, counters));
+    }
+
+    @Test
+    public void testValidate_TimeBasedReplay() {
+        PasswordValidator validator = new PasswordValidator(new PasswordFactory(), ValidationMode.EARLY_EXIT,
+                Collections.singletonList(new TimeBasedReplayCache(16, 1)));
+
+        assertEquals(2, validator.search(new PasswordValidationRequest("sammy", "40584582", SECRET_KEY, 8,
+                HmacAlgorithm.SHA256, 10, PasswordType.TIME_BASED)));
+        assertEquals(-1, validator.search(new PasswordValidationRequest("sammy", "40584582", SECRET_KEY, 8,
+                HmacAlgorithm.SHA256, 11, PasswordType.TIME_BASED)));
+        assertEquals(2, validator.search(new PasswordValidationRequest("alex", "40584582", SECRET_KEY, 8,
+                HmacAlgorithm.SHA256, 10, PasswordType.TIME_BASED)));
+    }
+
+    @Test
+    public void testValidate_DriftTracked() {
+        PasswordFactory factory = new PasswordFactory();
+        AtomicInteger generated = new AtomicInteger();
+        PasswordGenerator counting = (secret, movingFactor, algorithm, digits) -> {
+            generated.incrementAndGet();
+            return factory.generateCode(secret, movingFactor, algorithm, digits);
+        };
+
+        DriftTracker tracker = new DriftTracker(16, 2, 0);
+        PasswordValidator validator = new PasswordValidator(counting, ValidationMode.EARLY_EXIT,
+                Collections.emptyList(), tracker);
+
+        // { moving factor, expected index, expected passwords generated }
+        long[][] expected = { { 10, 2, 3 }, { 10, 2, 1 }, { 10, 2, 1 }, { 10, -1, 2 }, { 11, 1, 2 }, { 11, 1, 1 } };
+        String[] passwords = { "40584582", "40584582", "40584582", "40584583", "40584582", "40584582" };
+
+        for (int i = 0; i < passwords.length; i++) {
+            PasswordValidationRequest request = new PasswordValidationRequest("sammy", passwords[i], SECRET_KEY, 8,
+                    HmacAlgorithm.SHA256, expected[i][0], PasswordType.TIME_BASED);
+            AtomicInteger found = new AtomicInteger();
+            generated.set(0);
+
+            validator.validate(request, Arrays.asList(tracker, (request1, index) -> found.set(index)));
+
+            assertEquals(expected[i][1], found.get());
+            assertEquals(expected[i][2], generated.get());
+        }
+    }
+
+    @Test
+    public void testValidate_DriftTrackerStepBoundary() {
+        DriftTracker tracker = new DriftTracker();
+        PasswordValidator validator = new PasswordValidator(new PasswordFactory(), ValidationMode.EARLY_EXIT,
+                Collections.emptyList(), tracker);
+
+        // a well synchronised user narrows the search to the current step...
+        for (int i = 0; i < DriftTracker.DEFAULT_SHRINK_AFTER * 3; i++) {
+            assertEquals(1, validate(validator, tracker, 11));
+        }
+
+        // ...and still types the previous step's password just after a step boundary
+        assertEquals(0, validate(validator, tracker, 12));
+    }
+
+    private static int validate(PasswordValidator validator, DriftTracker tracker, long movingFactor) {
+        PasswordValidationRequest request = new PasswordValidationRequest("sammy", "40584582", SECRET_KEY, 8,
+                HmacAlgorithm.SHA256, movingFactor, PasswordType.TIME_BASED);
+        AtomicInteger found = new AtomicInteger();
+
+        validator.validate(request, Arrays.asList(tracker, (request1, index) -> found.set(index)));
+
+        return found.get();
+    }
+
+    private void testValidate(ValidationMode mode, String password, long movingFactor, int expectedIndex) {
+        PasswordValidationRequest request = new PasswordValidationRequest("sammy", password, SECRET_KEY, 8,
+                HmacAlgorithm.SHA256, movingFactor, PasswordType.TIME_BASED);
+
+        PasswordValidator validator = new PasswordValidator(new PasswordFactory(), mode);
+
+        int[] actualIndex = { Integer.MIN_VALUE };
+        validator.validate(request, Collections.singleton((request1, index) -> actualIndex[0] = index));
+
+        assertEquals(expectedIndex, actualIndex[0]);
+    }
+
+}
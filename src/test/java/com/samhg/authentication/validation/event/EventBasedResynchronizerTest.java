@@ -0,0 +1,35 @@
+package com.samhg.authentication.validation.event;
+
+import com.samhg.authentication.generation.HmacAlgorithm;
+import com.samhg.authentication.generation.PasswordFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class EventBasedResynchronizerTest {
+
+    private static final byte[] SECRET_KEY = { 20, -37, 28, 73, -53, 23, -2, -59, 70, 89 };
+
+    @Test
+    public void testResynchronize() {
+        PasswordFactory factory = new PasswordFactory();
+        EventBasedResynchronizer resynchronizer = new EventBasedResynchronizer(factory, 50_000, 1000);
+
+        String first = pad(factory.generateCode(SECRET_KEY, 42_100, HmacAlgorithm.SHA1, 6));
+        String second = pad(factory.generateCode(SECRET_KEY, 42_101, HmacAlgorithm.SHA1, 6));
+
+        assertEquals(OptionalLong.of(42_102),
+                resynchronizer.resynchronize(SECRET_KEY, 100, first, second, HmacAlgorithm.SHA1, 6));
+        assertEquals(OptionalLong.empty(),
+                resynchronizer.resynchronize(SECRET_KEY, 42_101, first, second, HmacAlgorithm.SHA1, 6));
+        assertEquals(OptionalLong.empty(),
+                resynchronizer.resynchronize(SECRET_KEY, 100, first, "12345a", HmacAlgorithm.SHA1, 6));
+    }
+
+    private static String pad(int code) {
+        return String.format("%06d", code);
+    }
+
+}
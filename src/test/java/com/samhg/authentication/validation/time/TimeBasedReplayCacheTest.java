@@ -0,0 +1,92 @@
+package com.samhg.authentication.validation.time;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class TimeBasedReplayCacheTest {
+
+    @Test
+    public void testTryAccept() {
+        TimeBasedReplayCache cache = new TimeBasedReplayCache(1024, 4);
+
+        assertEquals(Long.MIN_VALUE, cache.lastAcceptedStep("sammy"));
+        assertTrue(cache.tryAccept("sammy", 10));
+        assertFalse(cache.tryAccept("sammy", 10));
+        assertFalse(cache.tryAccept("sammy", 9));
+        assertTrue(cache.tryAccept("sammy", 11));
+        assertEquals(11, cache.lastAcceptedStep("sammy"));
+
+        assertTrue(cache.tryAccept("alex", 9));
+        assertEquals(9, cache.lastAcceptedStep("alex"));
+    }
+
+    @Test
+    public void testTryAccept_Eviction() {
+        // a single segment of a single probe sequence, so every identifier competes for the same slots
+        TimeBasedReplayCache cache = new TimeBasedReplayCache(8, 1);
+
+        for (int i = 0; i < 8; i++) {
+            assertTrue(cache.tryAccept("user" + i, 10 + i));
+        }
+        for (int i = 0; i < 8; i++) {
+            assertEquals(10 + i, cache.lastAcceptedStep("user" + i));
+        }
+
+        // the entry with the oldest step makes way
+        assertTrue(cache.tryAccept("user8", 20));
+        assertEquals(Long.MIN_VALUE, cache.lastAcceptedStep("user0"));
+        assertEquals(20, cache.lastAcceptedStep("user8"));
+        for (int i = 1; i < 8; i++) {
+            assertEquals(10 + i, cache.lastAcceptedStep("user" + i));
+        }
+
+        assertTrue(cache.tryAccept("user9", 21));
+        assertEquals(Long.MIN_VALUE, cache.lastAcceptedStep("user1"));
+        assertFalse(cache.tryAccept("user2", 12));
+    }
+
+    @Test
+    public void testTryAccept_Concurrent() throws InterruptedException {
+        TimeBasedReplayCache cache = new TimeBasedReplayCache(1024, 4);
+        int steps = 10_000;
+        AtomicIntegerArray accepted = new AtomicIntegerArray(steps + 1);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int step = 1; step <= steps; step++) {
+                    if (cache.tryAccept("sammy", step)) {
+                        accepted.incrementAndGet(step);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // no step is accepted twice, and the last step is always accepted once
+        for (int step = 1; step <= steps; step++) {
+            assertTrue(accepted.get(step) <= 1, "step " + step + " accepted " + accepted.get(step) + " times");
+        }
+        assertEquals(1, accepted.get(steps));
+        assertEquals(steps, cache.lastAcceptedStep("sammy"));
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.samhg.authentication.validation.time;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Expected steps taken from the test vectors of RFC 6238.
+ */
+public final class TimeStepProviderTest {
+
+    @Test
+    public void testCurrentStep() {
+        testCurrentStep(59, 0x1);
+        testCurrentStep(1111111109, 0x23523EC);
+        testCurrentStep(1234567890, 0x273EF07);
+        testCurrentStep(20000000000L, 0x27BC86AA);
+    }
+
+    @Test
+    public void testStart() throws InterruptedException {
+        CountingClock clock = new CountingClock();
+        TimeStepProvider timeSteps = new TimeStepProvider(clock, Duration.ofMillis(50), Instant.EPOCH).start();
+
+        try {
+            // the cached step is only read, so it only moves when the scheduled tick reads the clock
+            long step = timeSteps.currentStep();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (timeSteps.currentStep() == step && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(timeSteps.currentStep() > step, "the step did not move across a boundary");
+            assertTrue(Math.abs(timeSteps.stepAt(System.currentTimeMillis()) - timeSteps.currentStep()) <= 1);
+
+        } finally {
+            timeSteps.close();
+        }
+
+        // no tick reads the clock once closed, other than one already running
+        Thread.sleep(60);
+        int reads = clock.reads.get();
+        long step = timeSteps.currentStep();
+        Thread.sleep(200);
+        assertEquals(reads, clock.reads.get());
+        assertEquals(step, timeSteps.currentStep());
+    }
+
+    private void testCurrentStep(long epochSeconds, long expectedStep) {
+        Clock clock = Clock.fixed(Instant.ofEpochSecond(epochSeconds), ZoneOffset.UTC);
+        TimeStepProvider timeSteps = new TimeStepProvider(clock, TimeStepProvider.DEFAULT_STEP, Instant.EPOCH);
+
+        assertEquals(expectedStep, timeSteps.currentStep());
+    }
+
+    /**
+     * The system clock, counting each read.
+     */
+    private static final class CountingClock extends Clock {
+
+        private final AtomicInteger reads = new AtomicInteger();
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis());
+        }
+
+        @Override
+        public long millis() {
+            reads.incrementAndGet();
+            return System.currentTimeMillis();
+        }
+    }
+
+}